@@ -0,0 +1,96 @@
+package benchmarks;
+
+import config.DatabaseConfig;
+import db.MigrationRunner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Seeds a local PostgreSQL database with synthetic data for the benchmarks and
+ * the load generator.
+ * <p>
+ * The database is the one {@link DatabaseConfig} points at, so run against a
+ * scratch database, for example
+ * {@code -Dlibrary.db.url=jdbc:postgresql://localhost:5432/library_bench}.
+ * Seeding truncates books, members and transactions, and refuses to run unless
+ * {@code -Dlibrary.bench.allowReset=true} is set. A database that already holds
+ * the requested number of books is reused as is, so repeated runs at the same
+ * size skip the seeding.
+ * <p>
+ * Rows are generated server-side with {@code generate_series}: one member per
+ * ten books, one returned loan per book and an open loan on every tenth book,
+ * which is then unavailable. Loans run 14 days; about half the open ones are
+ * overdue.
+ */
+public final class BenchmarkDatabase {
+    private static final String WORDS = "ARRAY['river','garden','shadow','winter','silver','empire','ocean','forest'," +
+        "'night','stone','history','journey','science','music','island','secret','light','city','war','dream']";
+
+    private BenchmarkDatabase() {
+    }
+
+    public static void seed(int books) throws SQLException {
+        MigrationRunner.migrate();
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            if (count(conn, "books") == books) {
+                return;
+            }
+            if (!Boolean.getBoolean("library.bench.allowReset")) {
+                throw new IllegalStateException("Seeding truncates books, members and transactions in "
+                    + conn.getMetaData().getURL() + "; set -Dlibrary.bench.allowReset=true to allow it");
+            }
+
+            int members = Math.max(1, books / 10);
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("TRUNCATE transactions, books, members RESTART IDENTITY CASCADE");
+                execute(conn, "INSERT INTO books (title, author, isbn, available) " +
+                    "SELECT initcap((" + WORDS + ")[1 + g % 20] || ' ' || (" + WORDS + ")[1 + (g / 20) % 20]) " +
+                    "|| ' ' || g, " +
+                    "'Author ' || (g % 5000), '978' || lpad(g::text, 10, '0'), g % 10 <> 0 " +
+                    "FROM generate_series(1, ?) g", books);
+                execute(conn, "INSERT INTO members (name, email, phone) " +
+                    "SELECT 'Member ' || g, 'member' || g || '@example.org', '555-' || lpad(g::text, 7, '0') " +
+                    "FROM generate_series(1, ?) g", members);
+                execute(conn, "INSERT INTO transactions (book_id, member_id, issue_date, due_date, return_date, status) " +
+                    "SELECT g, 1 + g % " + members + ", current_date - 30 - g % 365, current_date - 16 - g % 365, " +
+                    "current_date - 16 - g % 365, 'returned' FROM generate_series(1, ?) g", books);
+                stmt.executeUpdate("INSERT INTO transactions (book_id, member_id, issue_date, due_date, status) " +
+                    "SELECT id, 1 + id % " + members + ", current_date - id % 28, current_date - id % 28 + 14, " +
+                    "'issued' FROM books WHERE NOT available");
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE books");
+                stmt.execute("ANALYZE members");
+                stmt.execute("ANALYZE transactions");
+            }
+        }
+    }
+
+    private static void execute(Connection conn, String sql, int rows) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rows);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static long count(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
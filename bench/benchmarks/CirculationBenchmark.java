@@ -0,0 +1,69 @@
+package benchmarks;
+
+import config.DatabaseConfig;
+import dao.CirculationOutcome;
+import dao.TransactionDAO;
+import models.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One issue followed by the matching return, the round trip a desk makes per
+ * loan, on a random book that is available in the seed data. Run it single
+ * threaded to measure the statements themselves; the load generator covers
+ * contention between desks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CirculationBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int books;
+
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchmarkDatabase.seed(books);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        DatabaseConfig.shutdown();
+    }
+
+    @Benchmark
+    public CirculationOutcome issueAndReturn() throws SQLException {
+        // Every tenth book is on loan in the seed data; the rest are available.
+        int bookId;
+        do {
+            bookId = 1 + ThreadLocalRandom.current().nextInt(books);
+        } while (bookId % 10 == 0);
+
+        Transaction loan = new Transaction(bookId, 1 + bookId % Math.max(1, books / 10), LocalDate.now());
+        CirculationOutcome issued = transactionDAO.issueBook(loan);
+        if (issued != CirculationOutcome.ISSUED) {
+            return issued;
+        }
+        return transactionDAO.returnBook(loan.getId());
+    }
+}
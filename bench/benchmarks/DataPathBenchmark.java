@@ -0,0 +1,91 @@
+package benchmarks;
+
+import cache.EntityCaches;
+import config.DatabaseConfig;
+import dao.BookDAO;
+import dao.TransactionDAO;
+import models.Book;
+import models.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths through the DAOs: full-table loads, keyset pages (dominated by
+ * row mapping once the pages are hot in the buffer cache) and the SQL keyword
+ * search. Full-table loads bypass the entity cache so they measure the
+ * database path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataPathBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int books;
+
+    private final BookDAO bookDAO = new BookDAO();
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchmarkDatabase.seed(books);
+    }
+
+    @Setup(Level.Invocation)
+    public void dropCaches() {
+        EntityCaches.books().invalidateAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        DatabaseConfig.shutdown();
+    }
+
+    @Benchmark
+    public List<Book> getAllBooks() throws SQLException {
+        return bookDAO.getAllBooks();
+    }
+
+    @Benchmark
+    public List<Book> booksPage() throws SQLException {
+        return bookDAO.getBooksPage(Integer.MAX_VALUE, 1000);
+    }
+
+    @Benchmark
+    public List<Transaction> getAllTransactions() throws SQLException {
+        return transactionDAO.getAllTransactions();
+    }
+
+    @Benchmark
+    public List<Transaction> transactionsPage() throws SQLException {
+        return transactionDAO.getTransactionsPage(Integer.MAX_VALUE, 1000);
+    }
+
+    @Benchmark
+    public List<Book> searchBooks(Search search) throws SQLException {
+        return bookDAO.searchBooks(search.keyword, 200, null);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Search {
+        @Param({"river", "garden 12"})
+        public String keyword;
+    }
+}
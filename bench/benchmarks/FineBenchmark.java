@@ -0,0 +1,61 @@
+package benchmarks;
+
+import config.DatabaseConfig;
+import dao.LoanPolicy;
+import dao.TransactionDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import repository.FineAssessment;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The nightly fine run over every open loan. Each call assesses as of the next
+ * day, so the overdue loans' fines change and are written every time, as they
+ * would be each night. Vary {@code -Dlibrary.fines.partitions} between runs to
+ * compare degrees of parallelism.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FineBenchmark {
+    @Param({"100000", "1000000"})
+    public int books;
+
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+    private final LoanPolicy policy = new LoanPolicy(14, 0, 25, 1_000_000, 5);
+    private LocalDate asOf;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchmarkDatabase.seed(books);
+        asOf = LocalDate.now();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        DatabaseConfig.shutdown();
+    }
+
+    @Benchmark
+    public FineAssessment assessFines() throws SQLException {
+        asOf = asOf.plusDays(1);
+        return transactionDAO.assessFines(asOf, policy);
+    }
+}
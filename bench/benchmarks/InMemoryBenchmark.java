@@ -0,0 +1,115 @@
+package benchmarks;
+
+import models.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import search.TrigramIndex;
+import ui.ListTableModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The parts of the data path that run without the database: the trigram
+ * search index and populating and rendering a table model. Rows are generated
+ * with the same shape as {@link BenchmarkDatabase} seeds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class InMemoryBenchmark {
+    private static final String[] WORDS = {"river", "garden", "shadow", "winter", "silver", "empire", "ocean",
+        "forest", "night", "stone", "history", "journey", "science", "music", "island", "secret", "light", "city",
+        "war", "dream"};
+    private static final String[] COLUMNS = {"ID", "Title", "Author", "ISBN", "Status"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int books;
+
+    @Param({"river", "garden 12", "zz"})
+    public String keyword;
+
+    private List<Book> rows;
+    private TrigramIndex<Book> index;
+    private ListTableModel<Book> model;
+
+    @Setup
+    public void generate() {
+        rows = new ArrayList<>(books);
+        for (int g = books; g >= 1; g--) {
+            Book book = new Book(capitalize(WORDS[g % 20]) + " " + capitalize(WORDS[(g / 20) % 20]) + " " + g,
+                "Author " + (g % 5000), "978" + String.format("%010d", g));
+            book.setId(g);
+            book.setAvailable(g % 10 != 0);
+            rows.add(book);
+        }
+
+        List<Function<Book, String>> fields = List.of(Book::getTitle, Book::getAuthor, Book::getIsbn);
+        index = new TrigramIndex<>(Book::getId, fields, new int[] {3, 2, 1});
+        index.putAll(rows);
+
+        model = new ListTableModel<>(COLUMNS, InMemoryBenchmark::valueAt);
+    }
+
+    @Benchmark
+    public List<Book> indexSearch() {
+        return index.search(keyword, 200);
+    }
+
+    /**
+     * Replaces the model contents and reads every cell of the first screenful
+     * of rows, as a JTable does after a data-changed event.
+     */
+    @Benchmark
+    public void populateTableModel(Blackhole blackhole) {
+        model.setRows(rows);
+        int visible = Math.min(40, model.getRowCount());
+        for (int row = 0; row < visible; row++) {
+            for (int column = 0; column < COLUMNS.length; column++) {
+                blackhole.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+
+    /**
+     * Renders every cell, the worst case of a table that is scrolled end to end.
+     */
+    @Benchmark
+    public void renderAllCells(Blackhole blackhole) {
+        model.setRows(rows);
+        for (int row = 0; row < model.getRowCount(); row++) {
+            for (int column = 0; column < COLUMNS.length; column++) {
+                blackhole.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+
+    private static Object valueAt(Book book, int column) {
+        switch (column) {
+            case 0: return book.getId();
+            case 1: return book.getTitle();
+            case 2: return book.getAuthor();
+            case 3: return book.getIsbn();
+            default: return book.isAvailable() ? "Available" : "Issued";
+        }
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
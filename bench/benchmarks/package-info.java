@@ -0,0 +1,14 @@
+/**
+ * JMH benchmarks for the data path, kept out of {@code src} so the application
+ * does not depend on JMH.
+ * <p>
+ * Compile this directory together with {@code src}, with the PostgreSQL driver,
+ * {@code jmh-core} and {@code jmh-generator-annprocess} on the classpath (the
+ * annotation processor generates the harness), then run
+ * {@code java -cp <classpath> org.openjdk.jmh.Main [pattern]} with
+ * {@code -Dlibrary.db.url=...} pointing at a scratch database and
+ * {@code -Dlibrary.bench.allowReset=true}; see {@link benchmarks.BenchmarkDatabase}.
+ * The database-backed benchmarks take {@code -p books=10000,100000,1000000}
+ * to choose the seeded size.
+ */
+package benchmarks;
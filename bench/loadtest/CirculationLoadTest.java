@@ -0,0 +1,261 @@
+package loadtest;
+
+import benchmarks.BenchmarkDatabase;
+import config.DatabaseConfig;
+import dao.BookDAO;
+import dao.CirculationOutcome;
+import dao.TransactionDAO;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import models.Transaction;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator that runs many circulation desks against the real
+ * DAOs at once.
+ * <p>
+ * Every desk is a thread that loops over a weighted mix of issues, returns and
+ * keyword searches for the configured duration. Issues pick from the
+ * {@code hotBooks} lowest book ids so desks compete for the same copies.
+ * Returns close loans taken from a shared queue, which a small share of the time
+ * is peeked instead of polled, so two desks try to return the same loan. At the
+ * end the tool prints throughput and latency percentiles per operation, every
+ * outcome and SQLState seen, the deadlocks and rollbacks PostgreSQL counted
+ * during the run, and a consistency check for double issues.
+ * <p>
+ * Settings are system properties: {@code load.desks} (16), {@code load.seconds}
+ * (30), {@code load.books} (100000, seeded with {@link BenchmarkDatabase}),
+ * {@code load.hotBooks} (1000), {@code load.mix} as issue:return:search weights
+ * (40:40:20) and {@code load.thinkMs} (0). Give the pool at least one connection
+ * per desk with {@code library.pool.maxSize}, or the run measures pool waits.
+ */
+public class CirculationLoadTest {
+    private static final String[] KEYWORDS = {"river", "garden", "shadow 1", "winter", "silver 2", "ocean"};
+    private static final double DUPLICATE_RETURN_SHARE = 0.05;
+
+    private enum Operation { ISSUE, RETURN, SEARCH }
+
+    private final int desks = Integer.getInteger("load.desks", 16);
+    private final int seconds = Integer.getInteger("load.seconds", 30);
+    private final int books = Integer.getInteger("load.books", 100_000);
+    private final int hotBooks = Math.min(books, Integer.getInteger("load.hotBooks", 1000));
+    private final long thinkMillis = Long.getLong("load.thinkMs", 0L);
+    private final int[] mix = parseMix(System.getProperty("load.mix", "40:40:20"));
+
+    private final BookDAO bookDAO = new BookDAO();
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Integer> openLoans = new ConcurrentLinkedQueue<>();
+    private final AtomicLong members = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        new CirculationLoadTest().run();
+    }
+
+    private void run() throws Exception {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        BenchmarkDatabase.seed(books);
+        loadOpenLoans();
+        DatabaseStats before = DatabaseStats.read();
+
+        System.out.printf(Locale.ROOT, "%d desks, %d s, %d books (%d hot), mix issue:return:search = %d:%d:%d%n",
+            desks, seconds, books, hotBooks, mix[0], mix[1], mix[2]);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < desks; i++) {
+            threads.add(Thread.ofPlatform().name("desk-" + i).start(() -> deskLoop(deadline)));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        DatabaseStats after = DatabaseStats.read();
+        report(after.minus(before));
+        DatabaseConfig.shutdown();
+    }
+
+    private void deskLoop(long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int total = mix[0] + mix[1] + mix[2];
+        while (System.nanoTime() < deadline) {
+            int pick = random.nextInt(total);
+            Operation operation = pick < mix[0] ? Operation.ISSUE
+                : pick < mix[0] + mix[1] ? Operation.RETURN : Operation.SEARCH;
+
+            long start = System.nanoTime();
+            try {
+                String outcome = perform(operation, random);
+                latencies.get(operation).recordSince(start);
+                count(operation + " " + outcome);
+            } catch (SQLException e) {
+                latencies.get(operation).recordSince(start);
+                count(operation + " error " + e.getSQLState());
+            } catch (RuntimeException e) {
+                count(operation + " error " + e.getClass().getSimpleName());
+            }
+
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private String perform(Operation operation, ThreadLocalRandom random) throws SQLException {
+        switch (operation) {
+            case ISSUE: {
+                int bookId = 1 + random.nextInt(hotBooks);
+                int memberId = 1 + (int) (members.get() == 0 ? 0 : random.nextLong(members.get()));
+                Transaction loan = new Transaction(bookId, memberId, LocalDate.now());
+                CirculationOutcome outcome = transactionDAO.issueBook(loan);
+                if (outcome == CirculationOutcome.ISSUED) {
+                    openLoans.add(loan.getId());
+                }
+                return outcome.name();
+            }
+            case RETURN: {
+                Integer loanId = random.nextDouble() < DUPLICATE_RETURN_SHARE ? openLoans.peek() : openLoans.poll();
+                if (loanId == null) {
+                    return "NO_OPEN_LOAN";
+                }
+                return transactionDAO.returnBook(loanId).name();
+            }
+            default:
+                return bookDAO.searchBooks(KEYWORDS[random.nextInt(KEYWORDS.length)], 50, null).isEmpty()
+                    ? "EMPTY" : "FOUND";
+        }
+    }
+
+    private void loadOpenLoans() throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM members")) {
+                rs.next();
+                members.set(rs.getLong(1));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM transactions WHERE status = 'issued' AND book_id <= "
+                    + hotBooks)) {
+                while (rs.next()) {
+                    openLoans.add(rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    private void count(String key) {
+        outcomes.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private void report(DatabaseStats delta) throws SQLException {
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-8s %10s %10s %10s %10s %10s %10s%n",
+            "op", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "count");
+        long totalOps = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            totalOps += histogram.count();
+            System.out.printf(Locale.ROOT, "%-8s %10.1f %10.2f %10.2f %10.2f %10.2f %10d%n",
+                operation.name().toLowerCase(Locale.ROOT),
+                (double) histogram.count() / seconds,
+                histogram.percentile(50, TimeUnit.MILLISECONDS),
+                histogram.percentile(99, TimeUnit.MILLISECONDS),
+                histogram.percentile(99.9, TimeUnit.MILLISECONDS),
+                histogram.maxNanos() / 1e6,
+                histogram.count());
+        }
+        System.out.printf(Locale.ROOT, "total    %10.1f ops/s%n", (double) totalOps / seconds);
+
+        System.out.println();
+        System.out.println("Outcomes:");
+        new TreeMap<>(outcomes).forEach((key, adder) -> System.out.printf(Locale.ROOT, "  %-36s %10d%n", key, adder.sum()));
+
+        System.out.println();
+        System.out.println("DAO operations:");
+        System.out.print(Metrics.snapshot());
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Server: %d commits, %d rollbacks, %d deadlocks%n",
+            delta.commits(), delta.rollbacks(), delta.deadlocks());
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            long doubleIssued = single(stmt, "SELECT count(*) FROM (SELECT book_id FROM transactions " +
+                "WHERE status = 'issued' GROUP BY book_id HAVING count(*) > 1) d");
+            long availableButLoaned = single(stmt, "SELECT count(DISTINCT b.id) FROM books b " +
+                "JOIN transactions t ON t.book_id = b.id AND t.status = 'issued' WHERE b.available");
+            long unavailableNoLoan = single(stmt, "SELECT count(*) FROM books b WHERE NOT b.available " +
+                "AND NOT EXISTS (SELECT 1 FROM transactions t WHERE t.book_id = b.id AND t.status = 'issued')");
+            System.out.printf(Locale.ROOT, "Anomalies: %d books with several open loans, %d available books on loan, "
+                + "%d unavailable books without a loan%n", doubleIssued, availableButLoaned, unavailableNoLoan);
+        }
+    }
+
+    private static long single(Statement stmt, String query) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(query)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static int[] parseMix(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("load.mix must be issue:return:search, e.g. 40:40:20");
+        }
+        int[] weights = new int[3];
+        for (int i = 0; i < 3; i++) {
+            weights[i] = Integer.parseInt(parts[i].trim());
+        }
+        if (weights[0] < 0 || weights[1] < 0 || weights[2] < 0 || weights[0] + weights[1] + weights[2] == 0) {
+            throw new IllegalArgumentException("load.mix weights must be non-negative and not all zero");
+        }
+        return weights;
+    }
+
+    /**
+     * Transaction and deadlock counters of the current database from pg_stat_database.
+     */
+    private record DatabaseStats(long commits, long rollbacks, long deadlocks) {
+
+        static DatabaseStats read() throws SQLException {
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                // Statistics are cached per transaction; make sure this read sees fresh ones.
+                stmt.execute("SELECT pg_stat_clear_snapshot()");
+                try (ResultSet rs = stmt.executeQuery("SELECT xact_commit, xact_rollback, deadlocks " +
+                        "FROM pg_stat_database WHERE datname = current_database()")) {
+                    rs.next();
+                    return new DatabaseStats(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+                }
+            }
+        }
+
+        DatabaseStats minus(DatabaseStats other) {
+            return new DatabaseStats(commits - other.commits, rollbacks - other.rollbacks, deadlocks - other.deadlocks);
+        }
+    }
+}
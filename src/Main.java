@@ -1,18 +1,8 @@
 import ui.MainFrame;
 
-import javax.swing.*;
-
 public class Main {
     public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        
-        SwingUtilities.invokeLater(() -> {
-            MainFrame frame = new MainFrame();
-            frame.setVisible(true);
-        });
+        // MainFrame.main also runs the migrations and starts the background jobs.
+        MainFrame.main(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package cache;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded read-through cache of entities keyed by id, evicting the least
+ * recently used entry once {@code maxSize} is reached.
+ * <p>
+ * Besides single entities it can hold one snapshot of the whole table, kept only
+ * while the table has no more than {@code maxSize} rows. Every invalidation bumps
+ * an internal version number; a load that started before an invalidation is not
+ * stored, so a slow read can never put back data that a write has just replaced.
+ * <p>
+ * Entities are copied on the way in and out, so callers may modify what they get.
+ */
+public class EntityCache<T> {
+    private final String name;
+    private final int maxSize;
+    private final UnaryOperator<T> copier;
+    private final Map<Integer, T> entries;
+    private List<T> snapshot;
+    private long version;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EntityCache(String name, int maxSize, UnaryOperator<T> copier) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size for " + name + ": " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.copier = copier;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                if (size() > EntityCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached entity or loads, stores and returns it. A loader result
+     * of {@code null} (no such row) is not cached.
+     */
+    public T get(int id, Loader<T> loader) throws SQLException {
+        long loadVersion;
+        synchronized (this) {
+            T cached = entries.get(id);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return copier.apply(cached);
+            }
+            loadVersion = version;
+        }
+
+        misses.incrementAndGet();
+        T loaded = loader.load();
+        if (loaded != null) {
+            T stored = copier.apply(loaded);
+            synchronized (this) {
+                if (version == loadVersion) {
+                    entries.put(id, stored);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the whole-table snapshot or loads it. The loaded list is kept only
+     * if it fits within the cache size.
+     */
+    public List<T> getAll(Loader<List<T>> loader) throws SQLException {
+        long loadVersion;
+        synchronized (this) {
+            if (snapshot != null) {
+                hits.incrementAndGet();
+                return copyAll(snapshot);
+            }
+            loadVersion = version;
+        }
+
+        misses.incrementAndGet();
+        List<T> loaded = loader.load();
+        if (loaded.size() <= maxSize) {
+            List<T> stored = Collections.unmodifiableList(copyAll(loaded));
+            synchronized (this) {
+                if (version == loadVersion) {
+                    snapshot = stored;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the entity with this id and the table snapshot.
+     */
+    public synchronized void invalidate(int id) {
+        version++;
+        entries.remove(id);
+        snapshot = null;
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        entries.clear();
+        snapshot = null;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(name, entries.size(), maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    private List<T> copyAll(List<T> source) {
+        List<T> copies = new ArrayList<>(source.size());
+        for (T entity : source) {
+            copies.add(copier.apply(entity));
+        }
+        return copies;
+    }
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws SQLException;
+    }
+
+    public record CacheStats(String name, int size, int maxSize, long hits, long misses, long evictions) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+}
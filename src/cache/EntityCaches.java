@@ -0,0 +1,48 @@
+package cache;
+
+import models.Book;
+import models.Member;
+
+/**
+ * The process-wide caches in front of the books and members tables. Sizes are
+ * set with {@code library.cache.books.maxSize} and
+ * {@code library.cache.members.maxSize}.
+ */
+public final class EntityCaches {
+    private static final EntityCache<Book> BOOKS = new EntityCache<>("books",
+        Integer.getInteger("library.cache.books.maxSize", 10_000), EntityCaches::copy);
+    private static final EntityCache<Member> MEMBERS = new EntityCache<>("members",
+        Integer.getInteger("library.cache.members.maxSize", 10_000), EntityCaches::copy);
+
+    private EntityCaches() {
+    }
+
+    public static EntityCache<Book> books() {
+        return BOOKS;
+    }
+
+    public static EntityCache<Member> members() {
+        return MEMBERS;
+    }
+
+    private static Book copy(Book book) {
+        Book copy = new Book();
+        copy.setId(book.getId());
+        copy.setTitle(book.getTitle());
+        copy.setAuthor(book.getAuthor());
+        copy.setIsbn(book.getIsbn());
+        copy.setAvailable(book.isAvailable());
+        copy.setCreatedAt(book.getCreatedAt());
+        return copy;
+    }
+
+    private static Member copy(Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setName(member.getName());
+        copy.setEmail(member.getEmail());
+        copy.setPhone(member.getPhone());
+        copy.setCreatedAt(member.getCreatedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,526 @@
+package config;
+
+import metrics.Metrics;
+import org.postgresql.PGConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small fixed-bound JDBC connection pool.
+ * <p>
+ * Callers borrow with {@link #getConnection()} and give the connection back by
+ * closing it, so existing try-with-resources code keeps working unchanged.
+ * Idle connections are validated on borrow, except one given back less than
+ * {@code validateIdleMillis} ago (a fraction of a second by default), which is
+ * handed out without a round trip. One that then fails with a connection error
+ * (SQLState 08xxx) is closed instead of going back to the pool. Idle connections are evicted after the idle timeout
+ * (never below the minimum size) and connections held longer than the leak
+ * threshold are reported, together with the stack trace of the borrower when
+ * {@code captureBorrowSites} is on. Capturing it costs a stack walk per borrow.
+ * <p>
+ * Each pooled connection also keeps up to {@code statementCacheSize} prepared
+ * statements keyed by their SQL text. Closing a statement obtained from a
+ * borrowed connection resets it and parks it in that cache, so the next
+ * borrower preparing the same SQL gets it back without any client-side parsing,
+ * and the server-side prepared statement the driver created for it keeps its plan.
+ */
+public class ConnectionPool {
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final Properties connectionProperties;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final long validateIdleMillis;
+    private final boolean captureBorrowSites;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> backendPids = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    /**
+     * @param connectionProperties passed to the driver for every new connection,
+     *                             including {@code user} and {@code password}
+     * @param validateIdleMillis   how long a connection may sit idle before a borrow checks it with isValid
+     * @param captureBorrowSites   record where each connection was borrowed, for leak reports
+     * @param statementCacheSize   prepared statements kept per connection; 0 disables the cache
+     */
+    public ConnectionPool(String url, Properties connectionProperties, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long leakThresholdMillis,
+                          long validateIdleMillis, boolean captureBorrowSites, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.connectionProperties = (Properties) connectionProperties.clone();
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validateIdleMillis = validateIdleMillis;
+        this.captureBorrowSites = captureBorrowSites;
+        this.validationTimeoutSeconds = 2;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                    + " ms waiting for a database connection (" + inUse.size() + " in use)", "08001");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                validationFailures.incrementAndGet();
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+
+            Connection connection = pooled.checkOut();
+            inUse.add(pooled);
+            borrowed.incrementAndGet();
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.addAndGet(waited);
+            Metrics.connectionAcquired(waited);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public PoolStats getStats() {
+        long borrows = borrowed.get();
+        return new PoolStats(
+            inUse.size(), idle.size(), maxSize,
+            created.get(), destroyed.get(), borrows,
+            validationFailures.get(), timeouts.get(), leaks.get(),
+            borrows == 0 ? 0 : totalWaitNanos.get() / borrows / 1000,
+            statementHits.get(), statementMisses.get()
+        );
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Whether {@code pid} is the server process behind one of this pool's
+     * connections, i.e. whether a notice sent from it reports a write made here.
+     */
+    public boolean isOwnBackend(int pid) {
+        return backendPids.contains(pid);
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, connectionProperties);
+        created.incrementAndGet();
+        PooledConnection pooled = new PooledConnection(physical);
+        if (physical.isWrapperFor(PGConnection.class)) {
+            pooled.backendPid = physical.unwrap(PGConnection.class).getBackendPID();
+            backendPids.add(pooled.backendPid);
+        }
+        return pooled;
+    }
+
+    /**
+     * A connection given back within the last {@code validateIdleMillis} is
+     * trusted without asking the server; if it has died since, its first
+     * statement fails with an 08xxx state and the connection is dropped when
+     * the borrower closes it.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            return System.currentTimeMillis() - pooled.lastReturned < validateIdleMillis
+                || pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        if (!inUse.remove(pooled)) {
+            return;
+        }
+
+        boolean reusable = !shutdown && !pooled.broken;
+        if (reusable) {
+            try {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                if (pooled.physical.isReadOnly()) {
+                    pooled.physical.setReadOnly(false);
+                }
+                pooled.physical.clearWarnings();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+
+        if (reusable) {
+            pooled.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } else {
+            destroy(pooled);
+        }
+        permits.release();
+    }
+
+    private void destroy(PooledConnection pooled) {
+        destroyed.incrementAndGet();
+        backendPids.remove(pooled.backendPid);
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Error closing pooled connection", e);
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // Idle connections are kept most-recently-used first, so the stale ones sit at the tail.
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minSize) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturned > idleTimeoutMillis && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        for (PooledConnection pooled : inUse) {
+            if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+                pooled.leakReported = true;
+                leaks.incrementAndGet();
+                LOG.log(Level.WARNING, "Connection held for " + (now - pooled.borrowedAt)
+                    + " ms without being closed; possible leak", pooled.borrowSite);
+            }
+        }
+
+        try {
+            while (!shutdown && idle.size() + inUse.size() < minSize) {
+                PooledConnection pooled = open();
+                pooled.lastReturned = now;
+                idle.offerLast(pooled);
+            }
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Could not top up connection pool", e);
+        }
+    }
+
+    /**
+     * Snapshot of pool counters. Wait time is the mean time spent in
+     * {@link ConnectionPool#getConnection()}, in microseconds. Statement hits and
+     * misses count prepareStatement calls served from and missing the per-connection
+     * statement cache.
+     */
+    public record PoolStats(int active, int idle, int maxSize,
+                            long created, long destroyed, long borrowed,
+                            long validationFailures, long timeouts, long leaks,
+                            long meanWaitMicros, long statementHits, long statementMisses) {
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private int backendPid;
+        private volatile long borrowedAt;
+        private volatile long lastReturned;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+        private volatile boolean broken;
+        // Only touched by the thread holding the current lease.
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection checkOut() {
+            borrowedAt = System.currentTimeMillis();
+            borrowSite = captureBorrowSites ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+            Lease lease = new Lease(this);
+            lease.proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, lease);
+            return lease.proxy;
+        }
+
+        /**
+         * Takes back a statement the borrower closed: clears its per-use state and
+         * caches it, unless an equal one is already cached or the connection is going away.
+         */
+        void checkIn(String key, PreparedStatement statement) {
+            if (broken || shutdown || statements.containsKey(key)) {
+                closeQuietly(statement);
+                return;
+            }
+            try {
+                ResultSet open = statement.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                statement.setFetchSize(0);
+                statement.setMaxRows(0);
+                statement.setQueryTimeout(0);
+                statements.put(key, statement);
+            } catch (SQLException e) {
+                closeQuietly(statement);
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Error closing cached statement", e);
+        }
+    }
+
+    private static void markBrokenOnConnectionError(PooledConnection pooled, Throwable cause) {
+        if (cause instanceof SQLException sqlException) {
+            String state = sqlException.getSQLState();
+            if (state != null && state.startsWith("08")) {
+                pooled.broken = true;
+            }
+        }
+    }
+
+    /**
+     * One borrow of a pooled connection. A fresh lease is handed out on every
+     * borrow so a stale reference kept after close() cannot reach the next user.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<LeasedStatement> openStatements = new ArrayList<>();
+        private Connection proxy;
+        private volatile boolean closed;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        for (LeasedStatement statement : new ArrayList<>(openStatements)) {
+                            statement.close();
+                        }
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Connection is closed", "08003");
+            }
+
+            String key = statementCacheSize > 0 && method.getName().equals("prepareStatement") ? cacheKey(args) : null;
+            if (key != null) {
+                PreparedStatement cached = pooled.statements.remove(key);
+                if (cached != null && !cached.isClosed()) {
+                    statementHits.incrementAndGet();
+                    return lend(key, cached);
+                }
+                statementMisses.incrementAndGet();
+                return lend(key, (PreparedStatement) forward(method, args));
+            }
+            return forward(method, args);
+        }
+
+        private Object forward(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                markBrokenOnConnectionError(pooled, e.getCause());
+                throw e.getCause();
+            }
+        }
+
+        private PreparedStatement lend(String key, PreparedStatement physical) {
+            LeasedStatement statement = new LeasedStatement(this, key, physical);
+            openStatements.add(statement);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, statement);
+        }
+
+        /**
+         * Cache key for the prepareStatement overloads whose result depends only on
+         * their arguments, or {@code null} for the ones that are not cached.
+         */
+        private static String cacheKey(Object[] args) {
+            if (args.length == 1) {
+                return (String) args[0];
+            }
+            if (args.length == 2 && args[1] instanceof Integer keys) {
+                return "keys=" + keys + ";" + args[0];
+            }
+            if (args.length == 3) {
+                return "type=" + args[1] + "," + args[2] + ";" + args[0];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One use of a cached statement. Like {@link Lease}, a fresh handler is
+     * created per prepareStatement call so a reference kept after close() cannot
+     * touch the statement once it is lent out again.
+     */
+    private final class LeasedStatement implements InvocationHandler {
+        private final Lease lease;
+        private final String key;
+        private final PreparedStatement physical;
+        private boolean closed;
+
+        LeasedStatement(Lease lease, String key, PreparedStatement physical) {
+            this.lease = lease;
+            this.key = key;
+            this.physical = physical;
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                lease.openStatements.remove(this);
+                lease.pooled.checkIn(key, physical);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + physical + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                markBrokenOnConnectionError(lease.pooled, e.getCause());
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -3,13 +3,77 @@ package config;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 public class DatabaseConfig {
-    private static final String URL = "jdbc:postgresql://localhost:5432/library_db";
-    private static final String USER = "postgres";
-    private static final String PASSWORD = "Devil446752";
-    
+    private static final String URL = System.getProperty("library.db.url", "jdbc:postgresql://localhost:5432/library_db");
+    private static final String USER = System.getProperty("library.db.user", "postgres");
+    private static final String PASSWORD = System.getProperty("library.db.password", "Devil446752");
+
+    private static final int POOL_MIN_SIZE = Integer.getInteger("library.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("library.pool.maxSize", 10);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("library.pool.idleTimeoutMs", 300_000L);
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("library.pool.borrowTimeoutMs", 10_000L);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("library.pool.leakThresholdMs", 60_000L);
+    // Off by default: recording the borrower's stack costs a stack walk on every borrow.
+    private static final boolean POOL_LEAK_STACK_TRACES = Boolean.getBoolean("library.pool.leakStackTraces");
+    private static final long POOL_VALIDATE_IDLE_MS = Long.getLong("library.pool.validateIdleMs", 500L);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("library.pool.statementCacheSize", 64);
+    // Executions of a statement before pgjdbc switches it to a named server-side prepared statement.
+    private static final String PREPARE_THRESHOLD = System.getProperty("library.db.prepareThreshold", "3");
+
+    private static volatile ConnectionPool pool;
+
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return getPool().getConnection();
+    }
+
+    public static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseConfig.class) {
+                current = pool;
+                if (current == null) {
+                    current = new ConnectionPool(URL, connectionProperties(), POOL_MIN_SIZE, POOL_MAX_SIZE,
+                        POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, POOL_VALIDATE_IDLE_MS,
+                        POOL_LEAK_STACK_TRACES, STATEMENT_CACHE_SIZE);
+                    pool = current;
+                    Runtime.getRuntime().addShutdownHook(new Thread(DatabaseConfig::shutdown, "db-pool-shutdown"));
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Whether a change notice sent by server process {@code pid} came from a
+     * write this process made through the pool.
+     */
+    public static boolean isOwnBackend(int pid) {
+        ConnectionPool current = pool;
+        return current != null && current.isOwnBackend(pid);
+    }
+
+    /**
+     * Opens a connection outside the pool, for a caller that keeps it for the
+     * life of the process, such as a LISTEN session. The caller closes it.
+     */
+    public static Connection openDedicatedConnection() throws SQLException {
+        return DriverManager.getConnection(URL, connectionProperties());
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private static Properties connectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("user", USER);
+        properties.setProperty("password", PASSWORD);
+        properties.setProperty("prepareThreshold", PREPARE_THRESHOLD);
+        return properties;
     }
 }
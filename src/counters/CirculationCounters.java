@@ -0,0 +1,107 @@
+package counters;
+
+import repository.CirculationSnapshot;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process circulation counters behind the dashboard.
+ * <p>
+ * The counters are seeded with {@link #reset} from the summary the repository
+ * keeps, then moved by this desk's own writes as the DAOs make them, so
+ * reading them never touches the database; a dashboard can poll
+ * {@link #snapshot} as often as it repaints. Writes the DAOs cannot size cheaply
+ * (imports, edits), writes from other desks and loans falling due overnight
+ * are picked up by the next reset, which the owner makes whenever
+ * {@link #isStale} says so. Between resets the figures may be off by writes
+ * that raced the last one.
+ */
+public final class CirculationCounters {
+    private static final CirculationCounters INSTANCE = new CirculationCounters();
+
+    private final LongAdder books = new LongAdder();
+    private final LongAdder availableBooks = new LongAdder();
+    private final LongAdder activeLoans = new LongAdder();
+    private final LongAdder loansToday = new LongAdder();
+    private final LongAdder returnsToday = new LongAdder();
+    private final LongAdder overdueLoans = new LongAdder();
+    private volatile LocalDate day;
+    private volatile boolean stale = true;
+
+    private CirculationCounters() {
+    }
+
+    public static CirculationCounters getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void reset(CirculationSnapshot snapshot) {
+        set(books, snapshot.books());
+        set(availableBooks, snapshot.availableBooks());
+        set(activeLoans, snapshot.activeLoans());
+        set(loansToday, snapshot.loansToday());
+        set(returnsToday, snapshot.returnsToday());
+        set(overdueLoans, snapshot.overdueLoans());
+        day = snapshot.day();
+        stale = false;
+    }
+
+    public CirculationSnapshot snapshot() {
+        return new CirculationSnapshot(day, books.sum(), availableBooks.sum(), activeLoans.sum(),
+            loansToday.sum(), returnsToday.sum(), overdueLoans.sum());
+    }
+
+    /**
+     * Whether the counters need a {@link #reset}: they never had one, a write
+     * could not be counted, or the day they describe is over.
+     */
+    public boolean isStale() {
+        return stale || !LocalDate.now().equals(day);
+    }
+
+    public void markStale() {
+        stale = true;
+    }
+
+    public void booksAdded(long count, long available) {
+        books.add(count);
+        availableBooks.add(available);
+    }
+
+    public void bookDeleted(boolean available) {
+        books.decrement();
+        if (available) {
+            availableBooks.decrement();
+        }
+    }
+
+    public void loanIssued(LocalDate issueDate, LocalDate dueDate) {
+        availableBooks.decrement();
+        activeLoans.increment();
+        LocalDate today = day;
+        if (issueDate.equals(today)) {
+            loansToday.increment();
+        }
+        if (today != null && dueDate.isBefore(today)) {
+            overdueLoans.increment();
+        }
+    }
+
+    public void loanReturned(LocalDate returnDate, LocalDate dueDate) {
+        availableBooks.increment();
+        activeLoans.decrement();
+        LocalDate today = day;
+        if (returnDate.equals(today)) {
+            returnsToday.increment();
+        }
+        if (today != null && dueDate.isBefore(today)) {
+            overdueLoans.decrement();
+        }
+    }
+
+    private static void set(LongAdder adder, long value) {
+        adder.reset();
+        adder.add(value);
+    }
+}
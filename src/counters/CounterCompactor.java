@@ -0,0 +1,58 @@
+package counters;
+
+import repository.CounterRepository;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compacts the circulation counter rows at startup and then every
+ * {@code library.counters.compactMinutes} minutes (60 by default; 0 turns it
+ * off), so per-desk rows and figures for days that are over do not pile up
+ * whether or not a dashboard is open.
+ */
+public final class CounterCompactor {
+    private static final Logger LOG = Logger.getLogger(CounterCompactor.class.getName());
+    private static final long INTERVAL_MINUTES = Long.getLong("library.counters.compactMinutes", 60L);
+
+    private static ScheduledExecutorService scheduler;
+
+    private CounterCompactor() {
+    }
+
+    public static boolean isEnabled() {
+        return INTERVAL_MINUTES > 0;
+    }
+
+    public static synchronized void start(CounterRepository repository) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "counter-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> compact(repository), 0, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private static void compact(CounterRepository repository) {
+        try {
+            long written = repository.compactCounters();
+            LOG.fine(() -> "Compacted circulation counters: " + written + " rows written");
+        } catch (SQLException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Circulation counter compaction failed", e);
+        }
+    }
+}
@@ -1,103 +1,525 @@
 package dao;
 
+import cache.EntityCaches;
 import config.DatabaseConfig;
+import counters.CirculationCounters;
+import metrics.Metrics;
+import metrics.OperationMetrics;
 import models.Book;
+import db.SearchSchema;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import repository.BookRepository;
+import repository.Delta;
+import repository.Watermark;
+import search.BookSearchIndex;
+import search.SearchMode;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
-public class BookDAO {
+public class BookDAO implements BookRepository {
+    private static final int INDEXED_SEARCH_LIMIT = 500;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final String SELECT_BOOKS = "SELECT " + RowMappers.BOOK_COLUMNS + " FROM books ";
+    private static final OperationMetrics ADD_BOOK = Metrics.operation("BookDAO.addBook");
+    private static final OperationMetrics ADD_BOOKS = Metrics.operation("BookDAO.addBooks");
+    private static final OperationMetrics COPY_BOOKS = Metrics.operation("BookDAO.copyBooks");
+    private static final OperationMetrics GET_ALL_BOOKS = Metrics.operation("BookDAO.getAllBooks");
+    private static final OperationMetrics GET_BOOK_BY_ID = Metrics.operation("BookDAO.getBookById");
+    private static final OperationMetrics GET_BOOKS_BY_IDS = Metrics.operation("BookDAO.getBooksByIds");
+    private static final OperationMetrics FIND_AVAILABLE_BOOKS = Metrics.operation("BookDAO.findAvailableBooks");
+    private static final OperationMetrics GET_BOOKS_PAGE = Metrics.operation("BookDAO.getBooksPage");
+    private static final OperationMetrics CURRENT_WATERMARK = Metrics.operation("BookDAO.currentWatermark");
+    private static final OperationMetrics GET_BOOKS_CHANGED_SINCE = Metrics.operation("BookDAO.getBooksChangedSince");
+    private static final OperationMetrics UPDATE_BOOK = Metrics.operation("BookDAO.updateBook");
+    private static final OperationMetrics DELETE_BOOK = Metrics.operation("BookDAO.deleteBook");
+    private static final OperationMetrics SEARCH_BOOKS = Metrics.operation("BookDAO.searchBooks");
     
+    @Override
     public void addBook(Book book) throws SQLException {
-        String query = "INSERT INTO books (title, author, isbn, available) VALUES (?, ?, ?, ?)";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        ADD_BOOK.run(() -> {
+            String query = "INSERT INTO books (title, author, isbn, available) VALUES (?, ?, ?, ?)";
             
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthor());
-            stmt.setString(3, book.getIsbn());
-            stmt.setBoolean(4, book.isAvailable());
-            stmt.executeUpdate();
-        }
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                
+                stmt.setString(1, book.getTitle());
+                stmt.setString(2, book.getAuthor());
+                stmt.setString(3, book.getIsbn());
+                stmt.setBoolean(4, book.isAvailable());
+                stmt.executeUpdate();
+                
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        book.setId(keys.getInt("id"));
+                    }
+                }
+            }
+            
+            CirculationCounters.getInstance().booksAdded(1, book.isAvailable() ? 1 : 0);
+            EntityCaches.books().invalidate(book.getId());
+            BookSearchIndex.getInstance().bookSaved(book);
+        });
     }
     
-    public List<Book> getAllBooks() throws SQLException {
-        List<Book> books = new ArrayList<>();
-        String query = "SELECT * FROM books ORDER BY id DESC";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            
-            while (rs.next()) {
-                Book book = new Book();
-                book.setId(rs.getInt("id"));
-                book.setTitle(rs.getString("title"));
-                book.setAuthor(rs.getString("author"));
-                book.setIsbn(rs.getString("isbn"));
-                book.setAvailable(rs.getBoolean("available"));
-                book.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                books.add(book);
+    /**
+     * Inserts books with batched prepared statements, committing every
+     * {@value #IMPORT_BATCH_SIZE} rows. Books whose ISBN is already in the table,
+     * including ones inserted earlier in the same call, are skipped. The books
+     * are consumed as they are iterated, so a streaming source is never held in
+     * memory.
+     */
+    @Override
+    public ImportProgress addBooks(Iterable<Book> books, Consumer<ImportProgress> listener) throws SQLException {
+        return ADD_BOOKS.time(() -> {
+            String query = "INSERT INTO books (title, author, isbn, available) " +
+                          "SELECT ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM books WHERE isbn = ?)";
+            long start = System.currentTimeMillis();
+            long read = 0;
+            long inserted = 0;
+            
+            try (Connection conn = DatabaseConfig.getConnection()) {
+                conn.setAutoCommit(false);
+                
+                try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    int pending = 0;
+                    for (Book book : books) {
+                        stmt.setString(1, book.getTitle());
+                        stmt.setString(2, book.getAuthor());
+                        stmt.setString(3, book.getIsbn());
+                        stmt.setBoolean(4, book.isAvailable());
+                        stmt.setString(5, book.getIsbn());
+                        stmt.addBatch();
+                        read++;
+                        
+                        if (++pending == IMPORT_BATCH_SIZE) {
+                            inserted += countUpdates(stmt.executeBatch());
+                            conn.commit();
+                            EntityCaches.books().invalidateAll();
+                            pending = 0;
+                            listener.accept(new ImportProgress(read, inserted, read - inserted,
+                                System.currentTimeMillis() - start, false));
+                        }
+                    }
+                    if (pending > 0) {
+                        inserted += countUpdates(stmt.executeBatch());
+                        conn.commit();
+                        EntityCaches.books().invalidateAll();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
             }
+            
+            CirculationCounters.getInstance().markStale();
+            ImportProgress result = new ImportProgress(read, inserted, read - inserted,
+                System.currentTimeMillis() - start, true);
+            ADD_BOOKS.addRows(inserted);
+            listener.accept(result);
+            return result;
+        });
+    }
+    
+    /**
+     * Streams books into a temporary table with PostgreSQL {@code COPY FROM STDIN}
+     * and moves the new ones into {@code books} with a single INSERT ... SELECT,
+     * all in one transaction. Duplicate ISBNs, both against the table and within
+     * the input, are skipped; the first occurrence in the input wins.
+     */
+    public ImportProgress copyBooks(Iterator<Book> books, Consumer<ImportProgress> listener) throws SQLException {
+        return COPY_BOOKS.time(() -> {
+            long start = System.currentTimeMillis();
+            long read;
+            int inserted;
+            
+            try (Connection conn = DatabaseConfig.getConnection()) {
+                conn.setAutoCommit(false);
+                
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TEMP TABLE book_import (row_no bigserial, title text, author text, " +
+                                "isbn text, available boolean) ON COMMIT DROP");
+                    
+                    CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+                    BookCopyReader reader = new BookCopyReader(books, rows -> listener.accept(
+                        new ImportProgress(rows, 0, 0, System.currentTimeMillis() - start, false)));
+                    read = copyManager.copyIn(
+                        "COPY book_import (title, author, isbn, available) FROM STDIN WITH (FORMAT csv)", reader);
+                    
+                    inserted = stmt.executeUpdate(
+                        "INSERT INTO books (title, author, isbn, available) " +
+                        "SELECT title, author, isbn, available FROM (" +
+                        "SELECT DISTINCT ON (coalesce(isbn, 'row ' || row_no)) * FROM book_import " +
+                        "ORDER BY coalesce(isbn, 'row ' || row_no), row_no" +
+                        ") i " +
+                        "WHERE i.isbn IS NULL OR NOT EXISTS (SELECT 1 FROM books b WHERE b.isbn = i.isbn) " +
+                        "ORDER BY i.row_no");
+                    conn.commit();
+                    EntityCaches.books().invalidateAll();
+                } catch (IOException | UncheckedIOException e) {
+                    conn.rollback();
+                    throw new SQLException("Error streaming books to the database: " + e.getMessage(), e);
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+            
+            CirculationCounters.getInstance().markStale();
+            ImportProgress result = new ImportProgress(read, inserted, read - inserted,
+                System.currentTimeMillis() - start, true);
+            COPY_BOOKS.addRows(inserted);
+            listener.accept(result);
+            return result;
+        });
+    }
+    
+    @Override
+    public List<Book> getAllBooks() throws SQLException {
+        return EntityCaches.books().getAll(this::queryAllBooks);
+    }
+    
+    @Override
+    public Book getBookById(int id) throws SQLException {
+        return EntityCaches.books().get(id, () -> queryBook(id));
+    }
+    
+    @Override
+    public List<Book> getBooksByIds(int[] ids) throws SQLException {
+        List<Book> books = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return books;
         }
-        
-        return books;
+        return GET_BOOKS_BY_IDS.time(() -> {
+            String query = SELECT_BOOKS + "WHERE id = ANY(?) ORDER BY id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray()));
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.BOOK.readAll(rs, books);
+                }
+            }
+            
+            GET_BOOKS_BY_IDS.addRows(books.size());
+            return books;
+        });
+    }
+    
+    private List<Book> queryAllBooks() throws SQLException {
+        return GET_ALL_BOOKS.time(() -> {
+            List<Book> books = new ArrayList<>();
+            String query = SELECT_BOOKS + "ORDER BY id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                
+                RowMappers.BOOK.readAll(rs, books);
+            }
+            
+            return books;
+        });
+    }
+    
+    private Book queryBook(int id) throws SQLException {
+        return GET_BOOK_BY_ID.time(() -> {
+            String query = SELECT_BOOKS + "WHERE id = ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, id);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return RowMappers.BOOK.readFirst(rs);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Candidates for the issue dialog: available books whose title or ISBN starts
+     * with {@code prefix}, or whose id it is, in title order.
+     */
+    @Override
+    public List<Book> findAvailableBooks(String prefix, int limit, QueryCanceller canceller) throws SQLException {
+        return FIND_AVAILABLE_BOOKS.time(() -> {
+            List<Book> books = new ArrayList<>();
+            int id = LikePatterns.parseId(prefix);
+            String query = SELECT_BOOKS + "WHERE available " +
+                          "AND (lower(title) LIKE ? OR isbn LIKE ?" + (id >= 0 ? " OR id = ?" : "") + ") " +
+                          "ORDER BY lower(title), id LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                int i = 1;
+                stmt.setString(i++, LikePatterns.lowerPrefix(prefix));
+                stmt.setString(i++, LikePatterns.prefix(prefix));
+                if (id >= 0) {
+                    stmt.setInt(i++, id);
+                }
+                stmt.setInt(i, limit);
+                
+                try (ResultSet rs = QueryCanceller.executeQuery(stmt, canceller)) {
+                    RowMappers.BOOK.readAll(rs, books);
+                }
+            }
+            
+            return books;
+        });
+    }
+    
+    /**
+     * Returns up to {@code pageSize} books with an id below {@code afterId}, newest
+     * first. Pass {@link Integer#MAX_VALUE} for the first page and the id of the
+     * last book returned for each following page.
+     */
+    @Override
+    public List<Book> getBooksPage(int afterId, int pageSize) throws SQLException {
+        return GET_BOOKS_PAGE.time(() -> {
+            List<Book> books = new ArrayList<>(pageSize);
+            String query = SELECT_BOOKS + "WHERE id < ? ORDER BY id DESC LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, pageSize);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.BOOK.readAll(rs, books);
+                }
+            }
+            
+            return books;
+        });
+    }
+    
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return CURRENT_WATERMARK.time(ChangeTracking::currentWatermark);
+    }
+    
+    @Override
+    public Delta<Book> getBooksChangedSince(Watermark since, int limit) throws SQLException {
+        return GET_BOOKS_CHANGED_SINCE.time(() -> {
+            Delta<Book> delta = ChangeTracking.changesSince("books",
+                SELECT_BOOKS + "WHERE " + ChangeTracking.changedSince(""), RowMappers.BOOK, since, limit);
+            GET_BOOKS_CHANGED_SINCE.addRows(delta.changed().size() + delta.deleted().size());
+            return delta;
+        });
     }
     
+    @Override
     public void updateBook(Book book) throws SQLException {
-        String query = "UPDATE books SET title = ?, author = ?, isbn = ?, available = ? WHERE id = ?";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        UPDATE_BOOK.run(() -> {
+            String query = "UPDATE books SET title = ?, author = ?, isbn = ?, available = ? WHERE id = ?";
             
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthor());
-            stmt.setString(3, book.getIsbn());
-            stmt.setBoolean(4, book.isAvailable());
-            stmt.setInt(5, book.getId());
-            stmt.executeUpdate();
-        }
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setString(1, book.getTitle());
+                stmt.setString(2, book.getAuthor());
+                stmt.setString(3, book.getIsbn());
+                stmt.setBoolean(4, book.isAvailable());
+                stmt.setInt(5, book.getId());
+                stmt.executeUpdate();
+            }
+            
+            // The edit may have changed availability, and the old value is not at hand.
+            CirculationCounters.getInstance().markStale();
+            EntityCaches.books().invalidate(book.getId());
+            BookSearchIndex.getInstance().bookSaved(book);
+        });
     }
     
+    @Override
     public void deleteBook(int id) throws SQLException {
-        String query = "DELETE FROM books WHERE id = ?";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        DELETE_BOOK.run(() -> {
+            String query = "DELETE FROM books WHERE id = ? RETURNING available";
             
-            stmt.setInt(1, id);
-            stmt.executeUpdate();
-        }
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, id);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        CirculationCounters.getInstance().bookDeleted(rs.getBoolean(1));
+                    }
+                }
+            }
+            
+            EntityCaches.books().invalidate(id);
+            BookSearchIndex.getInstance().bookDeleted(id);
+        });
     }
     
-    public List<Book> searchBooks(String keyword) throws SQLException {
+    /**
+     * Returns at most {@code limit} books matching the keyword. When a canceller is
+     * given, a newer search can abort this one while it is still running on the
+     * server.
+     */
+    @Override
+    public List<Book> searchBooks(String keyword, int limit, QueryCanceller canceller) throws SQLException {
+        return SEARCH_BOOKS.time(() -> {
+            BookSearchIndex index = BookSearchIndex.getInstance();
+            if (BookSearchIndex.isEnabled() && index.isReady()) {
+                return index.search(keyword, limit);
+            }
+            if (SearchMode.current() == SearchMode.FULLTEXT && SearchSchema.isAvailable()) {
+                return searchBooksIndexed(keyword, Math.min(limit, INDEXED_SEARCH_LIMIT), canceller);
+            }
+            
+            List<Book> books = new ArrayList<>();
+            String query = SELECT_BOOKS + "WHERE title ILIKE ? OR author ILIKE ? OR isbn ILIKE ? ORDER BY id DESC LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                String searchPattern = "%" + keyword + "%";
+                stmt.setString(1, searchPattern);
+                stmt.setString(2, searchPattern);
+                stmt.setString(3, searchPattern);
+                stmt.setInt(4, limit);
+                
+                try (ResultSet rs = QueryCanceller.executeQuery(stmt, canceller)) {
+                    RowMappers.BOOK.readAll(rs, books);
+                }
+            }
+            
+            return books;
+        });
+    }
+    
+    /**
+     * Full-text search backed by the GIN indexes from {@link SearchSchema}. Words
+     * match by prefix through the tsvector column; keywords of three or more
+     * characters also match anywhere in the text through the trigram indexes.
+     * Results are ordered by relevance.
+     */
+    private List<Book> searchBooksIndexed(String keyword, int limit, QueryCanceller canceller) throws SQLException {
         List<Book> books = new ArrayList<>();
-        String query = "SELECT * FROM books WHERE title ILIKE ? OR author ILIKE ? OR isbn ILIKE ?";
+        boolean substring = keyword.length() >= 3;
+        String query = "SELECT " + RowMappers.BOOK_COLUMNS + " FROM books b " +
+                      "WHERE b.search_vector @@ to_tsquery('simple', ?) " +
+                      (substring ? "OR b.title ILIKE ? OR b.author ILIKE ? OR b.isbn ILIKE ? " : "") +
+                      "ORDER BY coalesce(ts_rank(b.search_vector, to_tsquery('simple', ?)), 0) " +
+                      "+ greatest(similarity(b.title, ?), similarity(b.author, ?)) DESC, b.id DESC " +
+                      "LIMIT ?";
         
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
+            String tsQuery = SearchSchema.prefixQuery(keyword);
             String searchPattern = "%" + keyword + "%";
-            stmt.setString(1, searchPattern);
-            stmt.setString(2, searchPattern);
-            stmt.setString(3, searchPattern);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Book book = new Book();
-                    book.setId(rs.getInt("id"));
-                    book.setTitle(rs.getString("title"));
-                    book.setAuthor(rs.getString("author"));
-                    book.setIsbn(rs.getString("isbn"));
-                    book.setAvailable(rs.getBoolean("available"));
-                    book.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                    books.add(book);
-                }
+            int i = 1;
+            stmt.setString(i++, tsQuery);
+            if (substring) {
+                stmt.setString(i++, searchPattern);
+                stmt.setString(i++, searchPattern);
+                stmt.setString(i++, searchPattern);
+            }
+            stmt.setString(i++, tsQuery);
+            stmt.setString(i++, keyword);
+            stmt.setString(i++, keyword);
+            stmt.setInt(i, limit);
+            
+            try (ResultSet rs = QueryCanceller.executeQuery(stmt, canceller)) {
+                RowMappers.BOOK.readAll(rs, books);
             }
         }
         
         return books;
     }
+    
+    private static long countUpdates(int[] counts) {
+        long total = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Renders books as CSV for COPY, one row at a time as the driver reads.
+     * A missing value is written unquoted so COPY stores NULL; strings are always
+     * quoted so an empty string stays empty.
+     */
+    private static final class BookCopyReader extends Reader {
+        private static final int PROGRESS_INTERVAL = 10_000;
+        
+        private final Iterator<Book> books;
+        private final LongConsumer onProgress;
+        private final StringBuilder line = new StringBuilder(256);
+        private int position;
+        private long rows;
+        
+        BookCopyReader(Iterator<Book> books, LongConsumer onProgress) {
+            this.books = books;
+            this.onProgress = onProgress;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            try {
+                while (position == line.length()) {
+                    if (!books.hasNext()) {
+                        return -1;
+                    }
+                    Book book = books.next();
+                    line.setLength(0);
+                    position = 0;
+                    appendField(book.getTitle()).append(',');
+                    appendField(book.getAuthor()).append(',');
+                    appendField(book.getIsbn()).append(',');
+                    line.append(book.isAvailable()).append('\n');
+                    if (++rows % PROGRESS_INTERVAL == 0) {
+                        onProgress.accept(rows);
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            
+            int count = Math.min(length, line.length() - position);
+            line.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        private StringBuilder appendField(String value) {
+            if (value == null) {
+                return line;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            return line.append('"');
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package dao;
+
+import config.DatabaseConfig;
+import repository.Delta;
+import repository.Watermark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Watermark and delta queries over the change stamps installed by migration 5.
+ * <p>
+ * A delta reads the new watermark, the changed rows and the tombstones in one
+ * repeatable-read transaction, so all three describe the same snapshot.
+ */
+final class ChangeTracking {
+    private static final String WATERMARK_QUERY =
+        "SELECT CASE WHEN is_called THEN last_value ELSE last_value - 1 END, " +
+        "pg_snapshot_xmin(pg_current_snapshot())::text::bigint " +
+        "FROM library_change_seq";
+
+    private ChangeTracking() {
+    }
+
+    static Watermark currentWatermark() throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            return currentWatermark(conn);
+        }
+    }
+
+    /**
+     * Reads the rows of {@code rowQuery} changed since the watermark and the ids
+     * deleted from {@code table}. The query must end in a condition on the
+     * row's stamps with three parameters, as produced by {@link #changedSince}.
+     */
+    static <T> Delta<T> changesSince(String table, String rowQuery, RowMapper<T> mapper,
+                                     Watermark since, int limit) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            }
+
+            Watermark next = currentWatermark(conn);
+            List<T> changed = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(rowQuery + " LIMIT ?")) {
+                bind(stmt, since, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    mapper.readAll(rs, changed);
+                }
+            }
+
+            Set<Integer> deleted = new HashSet<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id FROM row_tombstones WHERE table_name = ? AND " + changedSince("") + " LIMIT ?")) {
+                stmt.setString(1, table);
+                stmt.setLong(2, since.sequence());
+                stmt.setString(3, Long.toString(since.oldestActiveTransaction()));
+                stmt.setInt(4, limit + 1);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        deleted.add(rs.getInt(1));
+                    }
+                }
+            }
+            conn.commit();
+
+            boolean truncated = changed.size() > limit || deleted.size() > limit;
+            return new Delta<>(truncated ? List.of() : changed, truncated ? Set.of() : deleted, next, truncated);
+        }
+    }
+
+    /**
+     * The condition selecting rows stamped after the watermark, for a table
+     * reached through {@code alias} (e.g. {@code "t."}, or {@code ""}).
+     */
+    static String changedSince(String alias) {
+        return "(" + alias + "change_seq > ? OR " + alias + "change_xid >= ?::xid8)";
+    }
+
+    private static void bind(PreparedStatement stmt, Watermark since, int limit) throws SQLException {
+        stmt.setLong(1, since.sequence());
+        stmt.setString(2, Long.toString(since.oldestActiveTransaction()));
+        stmt.setInt(3, limit + 1);
+    }
+
+    private static Watermark currentWatermark(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(WATERMARK_QUERY)) {
+            rs.next();
+            return new Watermark(rs.getLong(1), rs.getLong(2));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package dao;
+
+/**
+ * Result of an issue or return. Only {@link #ISSUED} and {@link #RETURNED}
+ * mean the database was changed; {@link #QUEUED} means the operation was
+ * written to the local circulation journal and will be applied later.
+ */
+public enum CirculationOutcome {
+    ISSUED("Book issued successfully"),
+    RETURNED("Book returned successfully"),
+    ALREADY_ISSUED("This book has already been issued"),
+    ALREADY_RETURNED("This book has already been returned"),
+    NOT_FOUND("The book or transaction no longer exists"),
+    LIMIT_REACHED("This member already has the maximum number of books on loan"),
+    QUEUED("Recorded at this desk; it will be sent to the database shortly");
+
+    private final String message;
+
+    CirculationOutcome(String message) {
+        this.message = message;
+    }
+
+    public boolean isSuccess() {
+        return this == ISSUED || this == RETURNED || this == QUEUED;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
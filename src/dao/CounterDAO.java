@@ -0,0 +1,82 @@
+package dao;
+
+import config.DatabaseConfig;
+import metrics.Metrics;
+import metrics.OperationMetrics;
+import repository.CirculationSnapshot;
+import repository.CounterRepository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Reads the {@code circulation_counters} summary that the triggers from
+ * migration 7 maintain on every insert, update and delete of books and loans.
+ * A read sums the shard rows through the primary key instead of counting
+ * the tables.
+ */
+public class CounterDAO implements CounterRepository {
+    private static final OperationMetrics READ_COUNTERS = Metrics.operation("CounterDAO.readCounters");
+    private static final OperationMetrics COMPACT_COUNTERS = Metrics.operation("CounterDAO.compactCounters");
+
+    @Override
+    public CirculationSnapshot readCounters(LocalDate day) throws SQLException {
+        return READ_COUNTERS.time(() -> {
+            // One branch per kind of row, each a range of the (counter, day, shard) key.
+            String query = "SELECT " +
+                          "coalesce(sum(value) FILTER (WHERE counter = 'books'), 0), " +
+                          "coalesce(sum(value) FILTER (WHERE counter = 'available'), 0), " +
+                          "coalesce(sum(value) FILTER (WHERE counter = 'open'), 0), " +
+                          "coalesce(sum(value) FILTER (WHERE counter = 'loans'), 0), " +
+                          "coalesce(sum(value) FILTER (WHERE counter = 'returns'), 0), " +
+                          "coalesce(sum(value) FILTER (WHERE counter = 'due'), 0) " +
+                          "FROM (" +
+                          "SELECT counter, value FROM circulation_counters " +
+                          "WHERE counter IN ('books', 'available', 'open') AND day = '-infinity' " +
+                          "UNION ALL " +
+                          "SELECT counter, value FROM circulation_counters " +
+                          "WHERE counter IN ('loans', 'returns') AND day = ? " +
+                          "UNION ALL " +
+                          "SELECT counter, value FROM circulation_counters " +
+                          "WHERE counter = 'due' AND day < ?" +
+                          ") c";
+
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+
+                Date date = Date.valueOf(day);
+                stmt.setDate(1, date);
+                stmt.setDate(2, date);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    return new CirculationSnapshot(day, rs.getLong(1), rs.getLong(2), rs.getLong(3),
+                        rs.getLong(4), rs.getLong(5), rs.getLong(6));
+                }
+            }
+        });
+    }
+    
+    /**
+     * Runs {@code library_compact_counters()} from migration 9, which folds the
+     * per-backend rows into shard 0 and drops days that are over. It skips rows
+     * a desk is writing and returns at once if another desk is compacting.
+     * {@link counters.CounterCompactor} calls it on a schedule.
+     */
+    @Override
+    public long compactCounters() throws SQLException {
+        return COMPACT_COUNTERS.time(() -> {
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement("SELECT library_compact_counters()");
+                 ResultSet rs = stmt.executeQuery()) {
+                
+                rs.next();
+                return rs.getLong(1);
+            }
+        });
+    }
+}
@@ -0,0 +1,13 @@
+package dao;
+
+/**
+ * Progress of a bulk book import. {@code inserted} and {@code duplicates} are
+ * only final once {@code finished} is true; with COPY the rows are first
+ * streamed to the server and only counted as inserted at the end.
+ */
+public record ImportProgress(long rowsRead, long inserted, long duplicates, long elapsedMillis, boolean finished) {
+
+    public long rowsPerSecond() {
+        return elapsedMillis == 0 ? rowsRead : rowsRead * 1000 / elapsedMillis;
+    }
+}
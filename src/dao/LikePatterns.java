@@ -0,0 +1,46 @@
+package dao;
+
+import java.util.Locale;
+
+/**
+ * Builds LIKE patterns from user input, escaping the wildcards it may contain
+ * with PostgreSQL's default escape character.
+ */
+final class LikePatterns {
+
+    private LikePatterns() {
+    }
+
+    /**
+     * Lower-cased pattern matching values that start with {@code prefix}.
+     */
+    static String lowerPrefix(String prefix) {
+        return escape(prefix.toLowerCase(Locale.ROOT)) + "%";
+    }
+
+    static String prefix(String prefix) {
+        return escape(prefix) + "%";
+    }
+
+    /**
+     * The id the input names, or -1 when it is not a plain number.
+     */
+    static int parseId(String text) {
+        if (text.isEmpty() || text.length() > 9 || !text.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Integer.parseInt(text);
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
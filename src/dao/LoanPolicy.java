@@ -0,0 +1,48 @@
+package dao;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * How long a loan runs and what it costs to keep a book past its due date.
+ * A loan accrues {@code finePerDayCents} for every day it is open after the due
+ * date and the grace days, up to {@code maxFineCents}. A member may have at
+ * most {@code maxActiveLoans} loans open at once.
+ */
+public record LoanPolicy(int loanDays, int graceDays, int finePerDayCents, int maxFineCents, int maxActiveLoans) {
+
+    public LoanPolicy {
+        if (loanDays < 1 || graceDays < 0 || finePerDayCents < 0 || maxFineCents < 0 || maxActiveLoans < 1) {
+            throw new IllegalArgumentException("Invalid loan policy: " + loanDays + " days, " + graceDays
+                + " grace days, " + finePerDayCents + " per day, " + maxFineCents + " max, "
+                + maxActiveLoans + " open loans");
+        }
+    }
+
+    /**
+     * The policy configured with {@code library.loan.days} (14),
+     * {@code library.loan.graceDays} (0), {@code library.fine.perDayCents} (25),
+     * {@code library.fine.maxCents} (2000) and {@code library.loan.maxActive} (5).
+     */
+    public static LoanPolicy current() {
+        return new LoanPolicy(
+            Integer.getInteger("library.loan.days", 14),
+            Integer.getInteger("library.loan.graceDays", 0),
+            Integer.getInteger("library.fine.perDayCents", 25),
+            Integer.getInteger("library.fine.maxCents", 2000),
+            Integer.getInteger("library.loan.maxActive", 5));
+    }
+
+    public LocalDate dueDate(LocalDate issueDate) {
+        return issueDate.plusDays(loanDays);
+    }
+
+    /**
+     * The fine on a loan due on {@code dueDate} that is still open, or was
+     * returned, on {@code asOf}.
+     */
+    public int fineCents(LocalDate dueDate, LocalDate asOf) {
+        long late = ChronoUnit.DAYS.between(dueDate, asOf) - graceDays;
+        return late <= 0 ? 0 : (int) Math.min(maxFineCents, late * finePerDayCents);
+    }
+}
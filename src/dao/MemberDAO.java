@@ -1,96 +1,304 @@
 package dao;
 
+import cache.EntityCaches;
 import config.DatabaseConfig;
+import metrics.Metrics;
+import metrics.OperationMetrics;
+import db.SearchSchema;
 import models.Member;
+import repository.Delta;
+import repository.MemberRepository;
+import repository.Watermark;
+import search.SearchMode;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class MemberDAO {
+public class MemberDAO implements MemberRepository {
+    private static final int INDEXED_SEARCH_LIMIT = 500;
+    private static final String SELECT_MEMBERS = "SELECT " + RowMappers.MEMBER_COLUMNS + " FROM members ";
+    private static final OperationMetrics ADD_MEMBER = Metrics.operation("MemberDAO.addMember");
+    private static final OperationMetrics GET_ALL_MEMBERS = Metrics.operation("MemberDAO.getAllMembers");
+    private static final OperationMetrics GET_MEMBER_BY_ID = Metrics.operation("MemberDAO.getMemberById");
+    private static final OperationMetrics GET_MEMBERS_BY_IDS = Metrics.operation("MemberDAO.getMembersByIds");
+    private static final OperationMetrics FIND_MEMBERS = Metrics.operation("MemberDAO.findMembers");
+    private static final OperationMetrics GET_MEMBERS_PAGE = Metrics.operation("MemberDAO.getMembersPage");
+    private static final OperationMetrics CURRENT_WATERMARK = Metrics.operation("MemberDAO.currentWatermark");
+    private static final OperationMetrics GET_MEMBERS_CHANGED_SINCE = Metrics.operation("MemberDAO.getMembersChangedSince");
+    private static final OperationMetrics UPDATE_MEMBER = Metrics.operation("MemberDAO.updateMember");
+    private static final OperationMetrics DELETE_MEMBER = Metrics.operation("MemberDAO.deleteMember");
+    private static final OperationMetrics SEARCH_MEMBERS = Metrics.operation("MemberDAO.searchMembers");
     
+    @Override
     public void addMember(Member member) throws SQLException {
-        String query = "INSERT INTO members (name, email, phone) VALUES (?, ?, ?)";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        ADD_MEMBER.run(() -> {
+            String query = "INSERT INTO members (name, email, phone) VALUES (?, ?, ?)";
             
-            stmt.setString(1, member.getName());
-            stmt.setString(2, member.getEmail());
-            stmt.setString(3, member.getPhone());
-            stmt.executeUpdate();
-        }
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                
+                stmt.setString(1, member.getName());
+                stmt.setString(2, member.getEmail());
+                stmt.setString(3, member.getPhone());
+                stmt.executeUpdate();
+                
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        member.setId(keys.getInt("id"));
+                    }
+                }
+            }
+            
+            EntityCaches.members().invalidate(member.getId());
+        });
     }
     
+    @Override
     public List<Member> getAllMembers() throws SQLException {
-        List<Member> members = new ArrayList<>();
-        String query = "SELECT * FROM members ORDER BY id DESC";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            
-            while (rs.next()) {
-                Member member = new Member();
-                member.setId(rs.getInt("id"));
-                member.setName(rs.getString("name"));
-                member.setEmail(rs.getString("email"));
-                member.setPhone(rs.getString("phone"));
-                member.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                members.add(member);
-            }
+        return EntityCaches.members().getAll(this::queryAllMembers);
+    }
+    
+    @Override
+    public Member getMemberById(int id) throws SQLException {
+        return EntityCaches.members().get(id, () -> queryMember(id));
+    }
+    
+    @Override
+    public List<Member> getMembersByIds(int[] ids) throws SQLException {
+        List<Member> members = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return members;
         }
-        
-        return members;
+        return GET_MEMBERS_BY_IDS.time(() -> {
+            String query = SELECT_MEMBERS + "WHERE id = ANY(?) ORDER BY id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray()));
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.MEMBER.readAll(rs, members);
+                }
+            }
+            
+            GET_MEMBERS_BY_IDS.addRows(members.size());
+            return members;
+        });
+    }
+    
+    private List<Member> queryAllMembers() throws SQLException {
+        return GET_ALL_MEMBERS.time(() -> {
+            List<Member> members = new ArrayList<>();
+            String query = SELECT_MEMBERS + "ORDER BY id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                
+                RowMappers.MEMBER.readAll(rs, members);
+            }
+            
+            return members;
+        });
+    }
+    
+    private Member queryMember(int id) throws SQLException {
+        return GET_MEMBER_BY_ID.time(() -> {
+            String query = SELECT_MEMBERS + "WHERE id = ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, id);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return RowMappers.MEMBER.readFirst(rs);
+                }
+            }
+        });
     }
     
+    /**
+     * Candidates for the issue dialog: members whose name or email starts with
+     * {@code prefix}, or whose id it is, in name order.
+     */
+    @Override
+    public List<Member> findMembers(String prefix, int limit, QueryCanceller canceller) throws SQLException {
+        return FIND_MEMBERS.time(() -> {
+            List<Member> members = new ArrayList<>();
+            int id = LikePatterns.parseId(prefix);
+            String query = SELECT_MEMBERS +
+                          "WHERE lower(name) LIKE ? OR lower(email) LIKE ?" + (id >= 0 ? " OR id = ?" : "") + " " +
+                          "ORDER BY lower(name), id LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                String pattern = LikePatterns.lowerPrefix(prefix);
+                int i = 1;
+                stmt.setString(i++, pattern);
+                stmt.setString(i++, pattern);
+                if (id >= 0) {
+                    stmt.setInt(i++, id);
+                }
+                stmt.setInt(i, limit);
+                
+                try (ResultSet rs = QueryCanceller.executeQuery(stmt, canceller)) {
+                    RowMappers.MEMBER.readAll(rs, members);
+                }
+            }
+            
+            return members;
+        });
+    }
+    
+    /**
+     * Returns up to {@code pageSize} members with an id below {@code afterId}, newest
+     * first. Pass {@link Integer#MAX_VALUE} for the first page and the id of the
+     * last member returned for each following page.
+     */
+    @Override
+    public List<Member> getMembersPage(int afterId, int pageSize) throws SQLException {
+        return GET_MEMBERS_PAGE.time(() -> {
+            List<Member> members = new ArrayList<>(pageSize);
+            String query = SELECT_MEMBERS + "WHERE id < ? ORDER BY id DESC LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, pageSize);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.MEMBER.readAll(rs, members);
+                }
+            }
+            
+            return members;
+        });
+    }
+    
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return CURRENT_WATERMARK.time(ChangeTracking::currentWatermark);
+    }
+    
+    @Override
+    public Delta<Member> getMembersChangedSince(Watermark since, int limit) throws SQLException {
+        return GET_MEMBERS_CHANGED_SINCE.time(() -> {
+            Delta<Member> delta = ChangeTracking.changesSince("members",
+                SELECT_MEMBERS + "WHERE " + ChangeTracking.changedSince(""), RowMappers.MEMBER, since, limit);
+            GET_MEMBERS_CHANGED_SINCE.addRows(delta.changed().size() + delta.deleted().size());
+            return delta;
+        });
+    }
+    
+    @Override
     public void updateMember(Member member) throws SQLException {
-        String query = "UPDATE members SET name = ?, email = ?, phone = ? WHERE id = ?";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        UPDATE_MEMBER.run(() -> {
+            String query = "UPDATE members SET name = ?, email = ?, phone = ? WHERE id = ?";
             
-            stmt.setString(1, member.getName());
-            stmt.setString(2, member.getEmail());
-            stmt.setString(3, member.getPhone());
-            stmt.setInt(4, member.getId());
-            stmt.executeUpdate();
-        }
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setString(1, member.getName());
+                stmt.setString(2, member.getEmail());
+                stmt.setString(3, member.getPhone());
+                stmt.setInt(4, member.getId());
+                stmt.executeUpdate();
+            }
+            
+            EntityCaches.members().invalidate(member.getId());
+        });
     }
     
+    @Override
     public void deleteMember(int id) throws SQLException {
-        String query = "DELETE FROM members WHERE id = ?";
-        
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        DELETE_MEMBER.run(() -> {
+            String query = "DELETE FROM members WHERE id = ?";
             
-            stmt.setInt(1, id);
-            stmt.executeUpdate();
-        }
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, id);
+                stmt.executeUpdate();
+            }
+            
+            EntityCaches.members().invalidate(id);
+        });
     }
     
-    public List<Member> searchMembers(String keyword) throws SQLException {
+    /**
+     * Returns at most {@code limit} members matching the keyword. When a canceller is
+     * given, a newer search can abort this one while it is still running on the
+     * server.
+     */
+    @Override
+    public List<Member> searchMembers(String keyword, int limit, QueryCanceller canceller) throws SQLException {
+        return SEARCH_MEMBERS.time(() -> {
+            if (SearchMode.current() == SearchMode.FULLTEXT && SearchSchema.isAvailable()) {
+                return searchMembersIndexed(keyword, Math.min(limit, INDEXED_SEARCH_LIMIT), canceller);
+            }
+            
+            List<Member> members = new ArrayList<>();
+            String query = SELECT_MEMBERS + "WHERE name ILIKE ? OR email ILIKE ? OR phone ILIKE ? ORDER BY id DESC LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                String searchPattern = "%" + keyword + "%";
+                stmt.setString(1, searchPattern);
+                stmt.setString(2, searchPattern);
+                stmt.setString(3, searchPattern);
+                stmt.setInt(4, limit);
+                
+                try (ResultSet rs = QueryCanceller.executeQuery(stmt, canceller)) {
+                    RowMappers.MEMBER.readAll(rs, members);
+                }
+            }
+            
+            return members;
+        });
+    }
+    
+    /**
+     * Full-text search backed by the GIN indexes from {@link SearchSchema}. Words
+     * match by prefix through the tsvector column; keywords of three or more
+     * characters also match anywhere in the text through the trigram indexes.
+     * Results are ordered by relevance.
+     */
+    private List<Member> searchMembersIndexed(String keyword, int limit, QueryCanceller canceller) throws SQLException {
         List<Member> members = new ArrayList<>();
-        String query = "SELECT * FROM members WHERE name ILIKE ? OR email ILIKE ? OR phone ILIKE ?";
+        boolean substring = keyword.length() >= 3;
+        String query = "SELECT " + RowMappers.MEMBER_COLUMNS + " FROM members m " +
+                      "WHERE m.search_vector @@ to_tsquery('simple', ?) " +
+                      (substring ? "OR m.name ILIKE ? OR m.email ILIKE ? OR m.phone ILIKE ? " : "") +
+                      "ORDER BY coalesce(ts_rank(m.search_vector, to_tsquery('simple', ?)), 0) " +
+                      "+ greatest(similarity(m.name, ?), similarity(m.email, ?)) DESC, m.id DESC " +
+                      "LIMIT ?";
         
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
+            String tsQuery = SearchSchema.prefixQuery(keyword);
             String searchPattern = "%" + keyword + "%";
-            stmt.setString(1, searchPattern);
-            stmt.setString(2, searchPattern);
-            stmt.setString(3, searchPattern);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Member member = new Member();
-                    member.setId(rs.getInt("id"));
-                    member.setName(rs.getString("name"));
-                    member.setEmail(rs.getString("email"));
-                    member.setPhone(rs.getString("phone"));
-                    member.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                    members.add(member);
-                }
+            int i = 1;
+            stmt.setString(i++, tsQuery);
+            if (substring) {
+                stmt.setString(i++, searchPattern);
+                stmt.setString(i++, searchPattern);
+                stmt.setString(i++, searchPattern);
+            }
+            stmt.setString(i++, tsQuery);
+            stmt.setString(i++, keyword);
+            stmt.setString(i++, keyword);
+            stmt.setInt(i, limit);
+            
+            try (ResultSet rs = QueryCanceller.executeQuery(stmt, canceller)) {
+                RowMappers.MEMBER.readAll(rs, members);
             }
         }
         
@@ -0,0 +1,70 @@
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Lets another thread abort a query while it runs on the server. One canceller
+ * covers one logical request; once cancelled it stays cancelled, and any query
+ * started through it afterwards fails straight away with SQLState 57014, the
+ * same state PostgreSQL reports for a cancelled statement.
+ */
+public class QueryCanceller {
+    public static final String CANCELLED_STATE = "57014";
+
+    private Statement running;
+    private boolean cancelled;
+
+    /**
+     * Runs the query, registered with the canceller if one is given.
+     */
+    public static ResultSet executeQuery(PreparedStatement stmt, QueryCanceller canceller) throws SQLException {
+        if (canceller == null) {
+            return stmt.executeQuery();
+        }
+        canceller.register(stmt);
+        try {
+            return stmt.executeQuery();
+        } finally {
+            canceller.unregister(stmt);
+        }
+    }
+
+    public static boolean isCancellation(SQLException e) {
+        return CANCELLED_STATE.equals(e.getSQLState());
+    }
+
+    public void cancel() {
+        Statement stmt;
+        synchronized (this) {
+            cancelled = true;
+            stmt = running;
+        }
+        if (stmt != null) {
+            try {
+                stmt.cancel();
+            } catch (SQLException ignored) {
+                // The statement finished or its connection went away; either way it is no longer running.
+            }
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private synchronized void register(Statement stmt) throws SQLException {
+        if (cancelled) {
+            throw new SQLException("Query cancelled", CANCELLED_STATE);
+        }
+        running = stmt;
+    }
+
+    private synchronized void unregister(Statement stmt) {
+        if (running == stmt) {
+            running = null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Turns result set rows into model objects. {@link #bind} runs once per result
+ * set and looks up the column positions by name; the reader it returns then
+ * reads every row by index.
+ */
+@FunctionalInterface
+interface RowMapper<T> {
+    RowReader<T> bind(ResultSet rs) throws SQLException;
+
+    /**
+     * Adds every remaining row to {@code into} and returns it.
+     */
+    default List<T> readAll(ResultSet rs, List<T> into) throws SQLException {
+        if (rs.next()) {
+            RowReader<T> reader = bind(rs);
+            do {
+                into.add(reader.read(rs));
+            } while (rs.next());
+        }
+        return into;
+    }
+
+    /**
+     * Returns the next row, or null if there is none.
+     */
+    default T readFirst(ResultSet rs) throws SQLException {
+        return rs.next() ? bind(rs).read(rs) : null;
+    }
+
+    /**
+     * Hands every remaining row to {@code consumer} and returns how many there were.
+     */
+    default long forEach(ResultSet rs, Consumer<? super T> consumer) throws SQLException {
+        long count = 0;
+        if (rs.next()) {
+            RowReader<T> reader = bind(rs);
+            do {
+                consumer.accept(reader.read(rs));
+                count++;
+            } while (rs.next());
+        }
+        return count;
+    }
+
+    /**
+     * Reads the current row of the result set it was bound to.
+     */
+    @FunctionalInterface
+    interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,101 @@
+package dao;
+
+import models.Book;
+import models.Member;
+import models.Transaction;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * The select lists and row mappers shared by the DAOs. Queries select exactly
+ * these columns rather than {@code *}, so wide rows (search vectors, change
+ * stamps) are never sent to the client. Dates and timestamps are read straight
+ * into {@code java.time} types, without a {@code java.sql.Date} or
+ * {@code Timestamp} per cell.
+ */
+final class RowMappers {
+    static final String BOOK_COLUMNS = "id, title, author, isbn, available, created_at";
+
+    static final String MEMBER_COLUMNS = "id, name, email, phone, created_at";
+
+    /**
+     * Loans with the title and borrower name, for use with {@link #TRANSACTION_JOINS}.
+     */
+    static final String TRANSACTION_COLUMNS =
+        "t.id, t.book_id, t.member_id, t.issue_date, t.due_date, t.return_date, t.status, t.fine_cents, " +
+        "t.created_at, b.title AS book_title, m.name AS member_name";
+
+    static final String TRANSACTION_JOINS =
+        "FROM transactions t " +
+        "JOIN books b ON t.book_id = b.id " +
+        "JOIN members m ON t.member_id = m.id";
+
+    static final RowMapper<Book> BOOK = rs -> {
+        int id = rs.findColumn("id");
+        int title = rs.findColumn("title");
+        int author = rs.findColumn("author");
+        int isbn = rs.findColumn("isbn");
+        int available = rs.findColumn("available");
+        int createdAt = rs.findColumn("created_at");
+        return row -> {
+            Book book = new Book();
+            book.setId(row.getInt(id));
+            book.setTitle(row.getString(title));
+            book.setAuthor(row.getString(author));
+            book.setIsbn(row.getString(isbn));
+            book.setAvailable(row.getBoolean(available));
+            book.setCreatedAt(row.getObject(createdAt, LocalDateTime.class));
+            return book;
+        };
+    };
+
+    static final RowMapper<Member> MEMBER = rs -> {
+        int id = rs.findColumn("id");
+        int name = rs.findColumn("name");
+        int email = rs.findColumn("email");
+        int phone = rs.findColumn("phone");
+        int createdAt = rs.findColumn("created_at");
+        return row -> {
+            Member member = new Member();
+            member.setId(row.getInt(id));
+            member.setName(row.getString(name));
+            member.setEmail(row.getString(email));
+            member.setPhone(row.getString(phone));
+            member.setCreatedAt(row.getObject(createdAt, LocalDateTime.class));
+            return member;
+        };
+    };
+
+    static final RowMapper<Transaction> TRANSACTION = rs -> {
+        int id = rs.findColumn("id");
+        int bookId = rs.findColumn("book_id");
+        int memberId = rs.findColumn("member_id");
+        int issueDate = rs.findColumn("issue_date");
+        int dueDate = rs.findColumn("due_date");
+        int returnDate = rs.findColumn("return_date");
+        int status = rs.findColumn("status");
+        int fineCents = rs.findColumn("fine_cents");
+        int createdAt = rs.findColumn("created_at");
+        int bookTitle = rs.findColumn("book_title");
+        int memberName = rs.findColumn("member_name");
+        return row -> {
+            Transaction transaction = new Transaction();
+            transaction.setId(row.getInt(id));
+            transaction.setBookId(row.getInt(bookId));
+            transaction.setMemberId(row.getInt(memberId));
+            transaction.setIssueDate(row.getObject(issueDate, LocalDate.class));
+            transaction.setDueDate(row.getObject(dueDate, LocalDate.class));
+            transaction.setReturnDate(row.getObject(returnDate, LocalDate.class));
+            transaction.setStatus(row.getString(status));
+            transaction.setFineCents(row.getInt(fineCents));
+            transaction.setCreatedAt(row.getObject(createdAt, LocalDateTime.class));
+            transaction.setBookTitle(row.getString(bookTitle));
+            transaction.setMemberName(row.getString(memberName));
+            return transaction;
+        };
+    };
+
+    private RowMappers() {
+    }
+}
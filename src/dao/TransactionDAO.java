@@ -1,157 +1,640 @@
 package dao;
 
+import cache.EntityCaches;
 import config.DatabaseConfig;
+import counters.CirculationCounters;
+import metrics.Metrics;
+import metrics.OperationMetrics;
 import models.Transaction;
+import repository.Delta;
+import repository.FineAssessment;
+import repository.TransactionRepository;
+import repository.Watermark;
+import search.BookSearchIndex;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
-public class TransactionDAO {
+public class TransactionDAO implements TransactionRepository {
+    private static final String SELECT_TRANSACTIONS =
+        "SELECT " + RowMappers.TRANSACTION_COLUMNS + " " + RowMappers.TRANSACTION_JOINS + " ";
+    private static final int EXPORT_FETCH_SIZE = Integer.getInteger("library.export.fetchSize", 1000);
+    private static final int FINE_PARTITIONS = Math.max(1, Integer.getInteger("library.fines.partitions", 4));
+    // A loan's fine as of a date: days past due_date less the grace days, times the daily fine, capped.
+    // Parameters: as-of date, grace days, cents per day, maximum (see bindFine).
+    private static final String FINE_AS_OF = "least(greatest(?::date - due_date - ?, 0)::bigint * ?, ?)";
+    // Locks the borrowing member's row, so issues to one member run one at a time, and compares
+    // the open loans the triggers from migration 8 keep with the limit. Parameters: limit, member
+    // id (see bindBorrower). A member that does not exist passes, and the insert's foreign key
+    // rejects it as before.
+    private static final String BORROWER =
+        "borrower AS (SELECT active_loans < ? AS within_limit FROM members WHERE id = ? FOR NO KEY UPDATE)";
+    private static final String WITHIN_LIMIT = "coalesce((SELECT within_limit FROM borrower), true)";
+    private static final OperationMetrics ISSUE_BOOK = Metrics.operation("TransactionDAO.issueBook");
+    private static final OperationMetrics RETURN_BOOK = Metrics.operation("TransactionDAO.returnBook");
+    private static final OperationMetrics GET_ALL_TRANSACTIONS = Metrics.operation("TransactionDAO.getAllTransactions");
+    private static final OperationMetrics GET_TRANSACTIONS_PAGE = Metrics.operation("TransactionDAO.getTransactionsPage");
+    private static final OperationMetrics GET_TRANSACTION_BY_ID = Metrics.operation("TransactionDAO.getTransactionById");
+    private static final OperationMetrics GET_TRANSACTIONS_BY_IDS = Metrics.operation("TransactionDAO.getTransactionsByIds");
+    private static final OperationMetrics CURRENT_WATERMARK = Metrics.operation("TransactionDAO.currentWatermark");
+    private static final OperationMetrics GET_TRANSACTIONS_CHANGED_SINCE =
+        Metrics.operation("TransactionDAO.getTransactionsChangedSince");
+    private static final OperationMetrics STREAM_TRANSACTIONS = Metrics.operation("TransactionDAO.streamTransactions");
+    private static final OperationMetrics GET_ACTIVE_TRANSACTIONS = Metrics.operation("TransactionDAO.getActiveTransactions");
+    private static final OperationMetrics GET_OVERDUE_TRANSACTIONS =
+        Metrics.operation("TransactionDAO.getOverdueTransactions");
+    private static final OperationMetrics GET_MEMBER_TRANSACTIONS_PAGE =
+        Metrics.operation("TransactionDAO.getMemberTransactionsPage");
+    private static final OperationMetrics ASSESS_FINES = Metrics.operation("TransactionDAO.assessFines");
     
-    public void issueBook(Transaction transaction) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = DatabaseConfig.getConnection();
-            conn.setAutoCommit(false);
+    /**
+     * Issues the book if it is still available and the member is below the loan
+     * limit. Claiming the book and inserting the loan happen in one statement, so
+     * the book row is locked only while that statement runs, and of two desks
+     * issuing the same copy at once exactly one gets {@link CirculationOutcome#ISSUED}.
+     * The statement first locks the member row and reads its {@code active_loans},
+     * which the triggers from migration 8 keep; a second desk issuing to the same
+     * member waits for that lock and then sees the count including the first loan.
+     * On success the transaction id is set.
+     */
+    @Override
+    public CirculationOutcome issueBook(Transaction transaction) throws SQLException {
+        return ISSUE_BOOK.time(() -> {
+            String query = "WITH " + BORROWER + ", claimed AS (" +
+                          "UPDATE books SET available = false WHERE id = ? AND available AND " + WITHIN_LIMIT +
+                          " RETURNING id" +
+                          "), loan AS (" +
+                          "INSERT INTO transactions (book_id, member_id, issue_date, due_date, status) " +
+                          "SELECT id, ?, ?, ?, 'issued' FROM claimed RETURNING id" +
+                          ") " +
+                          "SELECT (SELECT id FROM loan) AS transaction_id, " + WITHIN_LIMIT + " AS within_limit, " +
+                          "EXISTS (SELECT 1 FROM books WHERE id = ?) AS book_exists";
             
-            String insertQuery = "INSERT INTO transactions (book_id, member_id, issue_date, status) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
-                stmt.setInt(1, transaction.getBookId());
-                stmt.setInt(2, transaction.getMemberId());
-                stmt.setDate(3, Date.valueOf(transaction.getIssueDate()));
-                stmt.setString(4, transaction.getStatus());
-                stmt.executeUpdate();
+            LoanPolicy policy = assignDueDate(transaction);
+            CirculationOutcome outcome;
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                int i = bindBorrower(stmt, 1, transaction.getMemberId(), policy);
+                stmt.setInt(i++, transaction.getBookId());
+                stmt.setInt(i++, transaction.getMemberId());
+                stmt.setDate(i++, Date.valueOf(transaction.getIssueDate()));
+                stmt.setDate(i++, Date.valueOf(transaction.getDueDate()));
+                stmt.setInt(i, transaction.getBookId());
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    int transactionId = rs.getInt("transaction_id");
+                    if (!rs.wasNull()) {
+                        transaction.setId(transactionId);
+                        transaction.setStatus("issued");
+                        outcome = CirculationOutcome.ISSUED;
+                    } else {
+                        outcome = notIssued(rs);
+                    }
+                }
             }
             
-            String updateQuery = "UPDATE books SET available = false WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(updateQuery)) {
-                stmt.setInt(1, transaction.getBookId());
-                stmt.executeUpdate();
+            if (outcome == CirculationOutcome.ISSUED) {
+                CirculationCounters.getInstance().loanIssued(transaction.getIssueDate(), transaction.getDueDate());
+                EntityCaches.books().invalidate(transaction.getBookId());
+                BookSearchIndex.getInstance().availabilityChanged(transaction.getBookId(), false);
             }
+            return outcome;
+        });
+    }
+    
+    /**
+     * Closes the loan if it is still open, fixing its fine as of today, and makes
+     * its book available again, in one statement. A loan that another desk has
+     * already closed is reported as {@link CirculationOutcome#ALREADY_RETURNED}
+     * and left untouched.
+     */
+    @Override
+    public CirculationOutcome returnBook(int transactionId) throws SQLException {
+        return RETURN_BOOK.time(() -> {
+            String query = "WITH closed AS (" +
+                          "UPDATE transactions SET return_date = ?, status = 'returned', " +
+                          "fine_cents = " + FINE_AS_OF + " " +
+                          "WHERE id = ? AND status = 'issued' RETURNING book_id, due_date" +
+                          "), released AS (" +
+                          "UPDATE books SET available = true WHERE id IN (SELECT book_id FROM closed) RETURNING id" +
+                          ") " +
+                          "SELECT (SELECT book_id FROM closed) AS book_id, (SELECT due_date FROM closed) AS due_date, " +
+                          "EXISTS (SELECT 1 FROM transactions WHERE id = ?) AS transaction_exists";
             
-            conn.commit();
-        } catch (SQLException e) {
-            if (conn != null) {
-                conn.rollback();
+            int bookId;
+            LocalDate today = LocalDate.now();
+            LocalDate dueDate;
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setDate(1, Date.valueOf(today));
+                int i = bindFine(stmt, 2, today, LoanPolicy.current());
+                stmt.setInt(i++, transactionId);
+                stmt.setInt(i, transactionId);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    bookId = rs.getInt("book_id");
+                    if (rs.wasNull()) {
+                        return rs.getBoolean("transaction_exists") ? CirculationOutcome.ALREADY_RETURNED : CirculationOutcome.NOT_FOUND;
+                    }
+                    dueDate = rs.getObject("due_date", LocalDate.class);
+                }
             }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+            
+            CirculationCounters.getInstance().loanReturned(today, dueDate);
+            EntityCaches.books().invalidate(bookId);
+            BookSearchIndex.getInstance().availabilityChanged(bookId, true);
+            return CirculationOutcome.RETURNED;
+        });
+    }
+    
+    /**
+     * Applies an issue recorded in a circulation journal, on the caller's
+     * connection and transaction. The entry is claimed in
+     * {@code circulation_journal} by the same statement, so replaying it again
+     * after a crash changes nothing and returns {@code null}.
+     */
+    public Replayed replayIssue(Connection conn, String journalId, long sequence, Transaction transaction) throws SQLException {
+        String query = "WITH entry AS (" +
+                      "INSERT INTO circulation_journal (journal_id, sequence) VALUES (?, ?) " +
+                      "ON CONFLICT DO NOTHING RETURNING sequence" +
+                      "), " + BORROWER + ", claimed AS (" +
+                      "UPDATE books SET available = false " +
+                      "WHERE id = ? AND available AND " + WITHIN_LIMIT + " AND EXISTS (SELECT 1 FROM entry) " +
+                      "RETURNING id" +
+                      "), loan AS (" +
+                      "INSERT INTO transactions (book_id, member_id, issue_date, due_date, status) " +
+                      "SELECT id, ?, ?, ?, 'issued' FROM claimed RETURNING id" +
+                      ") " +
+                      "SELECT EXISTS (SELECT 1 FROM entry) AS fresh, (SELECT id FROM loan) AS transaction_id, " +
+                      WITHIN_LIMIT + " AS within_limit, EXISTS (SELECT 1 FROM books WHERE id = ?) AS book_exists";
+        
+        LoanPolicy policy = assignDueDate(transaction);
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, journalId);
+            stmt.setLong(2, sequence);
+            int i = bindBorrower(stmt, 3, transaction.getMemberId(), policy);
+            stmt.setInt(i++, transaction.getBookId());
+            stmt.setInt(i++, transaction.getMemberId());
+            stmt.setDate(i++, Date.valueOf(transaction.getIssueDate()));
+            stmt.setDate(i++, Date.valueOf(transaction.getDueDate()));
+            stmt.setInt(i, transaction.getBookId());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                if (!rs.getBoolean("fresh")) {
+                    return null;
+                }
+                if (rs.getObject("transaction_id") != null) {
+                    return new Replayed(CirculationOutcome.ISSUED, transaction.getBookId());
+                }
+                return new Replayed(notIssued(rs), transaction.getBookId());
             }
         }
     }
     
-    public void returnBook(int transactionId) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = DatabaseConfig.getConnection();
-            conn.setAutoCommit(false);
+    /**
+     * Applies a return recorded in a circulation journal, like
+     * {@link #replayIssue}, closing the loan as of {@code returnDate}.
+     */
+    public Replayed replayReturn(Connection conn, String journalId, long sequence, int transactionId,
+                                 LocalDate returnDate) throws SQLException {
+        String query = "WITH entry AS (" +
+                      "INSERT INTO circulation_journal (journal_id, sequence) VALUES (?, ?) " +
+                      "ON CONFLICT DO NOTHING RETURNING sequence" +
+                      "), closed AS (" +
+                      "UPDATE transactions SET return_date = ?, status = 'returned', " +
+                      "fine_cents = " + FINE_AS_OF + " " +
+                      "WHERE id = ? AND status = 'issued' AND EXISTS (SELECT 1 FROM entry) RETURNING book_id" +
+                      "), released AS (" +
+                      "UPDATE books SET available = true WHERE id IN (SELECT book_id FROM closed) RETURNING id" +
+                      ") " +
+                      "SELECT EXISTS (SELECT 1 FROM entry) AS fresh, (SELECT book_id FROM closed) AS book_id, " +
+                      "EXISTS (SELECT 1 FROM transactions WHERE id = ?) AS transaction_exists";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, journalId);
+            stmt.setLong(2, sequence);
+            stmt.setDate(3, Date.valueOf(returnDate));
+            int i = bindFine(stmt, 4, returnDate, LoanPolicy.current());
+            stmt.setInt(i++, transactionId);
+            stmt.setInt(i, transactionId);
             
-            int bookId = 0;
-            String selectQuery = "SELECT book_id FROM transactions WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(selectQuery)) {
-                stmt.setInt(1, transactionId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                if (!rs.getBoolean("fresh")) {
+                    return null;
+                }
+                int bookId = rs.getInt("book_id");
+                if (!rs.wasNull()) {
+                    return new Replayed(CirculationOutcome.RETURNED, bookId);
+                }
+                return new Replayed(rs.getBoolean("transaction_exists") ? CirculationOutcome.ALREADY_RETURNED
+                    : CirculationOutcome.NOT_FOUND, 0);
+            }
+        }
+    }
+    
+    /**
+     * Marks a journal entry as handled without applying it, for entries the
+     * database rejects outright. Returns false if it had already been handled.
+     */
+    public boolean skipJournalEntry(Connection conn, String journalId, long sequence) throws SQLException {
+        String query = "INSERT INTO circulation_journal (journal_id, sequence, skipped) VALUES (?, ?, true) " +
+                      "ON CONFLICT DO NOTHING";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, journalId);
+            stmt.setLong(2, sequence);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+    
+    /**
+     * Deletes the replay log rows of a journal up to {@code sequence}, once no
+     * entry in that range can be replayed again. Returns how many it deleted.
+     */
+    public int pruneJournal(Connection conn, String journalId, long sequence) throws SQLException {
+        String query = "DELETE FROM circulation_journal WHERE journal_id = ? AND sequence <= ?";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, journalId);
+            stmt.setLong(2, sequence);
+            return stmt.executeUpdate();
+        }
+    }
+    
+    @Override
+    public List<Transaction> getAllTransactions() throws SQLException {
+        return GET_ALL_TRANSACTIONS.time(() -> {
+            List<Transaction> transactions = new ArrayList<>();
+            String query = SELECT_TRANSACTIONS + "ORDER BY t.id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                
+                RowMappers.TRANSACTION.readAll(rs, transactions);
+            }
+            
+            return transactions;
+        });
+    }
+    
+    /**
+     * Returns up to {@code pageSize} transactions with an id below {@code afterId},
+     * newest first. Pass {@link Integer#MAX_VALUE} for the first page and the id of
+     * the last transaction returned for each following page.
+     */
+    @Override
+    public List<Transaction> getTransactionsPage(int afterId, int pageSize) throws SQLException {
+        return GET_TRANSACTIONS_PAGE.time(() -> {
+            List<Transaction> transactions = new ArrayList<>(pageSize);
+            String query = SELECT_TRANSACTIONS +
+                          "WHERE t.id < ? " +
+                          "ORDER BY t.id DESC " +
+                          "LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, pageSize);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.TRANSACTION.readAll(rs, transactions);
+                }
+            }
+            
+            return transactions;
+        });
+    }
+    
+    @Override
+    public Transaction getTransactionById(int id) throws SQLException {
+        return GET_TRANSACTION_BY_ID.time(() -> {
+            String query = SELECT_TRANSACTIONS + "WHERE t.id = ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, id);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return RowMappers.TRANSACTION.readFirst(rs);
+                }
+            }
+        });
+    }
+    
+    @Override
+    public List<Transaction> getTransactionsByIds(int[] ids) throws SQLException {
+        List<Transaction> transactions = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return transactions;
+        }
+        return GET_TRANSACTIONS_BY_IDS.time(() -> {
+            String query = SELECT_TRANSACTIONS + "WHERE t.id = ANY(?) ORDER BY t.id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray()));
+                
                 try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        bookId = rs.getInt("book_id");
+                    RowMappers.TRANSACTION.readAll(rs, transactions);
+                }
+            }
+            
+            GET_TRANSACTIONS_BY_IDS.addRows(transactions.size());
+            return transactions;
+        });
+    }
+    
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return CURRENT_WATERMARK.time(ChangeTracking::currentWatermark);
+    }
+    
+    @Override
+    public Delta<Transaction> getTransactionsChangedSince(Watermark since, int limit) throws SQLException {
+        return GET_TRANSACTIONS_CHANGED_SINCE.time(() -> {
+            String query = SELECT_TRANSACTIONS + "WHERE " + ChangeTracking.changedSince("t.");
+            Delta<Transaction> delta = ChangeTracking.changesSince("transactions", query, RowMappers.TRANSACTION,
+                since, limit);
+            GET_TRANSACTIONS_CHANGED_SINCE.addRows(delta.changed().size() + delta.deleted().size());
+            return delta;
+        });
+    }
+    
+    /**
+     * Hands every matching transaction to {@code consumer}, oldest first, and
+     * returns how many there were. Autocommit is turned off and a fetch size set
+     * so the driver reads through a server-side cursor, {@code library.export.fetchSize}
+     * rows (1000 by default) at a time, instead of buffering the whole result.
+     */
+    @Override
+    public long streamTransactions(TransactionFilter filter, Consumer<Transaction> consumer) throws SQLException {
+        return STREAM_TRANSACTIONS.time(() -> {
+            StringBuilder query = new StringBuilder(SELECT_TRANSACTIONS + "WHERE true");
+            List<Object> params = new ArrayList<>();
+            if (filter.issuedFrom() != null) {
+                query.append(" AND t.issue_date >= ?");
+                params.add(Date.valueOf(filter.issuedFrom()));
+            }
+            if (filter.issuedTo() != null) {
+                query.append(" AND t.issue_date <= ?");
+                params.add(Date.valueOf(filter.issuedTo()));
+            }
+            if (filter.status() != null) {
+                query.append(" AND t.status = ?");
+                params.add(filter.status());
+            }
+            query.append(" ORDER BY t.id");
+            
+            long count = 0;
+            try (Connection conn = DatabaseConfig.getConnection()) {
+                conn.setAutoCommit(false);
+                conn.setReadOnly(true);
+                
+                try (PreparedStatement stmt = conn.prepareStatement(query.toString(),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    stmt.setFetchSize(EXPORT_FETCH_SIZE);
+                    for (int i = 0; i < params.size(); i++) {
+                        stmt.setObject(i + 1, params.get(i));
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        count = RowMappers.TRANSACTION.forEach(rs, consumer);
                     }
                 }
+                conn.commit();
+            }
+            
+            return count;
+        });
+    }
+    
+    @Override
+    public List<Transaction> getActiveTransactions() throws SQLException {
+        return GET_ACTIVE_TRANSACTIONS.time(() -> {
+            List<Transaction> transactions = new ArrayList<>();
+            String query = SELECT_TRANSACTIONS +
+                          "WHERE t.status = 'issued' " +
+                          "ORDER BY t.id DESC";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                
+                RowMappers.TRANSACTION.readAll(rs, transactions);
             }
             
-            String updateTransQuery = "UPDATE transactions SET return_date = ?, status = ? WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(updateTransQuery)) {
-                stmt.setDate(1, Date.valueOf(LocalDate.now()));
-                stmt.setString(2, "returned");
-                stmt.setInt(3, transactionId);
-                stmt.executeUpdate();
+            return transactions;
+        });
+    }
+    
+    /**
+     * Open loans past their due date, newest first. Filtering on due_date goes
+     * through the partial index from migration 6, which covers open loans only.
+     */
+    @Override
+    public List<Transaction> getOverdueTransactions(LocalDate asOf, int afterId, int pageSize) throws SQLException {
+        return GET_OVERDUE_TRANSACTIONS.time(() -> {
+            List<Transaction> transactions = new ArrayList<>(Math.min(pageSize, 1000));
+            String query = SELECT_TRANSACTIONS +
+                          "WHERE t.status = 'issued' AND t.due_date < ? AND t.id < ? " +
+                          "ORDER BY t.id DESC " +
+                          "LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setDate(1, Date.valueOf(asOf));
+                stmt.setInt(2, afterId);
+                stmt.setInt(3, pageSize);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.TRANSACTION.readAll(rs, transactions);
+                }
             }
             
-            String updateBookQuery = "UPDATE books SET available = true WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(updateBookQuery)) {
-                stmt.setInt(1, bookId);
-                stmt.executeUpdate();
+            return transactions;
+        });
+    }
+    
+    /**
+     * One member's loans, newest first. The (member_id, id DESC) index from
+     * migration 2 serves both the filter and the order, so a page reads only
+     * its own rows however long the member's history is.
+     */
+    @Override
+    public List<Transaction> getMemberTransactionsPage(int memberId, int afterId, int pageSize) throws SQLException {
+        return GET_MEMBER_TRANSACTIONS_PAGE.time(() -> {
+            List<Transaction> transactions = new ArrayList<>(Math.min(pageSize, 1000));
+            String query = SELECT_TRANSACTIONS +
+                          "WHERE t.member_id = ? AND t.id < ? " +
+                          "ORDER BY t.id DESC " +
+                          "LIMIT ?";
+            
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                
+                stmt.setInt(1, memberId);
+                stmt.setInt(2, afterId);
+                stmt.setInt(3, pageSize);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    RowMappers.TRANSACTION.readAll(rs, transactions);
+                }
             }
             
-            conn.commit();
-        } catch (SQLException e) {
-            if (conn != null) {
-                conn.rollback();
+            return transactions;
+        });
+    }
+    
+    /**
+     * Recomputes the fine on every open loan. The open loans are split into
+     * {@code library.fines.partitions} (4 by default) id ranges that are assessed
+     * at once, each by a single statement on its own pooled connection: it
+     * computes the fines, writes only the ones that changed and returns the
+     * totals, so no loan is sent to the client.
+     */
+    @Override
+    public FineAssessment assessFines(LocalDate asOf, LoanPolicy policy) throws SQLException {
+        return ASSESS_FINES.time(() -> {
+            FineAssessment total = new FineAssessment(asOf, 0, 0, 0, 0);
+            int[] bounds = openLoanBounds();
+            if (bounds == null) {
+                return total;
             }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+            
+            long span = ((long) bounds[1] - bounds[0]) / FINE_PARTITIONS + 1;
+            List<Future<FineAssessment>> partitions = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (long from = bounds[0]; from <= bounds[1]; from += span) {
+                    int first = (int) from;
+                    int last = (int) Math.min(bounds[1], from + span - 1);
+                    partitions.add(executor.submit(() -> assessFines(first, last, asOf, policy)));
+                }
+                for (Future<FineAssessment> partition : partitions) {
+                    total = total.plus(partition.get());
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+                throw new SQLException("Fine assessment failed: " + e.getCause(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Fine assessment interrupted", e);
             }
-        }
+            
+            ASSESS_FINES.addRows(total.updatedLoans());
+            return total;
+        });
     }
     
-    public List<Transaction> getAllTransactions() throws SQLException {
-        List<Transaction> transactions = new ArrayList<>();
-        String query = "SELECT t.*, b.title as book_title, m.name as member_name " +
-                      "FROM transactions t " +
-                      "JOIN books b ON t.book_id = b.id " +
-                      "JOIN members m ON t.member_id = m.id " +
-                      "ORDER BY t.id DESC";
+    private FineAssessment assessFines(int firstId, int lastId, LocalDate asOf, LoanPolicy policy) throws SQLException {
+        String query = "WITH assessed AS (" +
+                      "SELECT id, " + FINE_AS_OF + " AS fine, due_date < ? AS overdue, fine_cents AS previous " +
+                      "FROM transactions WHERE status = 'issued' AND id BETWEEN ? AND ?" +
+                      "), updated AS (" +
+                      "UPDATE transactions t SET fine_cents = a.fine FROM assessed a " +
+                      "WHERE t.id = a.id AND a.fine <> a.previous AND t.status = 'issued' RETURNING t.id" +
+                      ") " +
+                      "SELECT count(*), count(*) FILTER (WHERE overdue), (SELECT count(*) FROM updated), " +
+                      "coalesce(sum(fine), 0) FROM assessed";
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            
-            while (rs.next()) {
-                Transaction transaction = new Transaction();
-                transaction.setId(rs.getInt("id"));
-                transaction.setBookId(rs.getInt("book_id"));
-                transaction.setMemberId(rs.getInt("member_id"));
-                transaction.setIssueDate(rs.getDate("issue_date").toLocalDate());
-                
-                Date returnDate = rs.getDate("return_date");
-                if (returnDate != null) {
-                    transaction.setReturnDate(returnDate.toLocalDate());
-                }
-                
-                transaction.setStatus(rs.getString("status"));
-                transaction.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                transaction.setBookTitle(rs.getString("book_title"));
-                transaction.setMemberName(rs.getString("member_name"));
-                transactions.add(transaction);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            
+            int i = bindFine(stmt, 1, asOf, policy);
+            stmt.setDate(i++, Date.valueOf(asOf));
+            stmt.setInt(i++, firstId);
+            stmt.setInt(i, lastId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new FineAssessment(asOf, rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4));
             }
         }
-        
-        return transactions;
     }
     
-    public List<Transaction> getActiveTransactions() throws SQLException {
-        List<Transaction> transactions = new ArrayList<>();
-        String query = "SELECT t.*, b.title as book_title, m.name as member_name " +
-                      "FROM transactions t " +
-                      "JOIN books b ON t.book_id = b.id " +
-                      "JOIN members m ON t.member_id = m.id " +
-                      "WHERE t.status = 'issued' " +
-                      "ORDER BY t.id DESC";
-        
+    /**
+     * The lowest and highest id of an open loan, or null when there are none.
+     */
+    private int[] openLoanBounds() throws SQLException {
         try (Connection conn = DatabaseConfig.getConnection();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            
-            while (rs.next()) {
-                Transaction transaction = new Transaction();
-                transaction.setId(rs.getInt("id"));
-                transaction.setBookId(rs.getInt("book_id"));
-                transaction.setMemberId(rs.getInt("member_id"));
-                transaction.setIssueDate(rs.getDate("issue_date").toLocalDate());
-                transaction.setStatus(rs.getString("status"));
-                transaction.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                transaction.setBookTitle(rs.getString("book_title"));
-                transaction.setMemberName(rs.getString("member_name"));
-                transactions.add(transaction);
-            }
+             ResultSet rs = stmt.executeQuery("SELECT min(id), max(id) FROM transactions WHERE status = 'issued'")) {
+            rs.next();
+            int first = rs.getInt(1);
+            return rs.wasNull() ? null : new int[] {first, rs.getInt(2)};
         }
-        
-        return transactions;
+    }
+    
+    /**
+     * Gives the transaction a due date under the current policy unless it has
+     * one, and returns that policy.
+     */
+    private static LoanPolicy assignDueDate(Transaction transaction) {
+        LoanPolicy policy = LoanPolicy.current();
+        if (transaction.getDueDate() == null) {
+            transaction.setDueDate(policy.dueDate(transaction.getIssueDate()));
+        }
+        return policy;
+    }
+    
+    /**
+     * Binds the parameters of {@link #BORROWER} from {@code index} on and
+     * returns the index after them.
+     */
+    private static int bindBorrower(PreparedStatement stmt, int index, int memberId, LoanPolicy policy)
+            throws SQLException {
+        stmt.setInt(index, policy.maxActiveLoans());
+        stmt.setInt(index + 1, memberId);
+        return index + 2;
+    }
+    
+    /**
+     * Why an issue that inserted no loan failed, from the {@code within_limit}
+     * and {@code book_exists} columns of its result.
+     */
+    private static CirculationOutcome notIssued(ResultSet rs) throws SQLException {
+        if (!rs.getBoolean("within_limit")) {
+            return CirculationOutcome.LIMIT_REACHED;
+        }
+        return rs.getBoolean("book_exists") ? CirculationOutcome.ALREADY_ISSUED : CirculationOutcome.NOT_FOUND;
+    }
+    
+    /**
+     * Binds the parameters of {@link #FINE_AS_OF} from {@code index} on and
+     * returns the index after them.
+     */
+    private static int bindFine(PreparedStatement stmt, int index, LocalDate asOf, LoanPolicy policy)
+            throws SQLException {
+        stmt.setDate(index, Date.valueOf(asOf));
+        stmt.setInt(index + 1, policy.graceDays());
+        stmt.setInt(index + 2, policy.finePerDayCents());
+        stmt.setInt(index + 3, policy.maxFineCents());
+        return index + 4;
+    }
+    
+    /**
+     * What replaying a journal entry did, and to which book.
+     */
+    public record Replayed(CirculationOutcome outcome, int bookId) {
     }
 }
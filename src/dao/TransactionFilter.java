@@ -0,0 +1,11 @@
+package dao;
+
+import java.time.LocalDate;
+
+/**
+ * Optional restrictions on a transaction query. A null bound or status means
+ * "any"; both dates are inclusive and apply to the issue date.
+ */
+public record TransactionFilter(LocalDate issuedFrom, LocalDate issuedTo, String status) {
+    public static final TransactionFilter ALL = new TransactionFilter(null, null, null);
+}
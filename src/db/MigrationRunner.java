@@ -0,0 +1,551 @@
+package db;
+
+import config.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Brings the database schema up to date at startup.
+ * <p>
+ * Migrations are numbered and applied in order, each in its own transaction
+ * together with its row in {@code schema_version}, so a failed migration leaves
+ * nothing half-applied and is retried on the next start. Runners on several
+ * desks starting at once serialize on an advisory lock. An up-to-date database
+ * is recognised with a single query and no lock.
+ * <p>
+ * Migrations are append-only: once released, a migration is never edited;
+ * changes go into a new one.
+ */
+public class MigrationRunner {
+    private static final Logger LOG = Logger.getLogger(MigrationRunner.class.getName());
+    private static final long LOCK_KEY = 0x4c49_4252_4152_5931L;
+    // Counter shards: migration 7 spread backends over 16 shared rows, migration 9 gives each
+    // backend rows of its own. Shard 0 is left to the backfill and library_compact_counters.
+    private static final String SHARED_SHARD = "pg_backend_pid() % 16";
+    private static final String BACKEND_SHARD = "pg_backend_pid()";
+
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Base schema",
+            "CREATE TABLE IF NOT EXISTS books (" +
+                "id SERIAL PRIMARY KEY, " +
+                "title VARCHAR(255) NOT NULL, " +
+                "author VARCHAR(255), " +
+                "isbn VARCHAR(32), " +
+                "available BOOLEAN NOT NULL DEFAULT true, " +
+                "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TABLE IF NOT EXISTS members (" +
+                "id SERIAL PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, " +
+                "email VARCHAR(255), " +
+                "phone VARCHAR(32), " +
+                "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TABLE IF NOT EXISTS transactions (" +
+                "id SERIAL PRIMARY KEY, " +
+                "book_id INTEGER NOT NULL REFERENCES books (id), " +
+                "member_id INTEGER NOT NULL REFERENCES members (id), " +
+                "issue_date DATE NOT NULL, " +
+                "return_date DATE, " +
+                "status VARCHAR(20) NOT NULL DEFAULT 'issued', " +
+                "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)"),
+
+        new Migration(2, "Circulation and lookup indexes",
+            // Foreign keys: joins from transactions, and the FK checks on book and member deletes.
+            "CREATE INDEX IF NOT EXISTS idx_transactions_book_id ON transactions (book_id)",
+            "CREATE INDEX IF NOT EXISTS idx_transactions_member_id ON transactions (member_id, id DESC)",
+            // Active loans are a small slice of the history; this serves status = 'issued' ORDER BY id DESC.
+            "CREATE INDEX IF NOT EXISTS idx_transactions_active ON transactions (id DESC) WHERE status = 'issued'",
+            "CREATE INDEX IF NOT EXISTS idx_members_email ON members (email)",
+            // Import duplicate checks (equality) and the issue dialog ISBN prefix lookup.
+            "CREATE INDEX IF NOT EXISTS idx_books_isbn ON books (isbn)",
+            "CREATE INDEX IF NOT EXISTS idx_books_isbn_prefix ON books (isbn text_pattern_ops)",
+            // Issue dialog typeahead: lower(column) LIKE 'prefix%'.
+            "CREATE INDEX IF NOT EXISTS idx_books_available_title_prefix ON books (lower(title) text_pattern_ops) " +
+                "WHERE available",
+            "CREATE INDEX IF NOT EXISTS idx_members_name_prefix ON members (lower(name) text_pattern_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_members_email_prefix ON members (lower(email) text_pattern_ops)",
+            "ANALYZE books",
+            "ANALYZE members",
+            "ANALYZE transactions"),
+
+        new Migration(3, "Circulation journal replay log",
+            // One row per desk journal entry applied (or skipped), so a replay after a crash is a no-op.
+            "CREATE TABLE IF NOT EXISTS circulation_journal (" +
+                "journal_id VARCHAR(36) NOT NULL, " +
+                "sequence BIGINT NOT NULL, " +
+                "skipped BOOLEAN NOT NULL DEFAULT false, " +
+                "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                "PRIMARY KEY (journal_id, sequence))"),
+
+        new Migration(4, "Change notifications",
+            // Statement-level triggers: a bulk import sends one "table * 0" notice instead of one per row.
+            "CREATE OR REPLACE FUNCTION library_notify_change() RETURNS trigger AS $$ " +
+                "DECLARE changed_id integer; " +
+                "BEGIN " +
+                "IF (SELECT count(*) FROM changed_rows) > 100 THEN " +
+                "PERFORM pg_notify('library_changes', TG_TABLE_NAME || ' * 0'); " +
+                "ELSE " +
+                "FOR changed_id IN SELECT id FROM changed_rows LOOP " +
+                "PERFORM pg_notify('library_changes', TG_TABLE_NAME || ' ' || left(TG_OP, 1) || ' ' || changed_id); " +
+                "END LOOP; " +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS books_notify_insert ON books",
+            "CREATE TRIGGER books_notify_insert AFTER INSERT ON books REFERENCING NEW TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS books_notify_update ON books",
+            "CREATE TRIGGER books_notify_update AFTER UPDATE ON books REFERENCING NEW TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS books_notify_delete ON books",
+            "CREATE TRIGGER books_notify_delete AFTER DELETE ON books REFERENCING OLD TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS members_notify_insert ON members",
+            "CREATE TRIGGER members_notify_insert AFTER INSERT ON members REFERENCING NEW TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS members_notify_update ON members",
+            "CREATE TRIGGER members_notify_update AFTER UPDATE ON members REFERENCING NEW TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS members_notify_delete ON members",
+            "CREATE TRIGGER members_notify_delete AFTER DELETE ON members REFERENCING OLD TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS transactions_notify_insert ON transactions",
+            "CREATE TRIGGER transactions_notify_insert AFTER INSERT ON transactions REFERENCING NEW TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS transactions_notify_update ON transactions",
+            "CREATE TRIGGER transactions_notify_update AFTER UPDATE ON transactions REFERENCING NEW TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()",
+            "DROP TRIGGER IF EXISTS transactions_notify_delete ON transactions",
+            "CREATE TRIGGER transactions_notify_delete AFTER DELETE ON transactions REFERENCING OLD TABLE AS changed_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_change()"),
+
+        new Migration(5, "Change stamps and tombstones",
+            // One sequence for all tables; rows that predate it keep 0 and are never part of a delta.
+            "CREATE SEQUENCE IF NOT EXISTS library_change_seq",
+            "CREATE TABLE IF NOT EXISTS row_tombstones (" +
+                "table_name VARCHAR(32) NOT NULL, " +
+                "id INTEGER NOT NULL, " +
+                "change_seq BIGINT NOT NULL, " +
+                "change_xid xid8 NOT NULL, " +
+                "deleted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE INDEX IF NOT EXISTS idx_row_tombstones_change_seq ON row_tombstones (table_name, change_seq)",
+            "CREATE INDEX IF NOT EXISTS idx_row_tombstones_change_xid ON row_tombstones (change_xid)",
+            "CREATE OR REPLACE FUNCTION library_stamp_change() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "NEW.change_seq := nextval('library_change_seq'); " +
+                "NEW.change_xid := pg_current_xact_id(); " +
+                "RETURN NEW; " +
+                "END $$ LANGUAGE plpgsql",
+            "CREATE OR REPLACE FUNCTION library_record_delete() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "INSERT INTO row_tombstones (table_name, id, change_seq, change_xid) " +
+                "SELECT TG_TABLE_NAME, id, nextval('library_change_seq'), pg_current_xact_id() FROM deleted_rows; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "ALTER TABLE books ADD COLUMN IF NOT EXISTS change_seq BIGINT NOT NULL DEFAULT 0, " +
+                "ADD COLUMN IF NOT EXISTS change_xid xid8",
+            "CREATE INDEX IF NOT EXISTS idx_books_change_seq ON books (change_seq)",
+            "CREATE INDEX IF NOT EXISTS idx_books_change_xid ON books (change_xid)",
+            "DROP TRIGGER IF EXISTS books_stamp_change ON books",
+            "CREATE TRIGGER books_stamp_change BEFORE INSERT OR UPDATE ON books " +
+                "FOR EACH ROW EXECUTE FUNCTION library_stamp_change()",
+            "DROP TRIGGER IF EXISTS books_record_delete ON books",
+            "CREATE TRIGGER books_record_delete AFTER DELETE ON books REFERENCING OLD TABLE AS deleted_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_record_delete()",
+            "ALTER TABLE members ADD COLUMN IF NOT EXISTS change_seq BIGINT NOT NULL DEFAULT 0, " +
+                "ADD COLUMN IF NOT EXISTS change_xid xid8",
+            "CREATE INDEX IF NOT EXISTS idx_members_change_seq ON members (change_seq)",
+            "CREATE INDEX IF NOT EXISTS idx_members_change_xid ON members (change_xid)",
+            "DROP TRIGGER IF EXISTS members_stamp_change ON members",
+            "CREATE TRIGGER members_stamp_change BEFORE INSERT OR UPDATE ON members " +
+                "FOR EACH ROW EXECUTE FUNCTION library_stamp_change()",
+            "DROP TRIGGER IF EXISTS members_record_delete ON members",
+            "CREATE TRIGGER members_record_delete AFTER DELETE ON members REFERENCING OLD TABLE AS deleted_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_record_delete()",
+            "ALTER TABLE transactions ADD COLUMN IF NOT EXISTS change_seq BIGINT NOT NULL DEFAULT 0, " +
+                "ADD COLUMN IF NOT EXISTS change_xid xid8",
+            "CREATE INDEX IF NOT EXISTS idx_transactions_change_seq ON transactions (change_seq)",
+            "CREATE INDEX IF NOT EXISTS idx_transactions_change_xid ON transactions (change_xid)",
+            "DROP TRIGGER IF EXISTS transactions_stamp_change ON transactions",
+            "CREATE TRIGGER transactions_stamp_change BEFORE INSERT OR UPDATE ON transactions " +
+                "FOR EACH ROW EXECUTE FUNCTION library_stamp_change()",
+            "DROP TRIGGER IF EXISTS transactions_record_delete ON transactions",
+            "CREATE TRIGGER transactions_record_delete AFTER DELETE ON transactions REFERENCING OLD TABLE AS deleted_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_record_delete()"),
+
+        new Migration(6, "Due dates and fines",
+            "ALTER TABLE transactions ADD COLUMN IF NOT EXISTS due_date DATE, " +
+                "ADD COLUMN IF NOT EXISTS fine_cents INTEGER NOT NULL DEFAULT 0",
+            // Loans issued before due dates existed get the default 14-day term.
+            "UPDATE transactions SET due_date = issue_date + 14 WHERE due_date IS NULL",
+            "ALTER TABLE transactions ALTER COLUMN due_date SET NOT NULL",
+            // Overdue as of a date: status = 'issued' AND due_date < ?, a small slice of the open loans.
+            "CREATE INDEX IF NOT EXISTS idx_transactions_due ON transactions (due_date) WHERE status = 'issued'",
+            "ANALYZE transactions"),
+
+        new Migration(7, "Circulation counters",
+            // Running totals (day -infinity) and per-day counts, each split over 16 shards picked by
+            // backend pid so concurrent desks do not queue on one row. Readers sum the shards.
+            "CREATE TABLE IF NOT EXISTS circulation_counters (" +
+                "counter VARCHAR(16) NOT NULL, " +
+                "day DATE NOT NULL, " +
+                "shard SMALLINT NOT NULL, " +
+                "value BIGINT NOT NULL, " +
+                "PRIMARY KEY (counter, day, shard))",
+            "CREATE OR REPLACE FUNCTION library_count_books() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_OP = 'INSERT' THEN " + addCounts(bookCounts("new_rows", 1), SHARED_SHARD) +
+                "ELSIF TG_OP = 'DELETE' THEN " + addCounts(bookCounts("old_rows", -1), SHARED_SHARD) +
+                "ELSE " + addCounts(bookCounts("new_rows", 1) + " UNION ALL " + bookCounts("old_rows", -1), SHARED_SHARD) +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "CREATE OR REPLACE FUNCTION library_count_loans() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_OP = 'INSERT' THEN " + addCounts(loanCounts("new_rows", 1), SHARED_SHARD) +
+                "ELSIF TG_OP = 'DELETE' THEN " + addCounts(loanCounts("old_rows", -1), SHARED_SHARD) +
+                "ELSE " + addCounts(loanCounts("new_rows", 1) + " UNION ALL " + loanCounts("old_rows", -1), SHARED_SHARD) +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "CREATE OR REPLACE FUNCTION library_reset_counts() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_TABLE_NAME = 'books' THEN " +
+                "DELETE FROM circulation_counters WHERE counter IN ('books', 'available'); " +
+                "ELSE " +
+                "DELETE FROM circulation_counters WHERE counter IN ('open', 'due', 'loans', 'returns'); " +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS books_count_insert ON books",
+            "CREATE TRIGGER books_count_insert AFTER INSERT ON books REFERENCING NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_books()",
+            "DROP TRIGGER IF EXISTS books_count_update ON books",
+            "CREATE TRIGGER books_count_update AFTER UPDATE ON books " +
+                "REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_books()",
+            "DROP TRIGGER IF EXISTS books_count_delete ON books",
+            "CREATE TRIGGER books_count_delete AFTER DELETE ON books REFERENCING OLD TABLE AS old_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_books()",
+            "DROP TRIGGER IF EXISTS books_count_truncate ON books",
+            "CREATE TRIGGER books_count_truncate AFTER TRUNCATE ON books " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_reset_counts()",
+            "DROP TRIGGER IF EXISTS transactions_count_insert ON transactions",
+            "CREATE TRIGGER transactions_count_insert AFTER INSERT ON transactions REFERENCING NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_loans()",
+            "DROP TRIGGER IF EXISTS transactions_count_update ON transactions",
+            "CREATE TRIGGER transactions_count_update AFTER UPDATE ON transactions " +
+                "REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_loans()",
+            "DROP TRIGGER IF EXISTS transactions_count_delete ON transactions",
+            "CREATE TRIGGER transactions_count_delete AFTER DELETE ON transactions REFERENCING OLD TABLE AS old_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_loans()",
+            "DROP TRIGGER IF EXISTS transactions_count_truncate ON transactions",
+            "CREATE TRIGGER transactions_count_truncate AFTER TRUNCATE ON transactions " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_reset_counts()",
+            // The triggers' table locks keep writers out until commit, so this count misses nothing.
+            "DELETE FROM circulation_counters",
+            "INSERT INTO circulation_counters (counter, day, shard, value) " +
+                "SELECT counter, day, 0, sum(delta) FROM (" +
+                bookCounts("books", 1) + " UNION ALL " + loanCounts("transactions", 1) +
+                ") d WHERE day IS NOT NULL GROUP BY counter, day"),
+
+        new Migration(8, "Active loans per member",
+            // Open loans per member, kept by triggers so the loan limit in issueBook reads one
+            // locked member row instead of counting the member's transactions.
+            "ALTER TABLE members ADD COLUMN IF NOT EXISTS active_loans INTEGER NOT NULL DEFAULT 0",
+            // A loan moving active_loans is not a member edit: stamp only updates that change what
+            // the member panels show, so the count update stays HOT and out of the delta sync.
+            // Extend the column list when members get new editable columns.
+            "DROP TRIGGER IF EXISTS members_stamp_change ON members",
+            "CREATE TRIGGER members_stamp_change BEFORE INSERT ON members " +
+                "FOR EACH ROW EXECUTE FUNCTION library_stamp_change()",
+            "DROP TRIGGER IF EXISTS members_stamp_edit ON members",
+            "CREATE TRIGGER members_stamp_edit BEFORE UPDATE ON members FOR EACH ROW " +
+                "WHEN ((OLD.name, OLD.email, OLD.phone) IS DISTINCT FROM (NEW.name, NEW.email, NEW.phone)) " +
+                "EXECUTE FUNCTION library_stamp_change()",
+            // Statement triggers cannot have a WHEN clause, so the update notice picks out the rows
+            // the stamp trigger above stamped and stays silent for count-only updates.
+            "CREATE OR REPLACE FUNCTION library_notify_member_edit() RETURNS trigger AS $$ " +
+                "DECLARE edited integer[]; changed_id integer; " +
+                "BEGIN " +
+                "SELECT array_agg(n.id) INTO edited FROM new_rows n JOIN old_rows o ON o.id = n.id " +
+                "WHERE n.change_seq <> o.change_seq; " +
+                "IF edited IS NULL THEN " +
+                "RETURN NULL; " +
+                "ELSIF cardinality(edited) > 100 THEN " +
+                "PERFORM pg_notify('library_changes', TG_TABLE_NAME || ' * 0'); " +
+                "ELSE " +
+                "FOREACH changed_id IN ARRAY edited LOOP " +
+                "PERFORM pg_notify('library_changes', TG_TABLE_NAME || ' U ' || changed_id); " +
+                "END LOOP; " +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS members_notify_update ON members",
+            "CREATE TRIGGER members_notify_update AFTER UPDATE ON members " +
+                "REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_notify_member_edit()",
+            "CREATE OR REPLACE FUNCTION library_count_member_loans() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_OP = 'INSERT' THEN " + addMemberLoans(memberLoanCounts("new_rows", 1)) +
+                "ELSIF TG_OP = 'DELETE' THEN " + addMemberLoans(memberLoanCounts("old_rows", -1)) +
+                "ELSE " + addMemberLoans(memberLoanCounts("new_rows", 1) + " UNION ALL " +
+                    memberLoanCounts("old_rows", -1)) +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "CREATE OR REPLACE FUNCTION library_reset_member_loans() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "UPDATE members SET active_loans = 0 WHERE active_loans <> 0; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS transactions_member_loans_insert ON transactions",
+            "CREATE TRIGGER transactions_member_loans_insert AFTER INSERT ON transactions " +
+                "REFERENCING NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_member_loans()",
+            "DROP TRIGGER IF EXISTS transactions_member_loans_update ON transactions",
+            "CREATE TRIGGER transactions_member_loans_update AFTER UPDATE ON transactions " +
+                "REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_member_loans()",
+            "DROP TRIGGER IF EXISTS transactions_member_loans_delete ON transactions",
+            "CREATE TRIGGER transactions_member_loans_delete AFTER DELETE ON transactions " +
+                "REFERENCING OLD TABLE AS old_rows " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_count_member_loans()",
+            "DROP TRIGGER IF EXISTS transactions_member_loans_truncate ON transactions",
+            "CREATE TRIGGER transactions_member_loans_truncate AFTER TRUNCATE ON transactions " +
+                "FOR EACH STATEMENT EXECUTE FUNCTION library_reset_member_loans()",
+            // As in migration 7, the new triggers hold writers off until this backfill commits. It
+            // changes only active_loans, so it stamps no member and sends no notices.
+            "UPDATE members m SET active_loans = c.loans " +
+                "FROM (SELECT member_id, count(*) AS loans FROM transactions WHERE status = 'issued' " +
+                "GROUP BY member_id) c WHERE m.id = c.member_id"),
+
+        new Migration(9, "Per-backend circulation counter rows",
+            // Migration 7 let backends share a shard, and an issue locks its counter rows books first
+            // while a return locks them transactions first, so two desks on one shard could deadlock.
+            // Each backend now writes only rows keyed by its own pid, which no other writer touches;
+            // library_compact_counters folds them back into shard 0 and drops past days.
+            "ALTER TABLE circulation_counters ALTER COLUMN shard TYPE INTEGER",
+            "CREATE OR REPLACE FUNCTION library_count_books() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_OP = 'INSERT' THEN " + addCounts(bookCounts("new_rows", 1), BACKEND_SHARD) +
+                "ELSIF TG_OP = 'DELETE' THEN " + addCounts(bookCounts("old_rows", -1), BACKEND_SHARD) +
+                "ELSE " + addCounts(bookCounts("new_rows", 1) + " UNION ALL " + bookCounts("old_rows", -1),
+                    BACKEND_SHARD) +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            "CREATE OR REPLACE FUNCTION library_count_loans() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_OP = 'INSERT' THEN " + addCounts(loanCounts("new_rows", 1), BACKEND_SHARD) +
+                "ELSIF TG_OP = 'DELETE' THEN " + addCounts(loanCounts("old_rows", -1), BACKEND_SHARD) +
+                "ELSE " + addCounts(loanCounts("new_rows", 1) + " UNION ALL " + loanCounts("old_rows", -1),
+                    BACKEND_SHARD) +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END $$ LANGUAGE plpgsql",
+            // Moves backend rows into shard 0, folds due dates before yesterday into yesterday (only
+            // "due before today" is ever read) and drops loans and returns of past days. Rows a writer
+            // holds are skipped for the next run, so compaction never waits on a desk; the advisory
+            // lock keeps two compactions off shard 0 at once. Returns the shard 0 rows written.
+            "CREATE OR REPLACE FUNCTION library_compact_counters() RETURNS bigint AS $$ " +
+                "DECLARE written bigint; " +
+                "BEGIN " +
+                "IF NOT pg_try_advisory_xact_lock(hashtext('circulation_counters')) THEN RETURN 0; END IF; " +
+                "WITH taken AS (" +
+                    "DELETE FROM circulation_counters WHERE (counter, day, shard) IN (" +
+                        "SELECT counter, day, shard FROM circulation_counters " +
+                        "WHERE shard <> 0 OR (counter = 'due' AND day < current_date - 1) " +
+                        "OR (counter IN ('loans', 'returns') AND day < current_date) " +
+                        "FOR UPDATE SKIP LOCKED) " +
+                    "RETURNING counter, day, value" +
+                "), folded AS (" +
+                    "SELECT counter, CASE WHEN counter = 'due' THEN greatest(day, current_date - 1) ELSE day END " +
+                    "AS day, sum(value) AS value FROM taken " +
+                    "WHERE counter NOT IN ('loans', 'returns') OR day >= current_date " +
+                    "GROUP BY 1, 2 HAVING sum(value) <> 0" +
+                ") " +
+                "INSERT INTO circulation_counters AS c (counter, day, shard, value) " +
+                "SELECT counter, day, 0, value FROM folded ORDER BY counter, day " +
+                "ON CONFLICT (counter, day, shard) DO UPDATE SET value = c.value + EXCLUDED.value; " +
+                "GET DIAGNOSTICS written = ROW_COUNT; " +
+                "DELETE FROM circulation_counters WHERE shard = 0 AND value = 0; " +
+                "RETURN written; " +
+                "END $$ LANGUAGE plpgsql",
+            "SELECT library_compact_counters()"),
+
+        new Migration(10, "Full-text search columns and indexes",
+            // Used by SearchMode.FULLTEXT. The generated columns rewrite their tables and the GIN builds
+            // hold off writers, so this belongs at startup under the migration lock. Without the
+            // privilege to create pg_trgm the rest still applies and SearchSchema reports the full-text
+            // mode unavailable, so the DAOs keep using plain ILIKE.
+            "DO $$ BEGIN " +
+                "CREATE EXTENSION IF NOT EXISTS pg_trgm; " +
+                "EXCEPTION WHEN insufficient_privilege THEN " +
+                "RAISE WARNING 'pg_trgm not installed, full-text search disabled: %', SQLERRM; " +
+                "END $$",
+            "ALTER TABLE books ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+                "GENERATED ALWAYS AS (to_tsvector('simple', coalesce(title, '') || ' ' || coalesce(author, ''))) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_books_search_vector ON books USING gin (search_vector)",
+            "ALTER TABLE members ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+                "GENERATED ALWAYS AS (to_tsvector('simple', coalesce(name, '') || ' ' || coalesce(email, ''))) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_members_search_vector ON members USING gin (search_vector)",
+            // Trigram indexes let ILIKE '%keyword%' use an index.
+            "DO $$ BEGIN " +
+                "IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm') THEN " +
+                "CREATE INDEX IF NOT EXISTS idx_books_title_trgm ON books USING gin (title gin_trgm_ops); " +
+                "CREATE INDEX IF NOT EXISTS idx_books_author_trgm ON books USING gin (author gin_trgm_ops); " +
+                "CREATE INDEX IF NOT EXISTS idx_books_isbn_trgm ON books USING gin (isbn gin_trgm_ops); " +
+                "CREATE INDEX IF NOT EXISTS idx_members_name_trgm ON members USING gin (name gin_trgm_ops); " +
+                "CREATE INDEX IF NOT EXISTS idx_members_email_trgm ON members USING gin (email gin_trgm_ops); " +
+                "CREATE INDEX IF NOT EXISTS idx_members_phone_trgm ON members USING gin (phone gin_trgm_ops); " +
+                "END IF; " +
+                "END $$",
+            "ANALYZE books",
+            "ANALYZE members")
+    );
+
+    /**
+     * Applies every migration the database does not have yet and returns how many
+     * were applied.
+     */
+    public static int migrate() throws SQLException {
+        int latest = MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            if (currentVersion(conn) >= latest) {
+                return 0;
+            }
+
+            try (PreparedStatement lock = conn.prepareStatement("SELECT pg_advisory_lock(?)")) {
+                lock.setLong(1, LOCK_KEY);
+                lock.execute();
+            }
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                                "version INTEGER PRIMARY KEY, " +
+                                "description VARCHAR(255) NOT NULL, " +
+                                "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+                }
+
+                // Re-read under the lock: another desk may have migrated in the meantime.
+                int current = currentVersion(conn);
+                int applied = 0;
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version() > current) {
+                        apply(conn, migration);
+                        applied++;
+                    }
+                }
+                return applied;
+            } finally {
+                try (PreparedStatement unlock = conn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, LOCK_KEY);
+                    unlock.execute();
+                }
+            }
+        }
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT coalesce(max(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            // undefined_table: a database that has never been migrated.
+            if ("42P01".equals(e.getSQLState())) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : migration.statements()) {
+                stmt.execute(sql);
+            }
+            try (PreparedStatement record = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                record.setInt(1, migration.version());
+                record.setString(2, migration.description());
+                record.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Migration " + migration.version() + " (" + migration.description()
+                + ") failed: " + e.getMessage(), e.getSQLState(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        LOG.info("Applied migration " + migration.version() + " (" + migration.description() + ") in "
+            + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Adds the {@code (counter, day, delta)} rows selected by {@code deltas} to
+     * the {@code shard} of {@code circulation_counters}, one upsert per counter
+     * and day in (counter, day) order, skipping the ones that net to zero.
+     */
+    private static String addCounts(String deltas, String shard) {
+        return "INSERT INTO circulation_counters AS c (counter, day, shard, value) " +
+            "SELECT counter, day, " + shard + ", sum(delta) FROM (" + deltas + ") d " +
+            "WHERE day IS NOT NULL GROUP BY counter, day HAVING sum(delta) <> 0 ORDER BY counter, day " +
+            "ON CONFLICT (counter, day, shard) DO UPDATE SET value = c.value + EXCLUDED.value; ";
+    }
+
+    /**
+     * Counter deltas for book rows: every book, and the available ones.
+     */
+    private static String bookCounts(String rows, int sign) {
+        return "SELECT 'books' AS counter, '-infinity'::date AS day, " + sign + " AS delta FROM " + rows +
+            " UNION ALL SELECT 'available', '-infinity'::date, " + sign + " FROM " + rows + " WHERE available";
+    }
+
+    /**
+     * Counter deltas for loan rows: open loans in total and by due date, and
+     * loans and returns by the day they happened.
+     */
+    private static String loanCounts(String rows, int sign) {
+        return "SELECT 'open' AS counter, '-infinity'::date AS day, " + sign + " AS delta FROM " + rows +
+            " WHERE status = 'issued'" +
+            " UNION ALL SELECT 'due', due_date, " + sign + " FROM " + rows + " WHERE status = 'issued'" +
+            " UNION ALL SELECT 'loans', issue_date, " + sign + " FROM " + rows +
+            " UNION ALL SELECT 'returns', return_date, " + sign + " FROM " + rows;
+    }
+
+    /**
+     * Adds the {@code (member_id, delta)} rows selected by {@code deltas} to
+     * {@code members.active_loans}, touching only members whose count changes.
+     */
+    private static String addMemberLoans(String deltas) {
+        return "UPDATE members m SET active_loans = m.active_loans + d.delta FROM (" +
+            "SELECT member_id, sum(delta) AS delta FROM (" + deltas + ") c " +
+            "GROUP BY member_id HAVING sum(delta) <> 0) d " +
+            "WHERE m.id = d.member_id; ";
+    }
+
+    /**
+     * Active-loan deltas for loan rows: one per open loan.
+     */
+    private static String memberLoanCounts(String rows, int sign) {
+        return "SELECT member_id, " + sign + " AS delta FROM " + rows + " WHERE status = 'issued'";
+    }
+
+    private record Migration(int version, String description, List<String> statements) {
+        Migration(int version, String description, String... statements) {
+            this(version, description, List.of(statements));
+        }
+    }
+}
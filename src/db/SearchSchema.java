@@ -0,0 +1,84 @@
+package db;
+
+import config.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The database side of {@link search.SearchMode#FULLTEXT}: the pg_trgm
+ * extension, trigram GIN indexes on the searchable text columns (which let
+ * {@code ILIKE '%keyword%'} use an index) and a generated tsvector column with
+ * its own GIN index for word and prefix matching, all installed by migration 10
+ * in {@link MigrationRunner}.
+ * <p>
+ * If the migration could not create the extension, for example because the
+ * database user may not, or the migrations have not run, the schema is
+ * reported as unavailable and the DAOs keep using the plain ILIKE queries.
+ */
+public class SearchSchema {
+    private static final Logger LOG = Logger.getLogger(SearchSchema.class.getName());
+
+    private static volatile Boolean available;
+
+    /**
+     * Whether the full-text objects are in place. The catalog is checked once
+     * per process.
+     */
+    public static boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            synchronized (SearchSchema.class) {
+                result = available;
+                if (result == null) {
+                    result = probe();
+                    available = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the tsquery text for prefix matching of every word in the keyword,
+     * e.g. {@code "lord ring"} becomes {@code "lord:* & ring:*"}. Only letters and
+     * digits survive, so the result is always valid tsquery syntax. Returns
+     * {@code null} if the keyword has no words.
+     */
+    public static String prefixQuery(String keyword) {
+        StringBuilder query = new StringBuilder();
+        for (String word : keyword.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(" & ");
+            }
+            query.append(word.toLowerCase()).append(":*");
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    private static boolean probe() {
+        String query = "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm') " +
+                      "AND to_regclass('idx_books_search_vector') IS NOT NULL " +
+                      "AND to_regclass('idx_members_search_vector') IS NOT NULL";
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            rs.next();
+            boolean ready = rs.getBoolean(1);
+            if (!ready) {
+                LOG.warning("Search schema from migration 10 is not installed; using ILIKE search");
+            }
+            return ready;
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "Could not check search schema; using ILIKE search", e);
+            return false;
+        }
+    }
+}
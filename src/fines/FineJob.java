@@ -0,0 +1,91 @@
+package fines;
+
+import dao.LoanPolicy;
+import repository.FineAssessment;
+import repository.TransactionRepository;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Assesses fines on open loans once a night, at {@code library.fines.runAt}
+ * (02:00 by default), when {@code library.fines.enabled} is set. Each run is
+ * scheduled when the previous one ends, so runs never overlap and stay at the
+ * same wall-clock time across daylight saving changes.
+ */
+public final class FineJob {
+    private static final Logger LOG = Logger.getLogger(FineJob.class.getName());
+    private static final boolean ENABLED = Boolean.getBoolean("library.fines.enabled");
+    private static final LocalTime RUN_AT = LocalTime.parse(System.getProperty("library.fines.runAt", "02:00"));
+
+    private static ScheduledExecutorService scheduler;
+
+    private FineJob() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static synchronized void start(TransactionRepository repository) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fine-job");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleNext(repository);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Assesses fines as of today under the current {@link LoanPolicy} and logs
+     * the outcome.
+     */
+    public static FineAssessment run(TransactionRepository repository) throws SQLException {
+        long start = System.nanoTime();
+        FineAssessment result = repository.assessFines(LocalDate.now(), LoanPolicy.current());
+        LOG.info(String.format(Locale.ROOT,
+            "Assessed fines as of %s: %d open loans, %d overdue, %d fines changed, %d.%02d owed, in %d ms",
+            result.asOf(), result.openLoans(), result.overdueLoans(), result.updatedLoans(),
+            result.totalFineCents() / 100, result.totalFineCents() % 100,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return result;
+    }
+
+    private static synchronized void scheduleNext(TransactionRepository repository) {
+        if (scheduler == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(RUN_AT);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.schedule(() -> {
+            try {
+                run(repository);
+            } catch (SQLException | RuntimeException e) {
+                LOG.log(Level.WARNING, "Fine assessment failed", e);
+            }
+            scheduleNext(repository);
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
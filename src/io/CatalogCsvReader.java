@@ -0,0 +1,175 @@
+package io;
+
+import models.Book;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams books out of a CSV catalog export one record at a time, so a file of
+ * any size can be imported without loading it into memory.
+ * <p>
+ * Fields follow RFC 4180: they may be quoted, quotes inside a quoted field are
+ * doubled and quoted fields may span lines. If the first record names the
+ * columns ({@code title}, {@code author}, {@code isbn}, optionally
+ * {@code available}) it is used as the header, in any order; otherwise the
+ * columns are taken to be title, author, isbn. Blank ISBNs become null.
+ * Records without a title are skipped.
+ */
+public class CatalogCsvReader implements Iterator<Book>, Closeable {
+    private final BufferedReader reader;
+    private int titleColumn = 0;
+    private int authorColumn = 1;
+    private int isbnColumn = 2;
+    private int availableColumn = -1;
+    private Book next;
+    private long lineNumber;
+
+    public CatalogCsvReader(Path file) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+
+        List<String> first = readRecord();
+        List<String> names = first == null ? List.of() : columnNames(first);
+        if (names.contains("title")) {
+            titleColumn = names.indexOf("title");
+            authorColumn = names.indexOf("author");
+            isbnColumn = names.indexOf("isbn");
+            availableColumn = names.indexOf("available");
+            first = null;
+        }
+        next = first == null ? null : toBook(first);
+        if (next == null) {
+            next = advance();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Book next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Book current = next;
+        next = advance();
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Book advance() {
+        try {
+            List<String> record;
+            while ((record = readRecord()) != null) {
+                Book book = toBook(record);
+                if (book != null) {
+                    return book;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading catalog at line " + lineNumber, e);
+        }
+    }
+
+    private Book toBook(List<String> record) {
+        String title = field(record, titleColumn);
+        if (title == null) {
+            return null;
+        }
+        Book book = new Book(title, field(record, authorColumn), field(record, isbnColumn));
+        String available = field(record, availableColumn);
+        if (available != null) {
+            book.setAvailable(!available.equalsIgnoreCase("false") && !available.equals("0"));
+        }
+        return book;
+    }
+
+    private static String field(List<String> record, int column) {
+        if (column < 0 || column >= record.size()) {
+            return null;
+        }
+        String value = record.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static List<String> columnNames(List<String> record) {
+        List<String> names = new ArrayList<>(record.size());
+        for (String value : record) {
+            names.add(value.trim().toLowerCase(Locale.ROOT));
+        }
+        return names;
+    }
+
+    private List<String> readRecord() throws IOException {
+        String line = reader.readLine();
+        while (line != null && line.isBlank()) {
+            lineNumber++;
+            line = reader.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        lineNumber++;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // Quoted field continues on the next line.
+                line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                lineNumber++;
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
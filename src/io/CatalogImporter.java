@@ -0,0 +1,44 @@
+package io;
+
+import dao.BookDAO;
+import dao.ImportProgress;
+import repository.BookRepository;
+import search.BookSearchIndex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Imports a CSV catalog into the books table. By default the rows are streamed
+ * with PostgreSQL COPY; {@code -Dlibrary.import.mode=batch} switches to batched
+ * INSERTs, which work with any JDBC driver. Repositories other than the JDBC
+ * one always take the rows through {@link BookRepository#addBooks}.
+ */
+public class CatalogImporter {
+    private static final boolean USE_COPY = !"batch".equalsIgnoreCase(System.getProperty("library.import.mode", "copy"));
+
+    private final BookRepository books;
+
+    public CatalogImporter(BookRepository books) {
+        this.books = books;
+    }
+
+    public ImportProgress importCsv(Path file, Consumer<ImportProgress> listener) throws SQLException {
+        ImportProgress result;
+        try (CatalogCsvReader reader = new CatalogCsvReader(file)) {
+            result = USE_COPY && books instanceof BookDAO bookDAO
+                ? bookDAO.copyBooks(reader, listener) : books.addBooks(() -> reader, listener);
+        } catch (IOException | UncheckedIOException e) {
+            throw new SQLException("Could not read " + file.getFileName() + ": " + e.getMessage(), e);
+        }
+
+        // Imported rows bypass the per-book hooks, so the search index is rebuilt from the table.
+        if (result.inserted() > 0 && BookSearchIndex.isEnabled()) {
+            BookSearchIndex.getInstance().buildInBackground(books);
+        }
+        return result;
+    }
+}
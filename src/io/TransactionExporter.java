@@ -0,0 +1,230 @@
+package io;
+
+import dao.TransactionFilter;
+import models.Transaction;
+import repository.TransactionRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Writes circulation history to a file as CSV or JSON Lines while the rows are
+ * still arriving from the database. Each row is encoded into a fixed direct
+ * buffer that is flushed to a {@link FileChannel} when full, so memory use does
+ * not depend on the size of the history.
+ */
+public class TransactionExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "id,book_id,book_title,member_id,member_name,issue_date,return_date,status\n";
+
+    public enum Format {
+        CSV("CSV", "csv"),
+        JSON_LINES("JSON Lines", "jsonl");
+
+        private final String label;
+        private final String extension;
+
+        Format(String label, String extension) {
+            this.label = label;
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final TransactionRepository transactions;
+
+    public TransactionExporter(TransactionRepository transactions) {
+        this.transactions = transactions;
+    }
+
+    /**
+     * Exports the matching transactions to {@code file}, replacing it, and returns
+     * the number of rows written. A failed export deletes the partial file.
+     */
+    public long export(TransactionFilter filter, Format format, Path file) throws SQLException {
+        long count;
+        try (ChannelWriter writer = new ChannelWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            StringBuilder line = new StringBuilder(256);
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+            }
+            count = transactions.streamTransactions(filter, transaction -> {
+                line.setLength(0);
+                if (format == Format.CSV) {
+                    appendCsv(line, transaction);
+                } else {
+                    appendJson(line, transaction);
+                }
+                writer.write(line);
+            });
+        } catch (IOException | UncheckedIOException e) {
+            deletePartial(file);
+            throw new SQLException("Could not write " + file.getFileName() + ": " + e.getMessage(), e);
+        } catch (SQLException | RuntimeException e) {
+            deletePartial(file);
+            throw e;
+        }
+        return count;
+    }
+
+    private static void deletePartial(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // The export failure is the one worth reporting.
+        }
+    }
+
+    private static void appendCsv(StringBuilder line, Transaction t) {
+        line.append(t.getId()).append(',')
+            .append(t.getBookId()).append(',');
+        appendCsvField(line, t.getBookTitle());
+        line.append(',').append(t.getMemberId()).append(',');
+        appendCsvField(line, t.getMemberName());
+        line.append(',').append(t.getIssueDate()).append(',')
+            .append(t.getReturnDate() == null ? "" : t.getReturnDate().toString()).append(',');
+        appendCsvField(line, t.getStatus());
+        line.append('\n');
+    }
+
+    private static void appendCsvField(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+            || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static void appendJson(StringBuilder line, Transaction t) {
+        line.append("{\"id\":").append(t.getId())
+            .append(",\"bookId\":").append(t.getBookId())
+            .append(",\"bookTitle\":");
+        appendJsonString(line, t.getBookTitle());
+        line.append(",\"memberId\":").append(t.getMemberId())
+            .append(",\"memberName\":");
+        appendJsonString(line, t.getMemberName());
+        line.append(",\"issueDate\":");
+        appendJsonDate(line, t.getIssueDate());
+        line.append(",\"returnDate\":");
+        appendJsonDate(line, t.getReturnDate());
+        line.append(",\"status\":");
+        appendJsonString(line, t.getStatus());
+        line.append("}\n");
+    }
+
+    private static void appendJsonDate(StringBuilder line, LocalDate date) {
+        if (date == null) {
+            line.append("null");
+        } else {
+            line.append('"').append(date).append('"');
+        }
+    }
+
+    private static void appendJsonString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * UTF-8 encodes text into a reusable direct buffer in front of a channel.
+     */
+    private static final class ChannelWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(CharSequence text) {
+            CharBuffer chars = CharBuffer.wrap(text);
+            try {
+                while (true) {
+                    CoderResult result = encoder.encode(chars, buffer, true);
+                    if (result.isUnderflow()) {
+                        break;
+                    }
+                    if (result.isOverflow()) {
+                        drain();
+                    } else {
+                        result.throwException();
+                    }
+                }
+                encoder.reset();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of circulation operations in a memory-mapped file.
+ * <p>
+ * The file starts with a header holding the journal id and the checkpoint, the
+ * sequence of the last entry known to be in the database. Entries follow as
+ * fixed-size records, each ending with a CRC32C of its other bytes. On open the
+ * records are read back up to the first one that is blank, fails its checksum
+ * (a write torn by a crash) or does not continue the sequence (left over from
+ * before the file was last rewound); everything after the checkpoint is
+ * pending again. Once nothing is pending and the file is half full, writing
+ * starts over at the first record.
+ * <p>
+ * An entry is forced to disk before {@link #append} returns unless
+ * {@code sync} is off. The checkpoint is not forced: entries replayed twice
+ * after a crash are recognised by the database, see
+ * {@code TransactionDAO.replayIssue}. It is forced when the file rewinds, and
+ * entries up to {@link #durableCheckpoint} can never be replayed again.
+ */
+public class CirculationJournal implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(CirculationJournal.class.getName());
+    private static final int MAGIC = 0x4c4a524e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CHECKPOINT_OFFSET = 24;
+    static final int RECORD_SIZE = 32;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean sync;
+    private final String journalId;
+    private final ArrayDeque<JournalEntry> pending = new ArrayDeque<>();
+    private final CRC32C crc = new CRC32C();
+
+    private int position;
+    private long nextSequence;
+    private long checkpoint;
+    private long durableCheckpoint;
+
+    private CirculationJournal(FileChannel channel, MappedByteBuffer buffer, boolean sync) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.sync = sync;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC) {
+            UUID id = UUID.randomUUID();
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, id.getMostSignificantBits());
+            buffer.putLong(16, id.getLeastSignificantBits());
+            buffer.putLong(CHECKPOINT_OFFSET, 0);
+            buffer.put(HEADER_SIZE, (byte) 0);
+            buffer.force();
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported circulation journal version " + buffer.getInt(4));
+        }
+        journalId = new UUID(buffer.getLong(8), buffer.getLong(16)).toString();
+        checkpoint = buffer.getLong(CHECKPOINT_OFFSET);
+        durableCheckpoint = checkpoint;
+        recover();
+    }
+
+    /**
+     * Opens the journal at {@code path}, creating a file of {@code capacity}
+     * bytes if there is none.
+     */
+    public static CirculationJournal open(Path path, int capacity, boolean sync) throws IOException {
+        if (capacity < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal capacity too small: " + capacity);
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = Math.max(channel.size(), capacity);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new CirculationJournal(channel, buffer, sync);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String getJournalId() {
+        return journalId;
+    }
+
+    /**
+     * Records an operation and returns it with its sequence number.
+     */
+    public synchronized JournalEntry append(JournalEntry.Operation operation, int targetId, int memberId,
+                                            LocalDate date) throws IOException {
+        if (position + RECORD_SIZE > buffer.capacity()) {
+            if (!pending.isEmpty()) {
+                throw new IOException("Circulation journal is full; " + pending.size()
+                    + " operations are still waiting for the database");
+            }
+            rewind();
+        }
+
+        JournalEntry entry = new JournalEntry(nextSequence++, operation, targetId, memberId, date);
+        write(position, entry);
+        if (sync) {
+            buffer.force(position, RECORD_SIZE);
+        }
+        position += RECORD_SIZE;
+        pending.addLast(entry);
+        notifyAll();
+        return entry;
+    }
+
+    /**
+     * Up to {@code max} pending entries, oldest first, waiting up to
+     * {@code timeoutMillis} for one to arrive when there are none. Entries stay
+     * pending until they are passed to {@link #checkpoint}.
+     */
+    public synchronized List<JournalEntry> awaitPending(int max, long timeoutMillis) throws InterruptedException {
+        if (pending.isEmpty() && timeoutMillis > 0) {
+            wait(timeoutMillis);
+        }
+        List<JournalEntry> entries = new ArrayList<>(Math.min(max, pending.size()));
+        for (JournalEntry entry : pending) {
+            if (entries.size() == max) {
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Marks every entry up to {@code sequence} as applied.
+     */
+    public synchronized void checkpoint(long sequence) {
+        while (!pending.isEmpty() && pending.peekFirst().sequence() <= sequence) {
+            pending.removeFirst();
+        }
+        checkpoint = Math.max(checkpoint, sequence);
+        buffer.putLong(CHECKPOINT_OFFSET, checkpoint);
+        if (pending.isEmpty() && position - HEADER_SIZE > (buffer.capacity() - HEADER_SIZE) / 2) {
+            rewind();
+        }
+    }
+
+    /**
+     * The checkpoint as last forced to disk. No entry at or below it is ever
+     * pending again, even after a crash, so the database no longer needs to
+     * recognise it.
+     */
+    public synchronized long durableCheckpoint() {
+        return durableCheckpoint;
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void recover() {
+        long last = checkpoint;
+        long previous = -1;
+        int offset = HEADER_SIZE;
+        int recovered = 0;
+        while (offset + RECORD_SIZE <= buffer.capacity()) {
+            JournalEntry entry = read(offset);
+            if (entry == null || entry.sequence() <= previous) {
+                break;
+            }
+            previous = entry.sequence();
+            last = Math.max(last, entry.sequence());
+            if (entry.sequence() > checkpoint) {
+                pending.addLast(entry);
+                recovered++;
+            }
+            offset += RECORD_SIZE;
+        }
+        position = offset;
+        nextSequence = last + 1;
+        if (recovered > 0) {
+            LOG.info("Circulation journal " + journalId + ": " + recovered + " operations waiting to be replayed");
+        }
+    }
+
+    /**
+     * Starts writing at the first record again. Only valid when nothing is pending.
+     * Forces the checkpoint along with the blanked record.
+     */
+    private void rewind() {
+        position = HEADER_SIZE;
+        buffer.put(HEADER_SIZE, (byte) 0);
+        buffer.force();
+        durableCheckpoint = checkpoint;
+    }
+
+    private void write(int offset, JournalEntry entry) {
+        buffer.put(offset, entry.operation().code());
+        buffer.put(offset + 1, (byte) 0);
+        buffer.putShort(offset + 2, (short) 0);
+        buffer.putLong(offset + 4, entry.sequence());
+        buffer.putInt(offset + 12, entry.targetId());
+        buffer.putInt(offset + 16, entry.memberId());
+        buffer.putLong(offset + 20, entry.date().toEpochDay());
+        buffer.putInt(offset + CRC_OFFSET, checksum(offset));
+    }
+
+    private JournalEntry read(int offset) {
+        JournalEntry.Operation operation = JournalEntry.Operation.fromCode(buffer.get(offset));
+        if (operation == null || buffer.getInt(offset + CRC_OFFSET) != checksum(offset)) {
+            return null;
+        }
+        return new JournalEntry(buffer.getLong(offset + 4), operation, buffer.getInt(offset + 12),
+            buffer.getInt(offset + 16), LocalDate.ofEpochDay(buffer.getLong(offset + 20)));
+    }
+
+    private int checksum(int offset) {
+        crc.reset();
+        crc.update(buffer.slice(offset, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,15 @@
+package journal;
+
+/**
+ * A journaled operation that the database did not apply as recorded, with the
+ * reason shown to the desk.
+ */
+public record JournalConflict(JournalEntry entry, String reason) {
+
+    public String describe() {
+        String what = entry.operation() == JournalEntry.Operation.ISSUE
+            ? "Issue of book " + entry.targetId() + " to member " + entry.memberId() + " on " + entry.date()
+            : "Return of transaction " + entry.targetId() + " on " + entry.date();
+        return what + " was not applied: " + reason;
+    }
+}
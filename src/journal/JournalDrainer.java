@@ -0,0 +1,237 @@
+package journal;
+
+import cache.EntityCaches;
+import config.DatabaseConfig;
+import counters.CirculationCounters;
+import dao.CirculationOutcome;
+import dao.TransactionDAO;
+import metrics.Metrics;
+import metrics.OperationMetrics;
+import models.Transaction;
+import search.BookSearchIndex;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that replays the circulation journal into the database in
+ * journal order.
+ * <p>
+ * Pending entries are applied in batches, one database transaction per batch,
+ * and checkpointed once it commits. When the database cannot be reached the
+ * same batch is retried with a growing pause. When it rejects an entry outright
+ * the batch is replayed one entry at a time and the offending entry is marked
+ * as skipped, so one bad operation never holds up the rest. Issues of books
+ * that are no longer available, returns of loans already closed and entries
+ * that were skipped are reported to the conflict listeners.
+ * <p>
+ * Rows in {@code circulation_journal} are only needed to recognise an entry
+ * replayed twice, so they are deleted once the journal's durable checkpoint
+ * has passed them.
+ */
+public class JournalDrainer {
+    private static final Logger LOG = Logger.getLogger(JournalDrainer.class.getName());
+    private static final OperationMetrics REPLAY = Metrics.operation("JournalDrainer.replay");
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final CirculationJournal journal;
+    private final TransactionDAO transactionDAO;
+    private final int batchSize;
+    private final List<Consumer<JournalConflict>> conflictListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+    private Thread thread;
+    private long pruned;
+
+    public JournalDrainer(CirculationJournal journal, TransactionDAO transactionDAO, int batchSize) {
+        this.journal = journal;
+        this.transactionDAO = transactionDAO;
+        this.batchSize = batchSize;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = Thread.ofPlatform().name("journal-drainer").daemon().start(this::run);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    public void addConflictListener(Consumer<JournalConflict> listener) {
+        conflictListeners.add(listener);
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF_MS;
+        boolean outage = false;
+        while (running) {
+            try {
+                List<JournalEntry> batch = journal.awaitPending(batchSize, 1000);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                drain(batch);
+                prune();
+                if (outage) {
+                    LOG.info("Database reachable again; replaying the circulation journal");
+                    outage = false;
+                }
+                backoff = MIN_BACKOFF_MS;
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException e) {
+                if (!outage) {
+                    LOG.log(Level.WARNING, "Cannot replay the circulation journal (" + journal.pendingCount()
+                        + " operations waiting); retrying", e);
+                    outage = true;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    /**
+     * Replays the batch as a whole, or entry by entry if the database rejects
+     * one of them. Throws only for errors worth retrying later.
+     */
+    private void drain(List<JournalEntry> batch) throws SQLException {
+        try {
+            replay(batch);
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            if (batch.size() == 1) {
+                if (!skip(batch.get(0), e)) {
+                    throw e;
+                }
+                return;
+            }
+            for (JournalEntry entry : batch) {
+                try {
+                    replay(List.of(entry));
+                } catch (SQLException single) {
+                    if (isTransient(single) || !skip(entry, single)) {
+                        throw single;
+                    }
+                }
+            }
+        }
+    }
+
+    private void replay(List<JournalEntry> batch) throws SQLException {
+        List<TransactionDAO.Replayed> results = new ArrayList<>(batch.size());
+        REPLAY.run(() -> {
+            try (Connection conn = DatabaseConfig.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (JournalEntry entry : batch) {
+                        results.add(apply(conn, entry));
+                    }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            REPLAY.addRows(batch.size());
+        });
+        journal.checkpoint(batch.get(batch.size() - 1).sequence());
+
+        for (int i = 0; i < batch.size(); i++) {
+            TransactionDAO.Replayed result = results.get(i);
+            if (result == null) {
+                continue;
+            }
+            CirculationOutcome outcome = result.outcome();
+            if (outcome.isSuccess()) {
+                CirculationCounters.getInstance().markStale();
+                EntityCaches.books().invalidate(result.bookId());
+                BookSearchIndex.getInstance().availabilityChanged(result.bookId(), outcome == CirculationOutcome.RETURNED);
+            } else {
+                report(new JournalConflict(batch.get(i), outcome.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Drops the replay log rows the durable checkpoint has passed. A failure is
+     * left for the next batch to retry.
+     */
+    private void prune() {
+        long durable = journal.durableCheckpoint();
+        if (durable <= pruned) {
+            return;
+        }
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            int deleted = transactionDAO.pruneJournal(conn, journal.getJournalId(), durable);
+            pruned = durable;
+            LOG.fine(() -> "Pruned " + deleted + " circulation journal rows up to " + durable);
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Could not prune the circulation journal replay log", e);
+        }
+    }
+
+    private TransactionDAO.Replayed apply(Connection conn, JournalEntry entry) throws SQLException {
+        String journalId = journal.getJournalId();
+        if (entry.operation() == JournalEntry.Operation.ISSUE) {
+            Transaction transaction = new Transaction(entry.targetId(), entry.memberId(), entry.date());
+            return transactionDAO.replayIssue(conn, journalId, entry.sequence(), transaction);
+        }
+        return transactionDAO.replayReturn(conn, journalId, entry.sequence(), entry.targetId(), entry.date());
+    }
+
+    /**
+     * Records the entry as handled without applying it. Returns false if that
+     * failed too, in which case the entry stays pending.
+     */
+    private boolean skip(JournalEntry entry, SQLException cause) {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            boolean skipped = transactionDAO.skipJournalEntry(conn, journal.getJournalId(), entry.sequence());
+            journal.checkpoint(entry.sequence());
+            if (skipped) {
+                LOG.log(Level.WARNING, "Skipped circulation journal entry " + entry, cause);
+                report(new JournalConflict(entry, cause.getMessage()));
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void report(JournalConflict conflict) {
+        LOG.warning(conflict.describe());
+        for (Consumer<JournalConflict> listener : conflictListeners) {
+            listener.accept(conflict);
+        }
+    }
+
+    /**
+     * Connection failures, shutdowns, lack of resources and serialization
+     * failures: errors that go away if the same work is retried later.
+     */
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return state == null || state.startsWith("08") || state.startsWith("57")
+            || state.startsWith("53") || state.startsWith("40");
+    }
+}
@@ -0,0 +1,34 @@
+package journal;
+
+import java.time.LocalDate;
+
+/**
+ * One circulation operation recorded in the journal. For an issue
+ * {@code targetId} is the book and {@code date} the issue date; for a return it
+ * is the transaction and the date the book came back.
+ */
+public record JournalEntry(long sequence, Operation operation, int targetId, int memberId, LocalDate date) {
+
+    public enum Operation {
+        ISSUE(1), RETURN(2);
+
+        private final byte code;
+
+        Operation(int code) {
+            this.code = (byte) code;
+        }
+
+        byte code() {
+            return code;
+        }
+
+        static Operation fromCode(byte code) {
+            for (Operation operation : values()) {
+                if (operation.code == code) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package journal;
+
+import dao.CirculationOutcome;
+import dao.LoanPolicy;
+import dao.TransactionFilter;
+import models.Transaction;
+import repository.Delta;
+import repository.FineAssessment;
+import repository.TransactionRepository;
+import repository.Watermark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind {@link TransactionRepository}: issues and returns are appended
+ * to the circulation journal and acknowledged as
+ * {@link CirculationOutcome#QUEUED} without waiting for the database; a
+ * {@link JournalDrainer} applies them later. Reads go straight to the wrapped
+ * repository, so queued operations appear once they have been replayed.
+ */
+public class JournaledTransactionRepository implements TransactionRepository {
+    private final TransactionRepository delegate;
+    private final CirculationJournal journal;
+
+    public JournaledTransactionRepository(TransactionRepository delegate, CirculationJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    @Override
+    public CirculationOutcome issueBook(Transaction transaction) throws SQLException {
+        try {
+            journal.append(JournalEntry.Operation.ISSUE, transaction.getBookId(), transaction.getMemberId(),
+                transaction.getIssueDate());
+        } catch (IOException e) {
+            throw new SQLException("Could not record the issue in the circulation journal: " + e.getMessage(), e);
+        }
+        return CirculationOutcome.QUEUED;
+    }
+
+    @Override
+    public CirculationOutcome returnBook(int transactionId) throws SQLException {
+        try {
+            journal.append(JournalEntry.Operation.RETURN, transactionId, 0, LocalDate.now());
+        } catch (IOException e) {
+            throw new SQLException("Could not record the return in the circulation journal: " + e.getMessage(), e);
+        }
+        return CirculationOutcome.QUEUED;
+    }
+
+    @Override
+    public List<Transaction> getAllTransactions() throws SQLException {
+        return delegate.getAllTransactions();
+    }
+
+    @Override
+    public List<Transaction> getTransactionsPage(int afterId, int pageSize) throws SQLException {
+        return delegate.getTransactionsPage(afterId, pageSize);
+    }
+
+    @Override
+    public Transaction getTransactionById(int id) throws SQLException {
+        return delegate.getTransactionById(id);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByIds(int[] ids) throws SQLException {
+        return delegate.getTransactionsByIds(ids);
+    }
+
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return delegate.currentWatermark();
+    }
+
+    @Override
+    public Delta<Transaction> getTransactionsChangedSince(Watermark since, int limit) throws SQLException {
+        return delegate.getTransactionsChangedSince(since, limit);
+    }
+
+    @Override
+    public long streamTransactions(TransactionFilter filter, Consumer<Transaction> consumer) throws SQLException {
+        return delegate.streamTransactions(filter, consumer);
+    }
+
+    @Override
+    public List<Transaction> getActiveTransactions() throws SQLException {
+        return delegate.getActiveTransactions();
+    }
+
+    @Override
+    public List<Transaction> getOverdueTransactions(LocalDate asOf, int afterId, int pageSize) throws SQLException {
+        return delegate.getOverdueTransactions(asOf, afterId, pageSize);
+    }
+
+    @Override
+    public List<Transaction> getMemberTransactionsPage(int memberId, int afterId, int pageSize) throws SQLException {
+        return delegate.getMemberTransactionsPage(memberId, afterId, pageSize);
+    }
+
+    @Override
+    public FineAssessment assessFines(LocalDate asOf, LoanPolicy policy) throws SQLException {
+        return delegate.assessFines(asOf, policy);
+    }
+}
@@ -0,0 +1,73 @@
+package journal;
+
+import dao.TransactionDAO;
+import repository.TransactionRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Switches circulation to write-behind when {@code -Dlibrary.journal.enabled=true}.
+ * <p>
+ * The journal lives at {@code library.journal.path} (by default
+ * {@code ~/.library/circulation.journal}) and holds
+ * {@code library.journal.sizeMb} megabytes (16, about half a million
+ * operations). {@code library.journal.sync=false} skips forcing each entry to
+ * disk, and {@code library.journal.batchSize} (100) caps the entries replayed
+ * per database transaction. If the journal cannot be opened, circulation goes
+ * straight to the database as usual.
+ */
+public final class WriteBehind {
+    private static final Logger LOG = Logger.getLogger(WriteBehind.class.getName());
+    private static final boolean ENABLED = Boolean.getBoolean("library.journal.enabled");
+    private static final Path PATH = Path.of(System.getProperty("library.journal.path",
+        Path.of(System.getProperty("user.home"), ".library", "circulation.journal").toString()));
+    private static final int SIZE_MB = Integer.getInteger("library.journal.sizeMb", 16);
+    private static final boolean SYNC = Boolean.parseBoolean(System.getProperty("library.journal.sync", "true"));
+    private static final int BATCH_SIZE = Integer.getInteger("library.journal.batchSize", 100);
+
+    private static volatile JournalDrainer drainer;
+
+    private WriteBehind() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Opens the journal, starts replaying it and returns the write-behind
+     * repository in front of {@code transactionDAO}; returns the DAO itself when
+     * write-behind is off or the journal cannot be opened.
+     */
+    public static synchronized TransactionRepository wrap(TransactionDAO transactionDAO) {
+        if (!ENABLED) {
+            return transactionDAO;
+        }
+        try {
+            CirculationJournal journal = CirculationJournal.open(PATH, SIZE_MB * 1024 * 1024, SYNC);
+            drainer = new JournalDrainer(journal, transactionDAO, BATCH_SIZE);
+            drainer.start();
+            LOG.info("Circulation write-behind on, journal " + PATH);
+            return new JournaledTransactionRepository(transactionDAO, journal);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not open the circulation journal at " + PATH
+                + "; issuing and returning directly against the database", e);
+            return transactionDAO;
+        }
+    }
+
+    /**
+     * Registers a listener for operations the database did not apply. It is
+     * called on the drainer thread. Does nothing when write-behind is off.
+     */
+    public static void addConflictListener(Consumer<JournalConflict> listener) {
+        JournalDrainer current = drainer;
+        if (current != null) {
+            current.addConflictListener(listener);
+        }
+    }
+}
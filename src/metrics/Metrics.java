@@ -0,0 +1,111 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide registry of {@link OperationMetrics}.
+ * <p>
+ * DAOs look their operations up once, in static fields, so the hot path never
+ * touches the registry. Each operation is registered with the platform MBean
+ * server as {@code library:type=DaoOperation,name=<operation>}, and
+ * {@link #startLogging} writes a snapshot of all of them to the log at a fixed
+ * interval.
+ */
+public final class Metrics {
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+    private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<>();
+    private static final LatencyHistogram CONNECTION_WAIT = new LatencyHistogram();
+    private static ScheduledExecutorService logger;
+
+    private Metrics() {
+    }
+
+    public static OperationMetrics operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, Metrics::register);
+    }
+
+    /**
+     * Called by the connection pool for every borrow, with the time spent in
+     * {@code getConnection()}.
+     */
+    public static void connectionAcquired(long waitNanos) {
+        CONNECTION_WAIT.record(waitNanos);
+        OperationMetrics.connectionAcquired(waitNanos);
+    }
+
+    public static LatencyHistogram connectionWait() {
+        return CONNECTION_WAIT;
+    }
+
+    /**
+     * Logs {@link #snapshot()} every {@code intervalSeconds}; 0 or less disables it.
+     */
+    public static synchronized void startLogging(long intervalSeconds) {
+        if (intervalSeconds <= 0 || logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-logger");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.scheduleAtFixedRate(() -> {
+            String snapshot = snapshot();
+            if (!snapshot.isEmpty()) {
+                LOG.info("DAO metrics\n" + snapshot);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * One line per operation that has been called, busiest first.
+     */
+    public static String snapshot() {
+        List<OperationMetrics> called = new ArrayList<>();
+        for (OperationMetrics operation : OPERATIONS.values()) {
+            if (operation.getCalls() > 0) {
+                called.add(operation);
+            }
+        }
+        called.sort(Comparator.comparingLong(OperationMetrics::getCalls).reversed());
+
+        StringBuilder out = new StringBuilder();
+        for (OperationMetrics op : called) {
+            out.append(String.format(Locale.ROOT,
+                "%-36s calls=%d errors=%d rows=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms connWait p99=%.2fms%n",
+                op.getName(), op.getCalls(), op.getErrors(), op.getRows(), op.getMeanMillis(),
+                op.getP50Millis(), op.getP99Millis(), op.getMaxMillis(), op.getP99ConnectionWaitMillis()));
+        }
+        if (CONNECTION_WAIT.count() > 0) {
+            out.append(String.format(Locale.ROOT, "%-36s borrows=%d mean=%.2fms p99=%.2fms max=%.2fms%n",
+                "connection pool", CONNECTION_WAIT.count(), CONNECTION_WAIT.meanNanos() / 1e6,
+                CONNECTION_WAIT.percentile(99, TimeUnit.MILLISECONDS), CONNECTION_WAIT.maxNanos() / 1e6));
+        }
+        return out.toString();
+    }
+
+    private static OperationMetrics register(String name) {
+        OperationMetrics operation = new OperationMetrics(name);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(operation, new ObjectName("library:type=DaoOperation,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            LOG.log(Level.FINE, "Could not register metrics MBean for " + name, e);
+        }
+        return operation;
+    }
+}
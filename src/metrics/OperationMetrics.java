@@ -0,0 +1,162 @@
+package metrics;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, failures, rows and latency of one DAO operation.
+ * <p>
+ * {@link #time} and {@link #run} wrap the operation's body. While it runs the
+ * operation is the thread's current one, so the connection pool can charge the
+ * time spent waiting for a connection to it. Rows are counted from the result:
+ * the size of a returned collection, or a returned number for operations that
+ * report a row count.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private static final ThreadLocal<OperationMetrics> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram connectionWait = new LatencyHistogram();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public <T> T time(Call<T> call) throws SQLException {
+        OperationMetrics outer = CURRENT.get();
+        CURRENT.set(this);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            if (result instanceof Collection<?> collection) {
+                rows.add(collection.size());
+            } else if (result instanceof Number count) {
+                rows.add(count.longValue());
+            }
+            failed = false;
+            return result;
+        } finally {
+            finish(start, failed, outer);
+        }
+    }
+
+    public void run(Action action) throws SQLException {
+        OperationMetrics outer = CURRENT.get();
+        CURRENT.set(this);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            action.run();
+            failed = false;
+        } finally {
+            finish(start, failed, outer);
+        }
+    }
+
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    /**
+     * Charges a connection wait to the operation running on this thread, if any.
+     */
+    static void connectionAcquired(long waitNanos) {
+        OperationMetrics current = CURRENT.get();
+        if (current != null) {
+            current.connectionWait.record(waitNanos);
+        }
+    }
+
+    private void finish(long start, boolean failed, OperationMetrics outer) {
+        latency.recordSince(start);
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.meanNanos() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.percentile(50, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.percentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.percentile(99.9, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.maxNanos() / 1e6;
+    }
+
+    @Override
+    public double getMeanConnectionWaitMillis() {
+        return connectionWait.meanNanos() / 1e6;
+    }
+
+    @Override
+    public double getP99ConnectionWaitMillis() {
+        return connectionWait.percentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        connectionWait.reset();
+        calls.reset();
+        errors.reset();
+        rows.reset();
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws SQLException;
+    }
+}
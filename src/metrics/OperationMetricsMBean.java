@@ -0,0 +1,29 @@
+package metrics;
+
+/**
+ * JMX view of one DAO operation. Times are in milliseconds and cover every call
+ * since start-up or the last {@link #reset()}.
+ */
+public interface OperationMetricsMBean {
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    double getMeanConnectionWaitMillis();
+
+    double getP99ConnectionWaitMillis();
+
+    void reset();
+}
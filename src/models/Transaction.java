@@ -8,8 +8,10 @@ public class Transaction {
     private int bookId;
     private int memberId;
     private LocalDate issueDate;
+    private LocalDate dueDate;
     private LocalDate returnDate;
     private String status;
+    private int fineCents;
     private LocalDateTime createdAt;
     
     private String bookTitle;
@@ -56,6 +58,14 @@ public class Transaction {
         this.issueDate = issueDate;
     }
     
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+    
+    public void setDueDate(LocalDate dueDate) {
+        this.dueDate = dueDate;
+    }
+    
     public LocalDate getReturnDate() {
         return returnDate;
     }
@@ -72,6 +82,25 @@ public class Transaction {
         this.status = status;
     }
     
+    /**
+     * The fine on this loan in cents, as last assessed: by the fine job while the
+     * loan is open, and finally when it is returned.
+     */
+    public int getFineCents() {
+        return fineCents;
+    }
+    
+    public void setFineCents(int fineCents) {
+        this.fineCents = fineCents;
+    }
+    
+    /**
+     * Whether the loan is still open after its due date on {@code asOf}.
+     */
+    public boolean isOverdue(LocalDate asOf) {
+        return returnDate == null && dueDate != null && dueDate.isBefore(asOf);
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,82 @@
+package repository;
+
+import dao.ImportProgress;
+import dao.QueryCanceller;
+import models.Book;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage for the book catalog. Books handed out are the caller's own copies;
+ * changing one does nothing until it is passed to {@link #updateBook}.
+ */
+public interface BookRepository {
+    /**
+     * Stores a new book and sets its id.
+     */
+    void addBook(Book book) throws SQLException;
+
+    default ImportProgress addBooks(Iterable<Book> books) throws SQLException {
+        return addBooks(books, progress -> { });
+    }
+
+    /**
+     * Stores many books, skipping those whose ISBN is already present, and
+     * reports progress along the way.
+     */
+    ImportProgress addBooks(Iterable<Book> books, Consumer<ImportProgress> listener) throws SQLException;
+
+    /**
+     * All books, newest first.
+     */
+    List<Book> getAllBooks() throws SQLException;
+
+    /**
+     * The book with this id, or {@code null}.
+     */
+    Book getBookById(int id) throws SQLException;
+
+    /**
+     * The books with these ids, newest first, read in one query. Ids with no
+     * row are skipped.
+     */
+    List<Book> getBooksByIds(int[] ids) throws SQLException;
+
+    /**
+     * Available books whose title or ISBN starts with {@code prefix}, or whose id
+     * it is, in title order.
+     */
+    List<Book> findAvailableBooks(String prefix, int limit, QueryCanceller canceller) throws SQLException;
+
+    /**
+     * Up to {@code pageSize} books with an id below {@code afterId}, newest first.
+     */
+    List<Book> getBooksPage(int afterId, int pageSize) throws SQLException;
+
+    /**
+     * Where the change history stands now. Take it before loading books, so
+     * that {@link #getBooksChangedSince} later covers whatever the load missed.
+     */
+    Watermark currentWatermark() throws SQLException;
+
+    /**
+     * Books inserted, updated or deleted since the watermark, at most
+     * {@code limit} of each.
+     */
+    Delta<Book> getBooksChangedSince(Watermark since, int limit) throws SQLException;
+
+    void updateBook(Book book) throws SQLException;
+
+    void deleteBook(int id) throws SQLException;
+
+    default List<Book> searchBooks(String keyword) throws SQLException {
+        return searchBooks(keyword, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * At most {@code limit} books whose title, author or ISBN contains the keyword.
+     */
+    List<Book> searchBooks(String keyword, int limit, QueryCanceller canceller) throws SQLException;
+}
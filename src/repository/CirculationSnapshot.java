@@ -0,0 +1,18 @@
+package repository;
+
+import java.time.LocalDate;
+
+/**
+ * The circulation figures shown on the dashboard. The per-day figures and the
+ * overdue count refer to {@code day}.
+ */
+public record CirculationSnapshot(LocalDate day, long books, long availableBooks, long activeLoans,
+                                  long loansToday, long returnsToday, long overdueLoans) {
+
+    /**
+     * Books that are not available, whether on loan or withdrawn by hand.
+     */
+    public long unavailableBooks() {
+        return books - availableBooks;
+    }
+}
@@ -0,0 +1,22 @@
+package repository;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Running circulation totals, kept up to date by every write rather than
+ * counted on demand.
+ */
+public interface CounterRepository {
+    /**
+     * The current totals, with the per-day figures and the overdue count as of
+     * {@code day}.
+     */
+    CirculationSnapshot readCounters(LocalDate day) throws SQLException;
+
+    /**
+     * Folds the totals into as few rows as they need and drops per-day figures
+     * that can no longer be read. Returns how many rows it wrote.
+     */
+    long compactCounters() throws SQLException;
+}
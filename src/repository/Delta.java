@@ -0,0 +1,16 @@
+package repository;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rows inserted or updated, and ids deleted, since a {@link Watermark}, together
+ * with the watermark to ask from next time. A row may show up again in a later
+ * delta; applying it twice is harmless.
+ * <p>
+ * When more than the requested limit changed, {@code truncated} is set and the
+ * lists are incomplete: the caller should reload the table and start again from
+ * a fresh {@link Watermark}.
+ */
+public record Delta<T>(List<T> changed, Set<Integer> deleted, Watermark next, boolean truncated) {
+}
@@ -0,0 +1,17 @@
+package repository;
+
+import java.time.LocalDate;
+
+/**
+ * What a fine run found: the open loans it looked at, how many of them were
+ * overdue on {@code asOf}, how many fines changed, and the fines now owed on
+ * open loans in total.
+ */
+public record FineAssessment(LocalDate asOf, long openLoans, long overdueLoans, long updatedLoans,
+                             long totalFineCents) {
+
+    public FineAssessment plus(FineAssessment other) {
+        return new FineAssessment(asOf, openLoans + other.openLoans, overdueLoans + other.overdueLoans,
+            updatedLoans + other.updatedLoans, totalFineCents + other.totalFineCents);
+    }
+}
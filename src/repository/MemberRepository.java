@@ -0,0 +1,69 @@
+package repository;
+
+import dao.QueryCanceller;
+import models.Member;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage for library members. Members handed out are the caller's own copies.
+ */
+public interface MemberRepository {
+    /**
+     * Stores a new member and sets its id.
+     */
+    void addMember(Member member) throws SQLException;
+
+    /**
+     * All members, newest first.
+     */
+    List<Member> getAllMembers() throws SQLException;
+
+    /**
+     * The member with this id, or {@code null}.
+     */
+    Member getMemberById(int id) throws SQLException;
+
+    /**
+     * The members with these ids, newest first, read in one query. Ids with no
+     * row are skipped.
+     */
+    List<Member> getMembersByIds(int[] ids) throws SQLException;
+
+    /**
+     * Members whose name or email starts with {@code prefix}, or whose id it is,
+     * in name order.
+     */
+    List<Member> findMembers(String prefix, int limit, QueryCanceller canceller) throws SQLException;
+
+    /**
+     * Up to {@code pageSize} members with an id below {@code afterId}, newest first.
+     */
+    List<Member> getMembersPage(int afterId, int pageSize) throws SQLException;
+
+    /**
+     * Where the change history stands now. Take it before loading members, so
+     * that {@link #getMembersChangedSince} later covers whatever the load missed.
+     */
+    Watermark currentWatermark() throws SQLException;
+
+    /**
+     * Members inserted, updated or deleted since the watermark, at most
+     * {@code limit} of each.
+     */
+    Delta<Member> getMembersChangedSince(Watermark since, int limit) throws SQLException;
+
+    void updateMember(Member member) throws SQLException;
+
+    void deleteMember(int id) throws SQLException;
+
+    default List<Member> searchMembers(String keyword) throws SQLException {
+        return searchMembers(keyword, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * At most {@code limit} members whose name, email or phone contains the keyword.
+     */
+    List<Member> searchMembers(String keyword, int limit, QueryCanceller canceller) throws SQLException;
+}
@@ -0,0 +1,71 @@
+package repository;
+
+import dao.BookDAO;
+import dao.CounterDAO;
+import dao.MemberDAO;
+import dao.TransactionDAO;
+import journal.WriteBehind;
+import repository.memory.InMemoryBookRepository;
+import repository.memory.InMemoryCounterRepository;
+import repository.memory.InMemoryMemberRepository;
+import repository.memory.InMemoryStore;
+import repository.memory.InMemoryTransactionRepository;
+
+import java.util.Locale;
+
+/**
+ * The repositories the application uses, chosen once at startup with
+ * {@code -Dlibrary.backend}: {@code jdbc} (the default) stores everything in
+ * PostgreSQL, {@code memory} keeps it in this process only, for demos and
+ * kiosks that need no database. In-memory data is lost on exit. With the
+ * database, circulation can be made write-behind, see {@link WriteBehind}.
+ */
+public final class Repositories {
+    public enum Backend { JDBC, MEMORY }
+
+    private static final Backend BACKEND =
+        Backend.valueOf(System.getProperty("library.backend", "jdbc").trim().toUpperCase(Locale.ROOT));
+
+    private static final BookRepository BOOKS;
+    private static final MemberRepository MEMBERS;
+    private static final TransactionRepository TRANSACTIONS;
+    private static final CounterRepository COUNTERS;
+
+    static {
+        if (BACKEND == Backend.MEMORY) {
+            InMemoryStore store = new InMemoryStore();
+            BOOKS = new InMemoryBookRepository(store);
+            MEMBERS = new InMemoryMemberRepository(store);
+            TRANSACTIONS = new InMemoryTransactionRepository(store);
+            COUNTERS = new InMemoryCounterRepository(store);
+        } else {
+            BOOKS = new BookDAO();
+            MEMBERS = new MemberDAO();
+            TRANSACTIONS = WriteBehind.wrap(new TransactionDAO());
+            COUNTERS = new CounterDAO();
+        }
+    }
+
+    private Repositories() {
+    }
+
+    public static Backend backend() {
+        return BACKEND;
+    }
+
+    public static BookRepository books() {
+        return BOOKS;
+    }
+
+    public static MemberRepository members() {
+        return MEMBERS;
+    }
+
+    public static TransactionRepository transactions() {
+        return TRANSACTIONS;
+    }
+
+    public static CounterRepository counters() {
+        return COUNTERS;
+    }
+}
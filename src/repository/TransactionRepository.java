@@ -0,0 +1,94 @@
+package repository;
+
+import dao.CirculationOutcome;
+import dao.LoanPolicy;
+import dao.TransactionFilter;
+import models.Transaction;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage for loans. Transactions read back carry the title of their book and
+ * the name of their member.
+ */
+public interface TransactionRepository {
+    /**
+     * Issues the book if it is still available and the member has fewer than
+     * {@link LoanPolicy#maxActiveLoans()} loans open, and sets the transaction id
+     * on success. Of two desks issuing the same copy at once, exactly one
+     * succeeds, and desks issuing to the same member at once cannot take it past
+     * the limit. A transaction without a due date gets one from
+     * {@link LoanPolicy#current()}, which also sets the limit.
+     */
+    CirculationOutcome issueBook(Transaction transaction) throws SQLException;
+
+    /**
+     * Closes the loan if it is still open and makes its book available again,
+     * fixing its fine as of today.
+     */
+    CirculationOutcome returnBook(int transactionId) throws SQLException;
+
+    /**
+     * All transactions, newest first.
+     */
+    List<Transaction> getAllTransactions() throws SQLException;
+
+    /**
+     * Up to {@code pageSize} transactions with an id below {@code afterId}, newest first.
+     */
+    List<Transaction> getTransactionsPage(int afterId, int pageSize) throws SQLException;
+
+    /**
+     * The transaction with this id, or {@code null} if there is none.
+     */
+    Transaction getTransactionById(int id) throws SQLException;
+
+    /**
+     * The transactions with these ids, newest first, read in one query. Ids with
+     * no row are skipped.
+     */
+    List<Transaction> getTransactionsByIds(int[] ids) throws SQLException;
+
+    /**
+     * Where the change history stands now. Take it before loading transactions, so
+     * that {@link #getTransactionsChangedSince} later covers whatever the load missed.
+     */
+    Watermark currentWatermark() throws SQLException;
+
+    /**
+     * Transactions inserted, updated or deleted since the watermark, at most
+     * {@code limit} of each.
+     */
+    Delta<Transaction> getTransactionsChangedSince(Watermark since, int limit) throws SQLException;
+
+    /**
+     * Hands every matching transaction to {@code consumer}, oldest first, and
+     * returns how many there were.
+     */
+    long streamTransactions(TransactionFilter filter, Consumer<Transaction> consumer) throws SQLException;
+
+    /**
+     * Open loans, newest first.
+     */
+    List<Transaction> getActiveTransactions() throws SQLException;
+
+    /**
+     * Up to {@code pageSize} loans with an id below {@code afterId} that were
+     * still open after their due date on {@code asOf}, newest first.
+     */
+    List<Transaction> getOverdueTransactions(LocalDate asOf, int afterId, int pageSize) throws SQLException;
+
+    /**
+     * Up to {@code pageSize} of the member's transactions with an id below
+     * {@code afterId}, newest first.
+     */
+    List<Transaction> getMemberTransactionsPage(int memberId, int afterId, int pageSize) throws SQLException;
+
+    /**
+     * Recomputes the fine on every open loan as of {@code asOf}.
+     */
+    FineAssessment assessFines(LocalDate asOf, LoanPolicy policy) throws SQLException;
+}
@@ -0,0 +1,15 @@
+package repository;
+
+/**
+ * Position in the change history that a reader has caught up to.
+ * <p>
+ * Every insert and update stamps its row with the next value of one sequence
+ * shared by all tables, and every delete leaves a tombstone stamped the same
+ * way. Sequence values are taken when a row is written, not when its
+ * transaction commits, so a change stamped below {@code sequence} may still
+ * become visible later. {@code oldestActiveTransaction} is the oldest
+ * transaction that was still running when the watermark was taken; changes made
+ * by it or any later transaction are read again on the next delta.
+ */
+public record Watermark(long sequence, long oldestActiveTransaction) {
+}
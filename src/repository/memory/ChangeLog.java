@@ -0,0 +1,47 @@
+package repository.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latest change stamp of every row of one table that has changed, deleted rows
+ * included, in stamp order. A row that changes again moves to the end, so a
+ * delta walks back from the newest entry until it reaches the watermark and the
+ * log never holds more than one entry per id.
+ */
+final class ChangeLog {
+    private final LinkedHashMap<Integer, Change> changes = new LinkedHashMap<>();
+
+    void changed(int id, long sequence) {
+        changes.remove(id);
+        changes.put(id, new Change(sequence, false));
+    }
+
+    void deleted(int id, long sequence) {
+        changes.remove(id);
+        changes.put(id, new Change(sequence, true));
+    }
+
+    /**
+     * Hands the rows stamped after {@code sequence} to the collector, newest
+     * first, until it returns {@code false}.
+     */
+    void since(long sequence, Collector collector) {
+        Iterator<Map.Entry<Integer, Change>> newestFirst = changes.reversed().entrySet().iterator();
+        while (newestFirst.hasNext()) {
+            Map.Entry<Integer, Change> entry = newestFirst.next();
+            if (entry.getValue().sequence() <= sequence || !collector.accept(entry.getKey(), entry.getValue().deleted())) {
+                return;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Collector {
+        boolean accept(int id, boolean deleted);
+    }
+
+    private record Change(long sequence, boolean deleted) {
+    }
+}
@@ -0,0 +1,67 @@
+package repository.memory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Rows stored in an array indexed by their id, like a table whose ids come from
+ * its own sequence. A bit set of the live ids answers "next id below this one"
+ * for the newest-first pages without scanning deleted slots one by one.
+ */
+final class IdTable<T> {
+    private Object[] rows = new Object[1024];
+    private final BitSet live = new BitSet();
+    private int lastId;
+    private int size;
+
+    int nextId() {
+        return ++lastId;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        return id > 0 && id < rows.length ? (T) rows[id] : null;
+    }
+
+    void put(int id, T row) {
+        if (id >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, id + 1));
+        }
+        if (rows[id] == null) {
+            size++;
+        }
+        rows[id] = row;
+        live.set(id);
+        lastId = Math.max(lastId, id);
+    }
+
+    @SuppressWarnings("unchecked")
+    T remove(int id) {
+        T row = get(id);
+        if (row != null) {
+            rows[id] = null;
+            live.clear(id);
+            size--;
+        }
+        return row;
+    }
+
+    /**
+     * The largest live id below {@code id}, or -1 when there is none.
+     */
+    int before(int id) {
+        long from = Math.min((long) id - 1, lastId);
+        return from <= 0 ? -1 : live.previousSetBit((int) from);
+    }
+
+    /**
+     * The smallest live id above {@code id}, or -1 when there is none.
+     */
+    int after(int id) {
+        return live.nextSetBit(Math.max(0, id + 1));
+    }
+
+    int size() {
+        return size;
+    }
+}
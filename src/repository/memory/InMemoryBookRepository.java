@@ -0,0 +1,251 @@
+package repository.memory;
+
+import cache.EntityCaches;
+import counters.CirculationCounters;
+import dao.ImportProgress;
+import dao.QueryCanceller;
+import models.Book;
+import repository.BookRepository;
+import repository.Delta;
+import repository.Watermark;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link BookRepository} over an {@link InMemoryStore}. Writes still
+ * invalidate the book cache, as the DAO's do.
+ */
+public class InMemoryBookRepository implements BookRepository {
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final Comparator<Book> TITLE_ORDER =
+        Comparator.comparing((Book book) -> InMemoryStore.lower(book.getTitle())).thenComparingInt(Book::getId);
+
+    private final InMemoryStore store;
+
+    public InMemoryBookRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void addBook(Book book) throws SQLException {
+        int id = store.write(() -> insert(book));
+        book.setId(id);
+        CirculationCounters.getInstance().booksAdded(1, book.isAvailable() ? 1 : 0);
+        EntityCaches.books().invalidate(id);
+    }
+
+    /**
+     * Inserts under the write lock a batch of {@value #IMPORT_BATCH_SIZE} books at
+     * a time, so searches keep running during a large import.
+     */
+    @Override
+    public ImportProgress addBooks(Iterable<Book> books, Consumer<ImportProgress> listener) throws SQLException {
+        long start = System.currentTimeMillis();
+        long read = 0;
+        long inserted = 0;
+        List<Book> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+        for (Book book : books) {
+            batch.add(book);
+            read++;
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                inserted += insertNew(batch);
+                batch.clear();
+                listener.accept(new ImportProgress(read, inserted, read - inserted,
+                    System.currentTimeMillis() - start, false));
+            }
+        }
+        inserted += insertNew(batch);
+        CirculationCounters.getInstance().markStale();
+        EntityCaches.books().invalidateAll();
+
+        ImportProgress result = new ImportProgress(read, inserted, read - inserted,
+            System.currentTimeMillis() - start, true);
+        listener.accept(result);
+        return result;
+    }
+
+    @Override
+    public List<Book> getAllBooks() throws SQLException {
+        return getBooksPage(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Book getBookById(int id) throws SQLException {
+        return store.read(() -> {
+            Book book = store.books.get(id);
+            return book == null ? null : InMemoryStore.copy(book);
+        });
+    }
+
+    @Override
+    public List<Book> getBooksByIds(int[] ids) throws SQLException {
+        int[] newestFirst = InMemoryStore.newestFirst(ids);
+        return store.read(() -> {
+            List<Book> books = new ArrayList<>(newestFirst.length);
+            for (int id : newestFirst) {
+                Book book = store.books.get(id);
+                if (book != null) {
+                    books.add(InMemoryStore.copy(book));
+                }
+            }
+            return books;
+        });
+    }
+
+    @Override
+    public List<Book> findAvailableBooks(String prefix, int limit, QueryCanceller canceller) throws SQLException {
+        return store.read(() -> {
+            List<Book> matches = new ArrayList<>();
+            IntList byTitle = store.booksByTitle.matching(InMemoryStore.lower(prefix), this::isAvailable, limit);
+            IntList byIsbn = store.booksByIsbn.matching(prefix, this::isAvailable, Integer.MAX_VALUE);
+            for (int i = 0; i < byTitle.size(); i++) {
+                matches.add(store.books.get(byTitle.get(i)));
+            }
+            for (int i = 0; i < byIsbn.size(); i++) {
+                Book book = store.books.get(byIsbn.get(i));
+                if (!InMemoryStore.lower(book.getTitle()).startsWith(InMemoryStore.lower(prefix))) {
+                    matches.add(book);
+                }
+            }
+            int id = InMemoryStore.parseId(prefix);
+            Book byId = store.books.get(id);
+            if (byId != null && byId.isAvailable() && !matches.contains(byId)) {
+                matches.add(byId);
+            }
+
+            matches.sort(TITLE_ORDER);
+            List<Book> result = new ArrayList<>(Math.min(limit, matches.size()));
+            for (int i = 0; i < matches.size() && i < limit; i++) {
+                result.add(InMemoryStore.copy(matches.get(i)));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<Book> getBooksPage(int afterId, int pageSize) throws SQLException {
+        return store.read(() -> {
+            List<Book> books = new ArrayList<>(Math.min(pageSize, store.books.size()));
+            for (int id = store.books.before(afterId); id > 0 && books.size() < pageSize; id = store.books.before(id)) {
+                books.add(InMemoryStore.copy(store.books.get(id)));
+            }
+            return books;
+        });
+    }
+
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return store.watermark();
+    }
+
+    @Override
+    public Delta<Book> getBooksChangedSince(Watermark since, int limit) throws SQLException {
+        return store.delta(store.bookChanges, since, limit, id -> InMemoryStore.copy(store.books.get(id)));
+    }
+
+    @Override
+    public void updateBook(Book book) throws SQLException {
+        boolean updated = store.write(() -> {
+            Book stored = store.books.get(book.getId());
+            if (stored == null) {
+                return false;
+            }
+            unindex(stored);
+            Book copy = InMemoryStore.copy(book);
+            copy.setCreatedAt(stored.getCreatedAt());
+            store.books.put(copy.getId(), copy);
+            index(copy);
+            store.bookChanges.changed(copy.getId(), store.stamp());
+            return true;
+        });
+        if (updated) {
+            CirculationCounters.getInstance().markStale();
+            EntityCaches.books().invalidate(book.getId());
+        }
+    }
+
+    @Override
+    public void deleteBook(int id) throws SQLException {
+        Book removed = store.write(() -> {
+            if (InMemoryStore.isReferenced(store.transactionsByBook, id)) {
+                throw InMemoryStore.foreignKeyViolation("Book " + id + " has transactions and cannot be deleted");
+            }
+            Book book = store.books.remove(id);
+            if (book != null) {
+                unindex(book);
+                store.bookChanges.deleted(id, store.stamp());
+            }
+            return book;
+        });
+        if (removed != null) {
+            CirculationCounters.getInstance().bookDeleted(removed.isAvailable());
+        }
+        EntityCaches.books().invalidate(id);
+    }
+
+    @Override
+    public List<Book> searchBooks(String keyword, int limit, QueryCanceller canceller) throws SQLException {
+        String needle = InMemoryStore.lower(keyword);
+        return store.read(() -> {
+            List<Book> books = new ArrayList<>();
+            for (int id = store.books.before(Integer.MAX_VALUE); id > 0 && books.size() < limit; id = store.books.before(id)) {
+                Book book = store.books.get(id);
+                if (InMemoryStore.containsIgnoreCase(book.getTitle(), needle)
+                        || InMemoryStore.containsIgnoreCase(book.getAuthor(), needle)
+                        || InMemoryStore.containsIgnoreCase(book.getIsbn(), needle)) {
+                    books.add(InMemoryStore.copy(book));
+                }
+            }
+            return books;
+        });
+    }
+
+    /**
+     * Inserts the books whose ISBN is not stored yet, in one critical section.
+     */
+    private long insertNew(List<Book> batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        return store.write(() -> {
+            long inserted = 0;
+            for (Book book : batch) {
+                if (!store.booksByIsbn.contains(book.getIsbn())) {
+                    insert(book);
+                    inserted++;
+                }
+            }
+            return inserted;
+        });
+    }
+
+    private int insert(Book book) {
+        Book copy = InMemoryStore.copy(book);
+        copy.setId(store.books.nextId());
+        copy.setCreatedAt(LocalDateTime.now());
+        store.books.put(copy.getId(), copy);
+        index(copy);
+        store.bookChanges.changed(copy.getId(), store.stamp());
+        return copy.getId();
+    }
+
+    private boolean isAvailable(int id) {
+        return store.books.get(id).isAvailable();
+    }
+
+    private void index(Book book) {
+        store.booksByIsbn.add(book.getIsbn(), book.getId());
+        store.booksByTitle.add(InMemoryStore.lower(book.getTitle()), book.getId());
+    }
+
+    private void unindex(Book book) {
+        store.booksByIsbn.remove(book.getIsbn(), book.getId());
+        store.booksByTitle.remove(InMemoryStore.lower(book.getTitle()), book.getId());
+    }
+}
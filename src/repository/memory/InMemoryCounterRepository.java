@@ -0,0 +1,58 @@
+package repository.memory;
+
+import models.Book;
+import models.Transaction;
+import repository.CirculationSnapshot;
+import repository.CounterRepository;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * {@link CounterRepository} over an {@link InMemoryStore}. The store keeps no
+ * summary of its own, so a read counts under the read lock; callers read it
+ * only to reseed their own counters, not on every repaint.
+ */
+public class InMemoryCounterRepository implements CounterRepository {
+    private final InMemoryStore store;
+
+    public InMemoryCounterRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public CirculationSnapshot readCounters(LocalDate day) throws SQLException {
+        return store.read(() -> {
+            long available = 0;
+            for (int id = store.books.after(0); id > 0; id = store.books.after(id)) {
+                Book book = store.books.get(id);
+                if (book.isAvailable()) {
+                    available++;
+                }
+            }
+
+            long open = store.statusIds(InMemoryStore.ISSUED).cardinality();
+            long loans = 0;
+            long returns = 0;
+            long overdue = 0;
+            for (int id = store.transactions.after(0); id > 0; id = store.transactions.after(id)) {
+                Transaction transaction = store.transactions.get(id);
+                if (day.equals(transaction.getIssueDate())) {
+                    loans++;
+                }
+                if (day.equals(transaction.getReturnDate())) {
+                    returns++;
+                }
+                if (transaction.isOverdue(day)) {
+                    overdue++;
+                }
+            }
+            return new CirculationSnapshot(day, store.books.size(), available, open, loans, returns, overdue);
+        });
+    }
+
+    @Override
+    public long compactCounters() {
+        return 0;
+    }
+}
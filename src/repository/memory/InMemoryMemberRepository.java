@@ -0,0 +1,186 @@
+package repository.memory;
+
+import cache.EntityCaches;
+import dao.QueryCanceller;
+import models.Member;
+import repository.Delta;
+import repository.MemberRepository;
+import repository.Watermark;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link MemberRepository} over an {@link InMemoryStore}. Writes still
+ * invalidate the member cache, as the DAO's do.
+ */
+public class InMemoryMemberRepository implements MemberRepository {
+    private static final Comparator<Member> NAME_ORDER =
+        Comparator.comparing((Member member) -> InMemoryStore.lower(member.getName())).thenComparingInt(Member::getId);
+
+    private final InMemoryStore store;
+
+    public InMemoryMemberRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void addMember(Member member) throws SQLException {
+        int id = store.write(() -> {
+            Member copy = InMemoryStore.copy(member);
+            copy.setId(store.members.nextId());
+            copy.setCreatedAt(LocalDateTime.now());
+            store.members.put(copy.getId(), copy);
+            index(copy);
+            store.memberChanges.changed(copy.getId(), store.stamp());
+            return copy.getId();
+        });
+        member.setId(id);
+        EntityCaches.members().invalidate(id);
+    }
+
+    @Override
+    public List<Member> getAllMembers() throws SQLException {
+        return getMembersPage(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Member getMemberById(int id) throws SQLException {
+        return store.read(() -> {
+            Member member = store.members.get(id);
+            return member == null ? null : InMemoryStore.copy(member);
+        });
+    }
+
+    @Override
+    public List<Member> getMembersByIds(int[] ids) throws SQLException {
+        int[] newestFirst = InMemoryStore.newestFirst(ids);
+        return store.read(() -> {
+            List<Member> members = new ArrayList<>(newestFirst.length);
+            for (int id : newestFirst) {
+                Member member = store.members.get(id);
+                if (member != null) {
+                    members.add(InMemoryStore.copy(member));
+                }
+            }
+            return members;
+        });
+    }
+
+    @Override
+    public List<Member> findMembers(String prefix, int limit, QueryCanceller canceller) throws SQLException {
+        String lowerPrefix = InMemoryStore.lower(prefix);
+        return store.read(() -> {
+            List<Member> matches = new ArrayList<>();
+            IntList byName = store.membersByName.matching(lowerPrefix, id -> true, limit);
+            IntList byEmail = store.membersByEmail.matching(lowerPrefix, id -> true, Integer.MAX_VALUE);
+            for (int i = 0; i < byName.size(); i++) {
+                matches.add(store.members.get(byName.get(i)));
+            }
+            for (int i = 0; i < byEmail.size(); i++) {
+                Member member = store.members.get(byEmail.get(i));
+                if (!InMemoryStore.lower(member.getName()).startsWith(lowerPrefix)) {
+                    matches.add(member);
+                }
+            }
+            Member byId = store.members.get(InMemoryStore.parseId(prefix));
+            if (byId != null && !matches.contains(byId)) {
+                matches.add(byId);
+            }
+
+            matches.sort(NAME_ORDER);
+            List<Member> result = new ArrayList<>(Math.min(limit, matches.size()));
+            for (int i = 0; i < matches.size() && i < limit; i++) {
+                result.add(InMemoryStore.copy(matches.get(i)));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<Member> getMembersPage(int afterId, int pageSize) throws SQLException {
+        return store.read(() -> {
+            List<Member> members = new ArrayList<>(Math.min(pageSize, store.members.size()));
+            for (int id = store.members.before(afterId); id > 0 && members.size() < pageSize; id = store.members.before(id)) {
+                members.add(InMemoryStore.copy(store.members.get(id)));
+            }
+            return members;
+        });
+    }
+
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return store.watermark();
+    }
+
+    @Override
+    public Delta<Member> getMembersChangedSince(Watermark since, int limit) throws SQLException {
+        return store.delta(store.memberChanges, since, limit, id -> InMemoryStore.copy(store.members.get(id)));
+    }
+
+    @Override
+    public void updateMember(Member member) throws SQLException {
+        boolean updated = store.write(() -> {
+            Member stored = store.members.get(member.getId());
+            if (stored == null) {
+                return false;
+            }
+            unindex(stored);
+            Member copy = InMemoryStore.copy(member);
+            copy.setCreatedAt(stored.getCreatedAt());
+            store.members.put(copy.getId(), copy);
+            index(copy);
+            store.memberChanges.changed(copy.getId(), store.stamp());
+            return true;
+        });
+        if (updated) {
+            EntityCaches.members().invalidate(member.getId());
+        }
+    }
+
+    @Override
+    public void deleteMember(int id) throws SQLException {
+        store.write(() -> {
+            if (InMemoryStore.isReferenced(store.transactionsByMember, id)) {
+                throw InMemoryStore.foreignKeyViolation("Member " + id + " has transactions and cannot be deleted");
+            }
+            Member removed = store.members.remove(id);
+            if (removed != null) {
+                unindex(removed);
+                store.memberChanges.deleted(id, store.stamp());
+            }
+            return null;
+        });
+        EntityCaches.members().invalidate(id);
+    }
+
+    @Override
+    public List<Member> searchMembers(String keyword, int limit, QueryCanceller canceller) throws SQLException {
+        String needle = InMemoryStore.lower(keyword);
+        return store.read(() -> {
+            List<Member> members = new ArrayList<>();
+            for (int id = store.members.before(Integer.MAX_VALUE); id > 0 && members.size() < limit; id = store.members.before(id)) {
+                Member member = store.members.get(id);
+                if (InMemoryStore.containsIgnoreCase(member.getName(), needle)
+                        || InMemoryStore.containsIgnoreCase(member.getEmail(), needle)
+                        || InMemoryStore.containsIgnoreCase(member.getPhone(), needle)) {
+                    members.add(InMemoryStore.copy(member));
+                }
+            }
+            return members;
+        });
+    }
+
+    private void index(Member member) {
+        store.membersByEmail.add(InMemoryStore.lower(member.getEmail()), member.getId());
+        store.membersByName.add(InMemoryStore.lower(member.getName()), member.getId());
+    }
+
+    private void unindex(Member member) {
+        store.membersByEmail.remove(InMemoryStore.lower(member.getEmail()), member.getId());
+        store.membersByName.remove(InMemoryStore.lower(member.getName()), member.getId());
+    }
+}
@@ -0,0 +1,225 @@
+package repository.memory;
+
+import models.Book;
+import models.Member;
+import models.Transaction;
+import repository.Delta;
+import repository.Watermark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The tables and indexes behind the in-memory repositories.
+ * <p>
+ * Rows live in {@link IdTable}s keyed by id. Books are indexed by ISBN and
+ * lower-cased title, members by lower-cased email and name, and transactions
+ * by status (one bit set of ids per status) and by book and member. A single
+ * read-write lock guards everything, so a loan updates the book and the
+ * transaction tables atomically, the way the JDBC backend does in one
+ * statement. Stored rows are never handed out: readers get copies, and writers
+ * store copies of what they were given.
+ * <p>
+ * Every write also stamps the rows it touched in a per-table {@link ChangeLog}
+ * for delta reads. Writes are atomic under the lock, so no change is ever in
+ * flight when a watermark is taken.
+ */
+public final class InMemoryStore {
+    static final String ISSUED = "issued";
+    static final String RETURNED = "returned";
+    private static final BitSet NO_IDS = new BitSet();
+
+    final IdTable<Book> books = new IdTable<>();
+    final IdTable<Member> members = new IdTable<>();
+    final IdTable<Transaction> transactions = new IdTable<>();
+
+    final KeyIndex booksByIsbn = new KeyIndex();
+    final KeyIndex booksByTitle = new KeyIndex();
+    final KeyIndex membersByEmail = new KeyIndex();
+    final KeyIndex membersByName = new KeyIndex();
+    final Map<String, BitSet> transactionsByStatus = new HashMap<>();
+    final IntObjectMap<IntList> transactionsByBook = new IntObjectMap<>();
+    final IntObjectMap<IntList> transactionsByMember = new IntObjectMap<>();
+    final ChangeLog bookChanges = new ChangeLog();
+    final ChangeLog memberChanges = new ChangeLog();
+    final ChangeLog transactionChanges = new ChangeLog();
+    private long changeSequence;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    <T> T read(Work<T> work) throws SQLException {
+        lock.readLock().lock();
+        try {
+            return work.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    <T> T write(Work<T> work) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            return work.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The next change stamp; callers must hold the write lock.
+     */
+    long stamp() {
+        return ++changeSequence;
+    }
+
+    Watermark watermark() throws SQLException {
+        return read(() -> new Watermark(changeSequence, Long.MAX_VALUE));
+    }
+
+    /**
+     * The rows of one table stamped after the watermark, copied out by {@code copyOf}.
+     */
+    <T> Delta<T> delta(ChangeLog log, Watermark since, int limit, IntFunction<T> copyOf) throws SQLException {
+        return read(() -> {
+            List<T> changed = new ArrayList<>();
+            Set<Integer> deleted = new HashSet<>();
+            log.since(since.sequence(), (id, isDeleted) -> {
+                if (isDeleted) {
+                    deleted.add(id);
+                } else {
+                    changed.add(copyOf.apply(id));
+                }
+                return changed.size() <= limit && deleted.size() <= limit;
+            });
+            Watermark next = new Watermark(changeSequence, Long.MAX_VALUE);
+            if (changed.size() > limit || deleted.size() > limit) {
+                return new Delta<>(List.of(), Set.of(), next, true);
+            }
+            return new Delta<>(changed, deleted, next, false);
+        });
+    }
+
+    /**
+     * Ids of the transactions with this status; callers must hold the write lock.
+     */
+    BitSet withStatus(String status) {
+        return transactionsByStatus.computeIfAbsent(status, s -> new BitSet());
+    }
+
+    /**
+     * Read-only view of {@link #withStatus} that never adds a status.
+     */
+    BitSet statusIds(String status) {
+        return transactionsByStatus.getOrDefault(status, NO_IDS);
+    }
+
+    static void link(IntObjectMap<IntList> index, int key, int id) {
+        IntList ids = index.get(key);
+        if (ids == null) {
+            ids = new IntList();
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    static boolean isReferenced(IntObjectMap<IntList> index, int key) {
+        IntList ids = index.get(key);
+        return ids != null && !ids.isEmpty();
+    }
+
+    static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    static boolean containsIgnoreCase(String value, String lowerKeyword) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(lowerKeyword);
+    }
+
+    /**
+     * The id the input names, or -1 when it is not a plain number.
+     */
+    static int parseId(String text) {
+        if (text.isEmpty() || text.length() > 9 || !text.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Integer.parseInt(text);
+    }
+
+    /**
+     * The ids sorted newest first, the order the DAOs return rows read by id.
+     */
+    static int[] newestFirst(int[] ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+            int id = sorted[i];
+            sorted[i] = sorted[j];
+            sorted[j] = id;
+        }
+        return sorted;
+    }
+
+    /**
+     * The error PostgreSQL reports for the same foreign key violation.
+     */
+    static SQLException foreignKeyViolation(String message) {
+        return new SQLException(message, "23503");
+    }
+
+    static Book copy(Book book) {
+        Book copy = new Book();
+        copy.setId(book.getId());
+        copy.setTitle(book.getTitle());
+        copy.setAuthor(book.getAuthor());
+        copy.setIsbn(book.getIsbn());
+        copy.setAvailable(book.isAvailable());
+        copy.setCreatedAt(book.getCreatedAt());
+        return copy;
+    }
+
+    static Member copy(Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setName(member.getName());
+        copy.setEmail(member.getEmail());
+        copy.setPhone(member.getPhone());
+        copy.setCreatedAt(member.getCreatedAt());
+        return copy;
+    }
+
+    /**
+     * A copy of the transaction carrying its book title and member name.
+     */
+    Transaction joined(Transaction transaction) {
+        Transaction copy = new Transaction();
+        copy.setId(transaction.getId());
+        copy.setBookId(transaction.getBookId());
+        copy.setMemberId(transaction.getMemberId());
+        copy.setIssueDate(transaction.getIssueDate());
+        copy.setDueDate(transaction.getDueDate());
+        copy.setReturnDate(transaction.getReturnDate());
+        copy.setStatus(transaction.getStatus());
+        copy.setFineCents(transaction.getFineCents());
+        copy.setCreatedAt(transaction.getCreatedAt());
+        Book book = books.get(transaction.getBookId());
+        copy.setBookTitle(book == null ? null : book.getTitle());
+        Member member = members.get(transaction.getMemberId());
+        copy.setMemberName(member == null ? null : member.getName());
+        return copy;
+    }
+
+    @FunctionalInterface
+    interface Work<T> {
+        T run() throws SQLException;
+    }
+}
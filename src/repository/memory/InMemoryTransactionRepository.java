@@ -0,0 +1,295 @@
+package repository.memory;
+
+import cache.EntityCaches;
+import counters.CirculationCounters;
+import dao.CirculationOutcome;
+import dao.LoanPolicy;
+import dao.TransactionFilter;
+import models.Book;
+import models.Transaction;
+import repository.Delta;
+import repository.FineAssessment;
+import repository.TransactionRepository;
+import repository.Watermark;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link TransactionRepository} over an {@link InMemoryStore}. A loan changes
+ * the book and the transaction under one write lock, so two desks issuing the
+ * same copy at once see exactly one {@link CirculationOutcome#ISSUED}.
+ */
+public class InMemoryTransactionRepository implements TransactionRepository {
+    private static final int STREAM_CHUNK_SIZE = 1000;
+
+    private final InMemoryStore store;
+
+    public InMemoryTransactionRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public CirculationOutcome issueBook(Transaction transaction) throws SQLException {
+        LoanPolicy policy = LoanPolicy.current();
+        CirculationOutcome outcome = store.write(() -> {
+            if (activeLoans(transaction.getMemberId()) >= policy.maxActiveLoans()) {
+                return CirculationOutcome.LIMIT_REACHED;
+            }
+            Book book = store.books.get(transaction.getBookId());
+            if (book == null) {
+                return CirculationOutcome.NOT_FOUND;
+            }
+            if (!book.isAvailable()) {
+                return CirculationOutcome.ALREADY_ISSUED;
+            }
+            if (store.members.get(transaction.getMemberId()) == null) {
+                throw InMemoryStore.foreignKeyViolation("Member " + transaction.getMemberId() + " does not exist");
+            }
+
+            Transaction loan = new Transaction(transaction.getBookId(), transaction.getMemberId(), transaction.getIssueDate());
+            loan.setDueDate(transaction.getDueDate() != null ? transaction.getDueDate()
+                : policy.dueDate(transaction.getIssueDate()));
+            loan.setId(store.transactions.nextId());
+            loan.setStatus(InMemoryStore.ISSUED);
+            loan.setCreatedAt(LocalDateTime.now());
+            store.transactions.put(loan.getId(), loan);
+            store.withStatus(InMemoryStore.ISSUED).set(loan.getId());
+            InMemoryStore.link(store.transactionsByBook, loan.getBookId(), loan.getId());
+            InMemoryStore.link(store.transactionsByMember, loan.getMemberId(), loan.getId());
+            book.setAvailable(false);
+            store.transactionChanges.changed(loan.getId(), store.stamp());
+            store.bookChanges.changed(book.getId(), store.stamp());
+
+            transaction.setId(loan.getId());
+            transaction.setDueDate(loan.getDueDate());
+            transaction.setStatus(InMemoryStore.ISSUED);
+            return CirculationOutcome.ISSUED;
+        });
+
+        if (outcome == CirculationOutcome.ISSUED) {
+            CirculationCounters.getInstance().loanIssued(transaction.getIssueDate(), transaction.getDueDate());
+            EntityCaches.books().invalidate(transaction.getBookId());
+        }
+        return outcome;
+    }
+
+    @Override
+    public CirculationOutcome returnBook(int transactionId) throws SQLException {
+        Transaction[] closed = new Transaction[1];
+        CirculationOutcome outcome = store.write(() -> {
+            Transaction loan = store.transactions.get(transactionId);
+            if (loan == null) {
+                return CirculationOutcome.NOT_FOUND;
+            }
+            if (!InMemoryStore.ISSUED.equals(loan.getStatus())) {
+                return CirculationOutcome.ALREADY_RETURNED;
+            }
+
+            store.withStatus(InMemoryStore.ISSUED).clear(transactionId);
+            store.withStatus(InMemoryStore.RETURNED).set(transactionId);
+            loan.setStatus(InMemoryStore.RETURNED);
+            loan.setReturnDate(LocalDate.now());
+            loan.setFineCents(LoanPolicy.current().fineCents(loan.getDueDate(), loan.getReturnDate()));
+            Book book = store.books.get(loan.getBookId());
+            store.transactionChanges.changed(transactionId, store.stamp());
+            if (book != null) {
+                book.setAvailable(true);
+                store.bookChanges.changed(book.getId(), store.stamp());
+            }
+            closed[0] = loan;
+            return CirculationOutcome.RETURNED;
+        });
+
+        if (outcome == CirculationOutcome.RETURNED) {
+            CirculationCounters.getInstance().loanReturned(closed[0].getReturnDate(), closed[0].getDueDate());
+            EntityCaches.books().invalidate(closed[0].getBookId());
+        }
+        return outcome;
+    }
+
+    @Override
+    public List<Transaction> getAllTransactions() throws SQLException {
+        return getTransactionsPage(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsPage(int afterId, int pageSize) throws SQLException {
+        return store.read(() -> {
+            List<Transaction> transactions = new ArrayList<>(Math.min(pageSize, store.transactions.size()));
+            for (int id = store.transactions.before(afterId); id > 0 && transactions.size() < pageSize;
+                 id = store.transactions.before(id)) {
+                transactions.add(store.joined(store.transactions.get(id)));
+            }
+            return transactions;
+        });
+    }
+
+    @Override
+    public Transaction getTransactionById(int id) throws SQLException {
+        return store.read(() -> {
+            Transaction transaction = store.transactions.get(id);
+            return transaction == null ? null : store.joined(transaction);
+        });
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByIds(int[] ids) throws SQLException {
+        int[] newestFirst = InMemoryStore.newestFirst(ids);
+        return store.read(() -> {
+            List<Transaction> transactions = new ArrayList<>(newestFirst.length);
+            for (int id : newestFirst) {
+                Transaction transaction = store.transactions.get(id);
+                if (transaction != null) {
+                    transactions.add(store.joined(transaction));
+                }
+            }
+            return transactions;
+        });
+    }
+
+    @Override
+    public Watermark currentWatermark() throws SQLException {
+        return store.watermark();
+    }
+
+    @Override
+    public Delta<Transaction> getTransactionsChangedSince(Watermark since, int limit) throws SQLException {
+        return store.delta(store.transactionChanges, since, limit, id -> store.joined(store.transactions.get(id)));
+    }
+
+    /**
+     * Copies matching transactions out {@value #STREAM_CHUNK_SIZE} at a time and
+     * hands them over outside the lock, so a slow consumer never holds up desks.
+     */
+    @Override
+    public long streamTransactions(TransactionFilter filter, Consumer<Transaction> consumer) throws SQLException {
+        long count = 0;
+        int cursor = 0;
+        while (true) {
+            int from = cursor;
+            List<Transaction> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+            cursor = store.read(() -> {
+                BitSet ids = filter.status() == null ? null : store.statusIds(filter.status());
+                int id = from;
+                while (chunk.size() < STREAM_CHUNK_SIZE) {
+                    id = ids == null ? store.transactions.after(id) : ids.nextSetBit(id + 1);
+                    if (id < 0) {
+                        return -1;
+                    }
+                    Transaction transaction = store.transactions.get(id);
+                    if (matches(transaction, filter)) {
+                        chunk.add(store.joined(transaction));
+                    }
+                }
+                return id;
+            });
+
+            for (Transaction transaction : chunk) {
+                consumer.accept(transaction);
+            }
+            count += chunk.size();
+            if (cursor < 0) {
+                return count;
+            }
+        }
+    }
+
+    @Override
+    public List<Transaction> getActiveTransactions() throws SQLException {
+        return store.read(() -> {
+            BitSet active = store.statusIds(InMemoryStore.ISSUED);
+            List<Transaction> transactions = new ArrayList<>(active.cardinality());
+            for (int id = active.length() - 1; id > 0; id = active.previousSetBit(id - 1)) {
+                transactions.add(store.joined(store.transactions.get(id)));
+            }
+            return transactions;
+        });
+    }
+
+    @Override
+    public List<Transaction> getOverdueTransactions(LocalDate asOf, int afterId, int pageSize) throws SQLException {
+        return store.read(() -> {
+            BitSet active = store.statusIds(InMemoryStore.ISSUED);
+            List<Transaction> transactions = new ArrayList<>();
+            for (int id = active.previousSetBit(afterId - 1); id > 0 && transactions.size() < pageSize;
+                 id = active.previousSetBit(id - 1)) {
+                Transaction transaction = store.transactions.get(id);
+                if (transaction.isOverdue(asOf)) {
+                    transactions.add(store.joined(transaction));
+                }
+            }
+            return transactions;
+        });
+    }
+
+    @Override
+    public List<Transaction> getMemberTransactionsPage(int memberId, int afterId, int pageSize) throws SQLException {
+        return store.read(() -> {
+            List<Transaction> transactions = new ArrayList<>();
+            IntList ids = store.transactionsByMember.get(memberId);
+            for (int i = ids == null ? -1 : ids.size() - 1; i >= 0 && transactions.size() < pageSize; i--) {
+                Transaction transaction = store.transactions.get(ids.get(i));
+                if (transaction != null && transaction.getId() < afterId) {
+                    transactions.add(store.joined(transaction));
+                }
+            }
+            return transactions;
+        });
+    }
+
+    /**
+     * Recomputes every open loan's fine in one pass under the write lock; with a
+     * single lock over the store there is nothing to gain from partitioning.
+     */
+    @Override
+    public FineAssessment assessFines(LocalDate asOf, LoanPolicy policy) throws SQLException {
+        return store.write(() -> {
+            BitSet active = store.statusIds(InMemoryStore.ISSUED);
+            long overdue = 0;
+            long updated = 0;
+            long total = 0;
+            for (int id = active.nextSetBit(0); id >= 0; id = active.nextSetBit(id + 1)) {
+                Transaction loan = store.transactions.get(id);
+                int fine = policy.fineCents(loan.getDueDate(), asOf);
+                if (loan.isOverdue(asOf)) {
+                    overdue++;
+                }
+                if (fine != loan.getFineCents()) {
+                    loan.setFineCents(fine);
+                    store.transactionChanges.changed(id, store.stamp());
+                    updated++;
+                }
+                total += fine;
+            }
+            return new FineAssessment(asOf, active.cardinality(), overdue, updated, total);
+        });
+    }
+
+    private static boolean matches(Transaction transaction, TransactionFilter filter) {
+        LocalDate issued = transaction.getIssueDate();
+        return (filter.issuedFrom() == null || !issued.isBefore(filter.issuedFrom()))
+            && (filter.issuedTo() == null || !issued.isAfter(filter.issuedTo()));
+    }
+
+    /**
+     * Open loans of the member, counted through its own transactions rather
+     * than all of them; callers must hold the lock.
+     */
+    private int activeLoans(int memberId) {
+        IntList ids = store.transactionsByMember.get(memberId);
+        BitSet active = store.statusIds(InMemoryStore.ISSUED);
+        int count = 0;
+        for (int i = 0; ids != null && i < ids.size(); i++) {
+            if (active.get(ids.get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,43 @@
+package repository.memory;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, used for the id lists of the secondary indexes.
+ */
+final class IntList {
+    private int[] values = new int[2];
+    private int size;
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the first occurrence of {@code value}, keeping the order of the rest.
+     */
+    void remove(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+                return;
+            }
+        }
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
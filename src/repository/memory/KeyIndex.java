@@ -0,0 +1,59 @@
+package repository.memory;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Sorted secondary index from a string column to the ids of the rows holding
+ * it, serving both equality and prefix lookups. Null values are not indexed.
+ */
+final class KeyIndex {
+    private final NavigableMap<String, IntList> ids = new TreeMap<>();
+
+    void add(String key, int id) {
+        if (key != null) {
+            ids.computeIfAbsent(key, k -> new IntList()).add(id);
+        }
+    }
+
+    void remove(String key, int id) {
+        if (key == null) {
+            return;
+        }
+        IntList list = ids.get(key);
+        if (list != null) {
+            list.remove(id);
+            if (list.isEmpty()) {
+                ids.remove(key);
+            }
+        }
+    }
+
+    boolean contains(String key) {
+        return key != null && ids.containsKey(key);
+    }
+
+    /**
+     * Ids of the rows whose key starts with {@code prefix} and that pass
+     * {@code filter}, in key order. Stops after the first key that brings the
+     * count to {@code limit}, so rows sharing that key are never cut off
+     * arbitrarily.
+     */
+    IntList matching(String prefix, IntPredicate filter, int limit) {
+        IntList result = new IntList();
+        Map<String, IntList> range = prefix.isEmpty() ? ids : ids.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        for (IntList list : range.values()) {
+            for (int i = 0; i < list.size(); i++) {
+                if (filter.test(list.get(i))) {
+                    result.add(list.get(i));
+                }
+            }
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,205 @@
+package search;
+
+import models.Book;
+import repository.BookRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide trigram index over book title, author and ISBN.
+ * <p>
+ * The index is filled from the books table by {@link #build(BookRepository)} and kept
+ * current by the DAO write paths. Until the first build has finished it reports
+ * itself as not ready and searches go to the database instead. A rebuild fills
+ * a fresh index and swaps it in when done, so searches keep using the old one
+ * meanwhile.
+ * <p>
+ * Books are copied on the way in and out, so callers may modify what they get;
+ * availability changes replace the stored copy rather than mutating it.
+ */
+public class BookSearchIndex {
+    private static final Logger LOG = Logger.getLogger(BookSearchIndex.class.getName());
+    private static final BookSearchIndex INSTANCE = new BookSearchIndex();
+
+    private volatile TrigramIndex<Book> index = newIndex();
+    // Held while a build page is applied and while a write changes the index, so
+    // a page cannot land between a write's check and its update. Guards the fields below.
+    private final Object writeLock = new Object();
+    // The index a running build fills; writes go to it as well as to the live one.
+    private TrigramIndex<Book> next;
+    private final Set<Integer> touchedDuringBuild = new HashSet<>();
+    private final Map<Integer, Boolean> availabilityDuringBuild = new HashMap<>();
+    private volatile boolean ready;
+
+    public static BookSearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return SearchMode.current() == SearchMode.INDEX;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Loads every book page by page into a fresh index. Saves and deletes that
+     * happen while the build runs are applied to both indexes, and the build
+     * skips those books so an older page cannot overwrite them. An issue or
+     * return of a book whose page has not been loaded yet is remembered and
+     * applied to the row when its page arrives.
+     */
+    public synchronized void build(BookRepository books) throws SQLException {
+        long start = System.nanoTime();
+        TrigramIndex<Book> fresh = newIndex();
+        synchronized (writeLock) {
+            touchedDuringBuild.clear();
+            availabilityDuringBuild.clear();
+            next = fresh;
+        }
+        try {
+            int cursor = Integer.MAX_VALUE;
+            while (true) {
+                List<Book> page = books.getBooksPage(cursor, 5000);
+                synchronized (writeLock) {
+                    fresh.putAll(page.stream()
+                        .filter(book -> !touchedDuringBuild.contains(book.getId()))
+                        .map(this::copyForBuild)
+                        .toList());
+                }
+                if (page.size() < 5000) {
+                    break;
+                }
+                cursor = page.get(page.size() - 1).getId();
+            }
+            synchronized (writeLock) {
+                index = fresh;
+            }
+        } finally {
+            synchronized (writeLock) {
+                next = null;
+                touchedDuringBuild.clear();
+                availabilityDuringBuild.clear();
+            }
+        }
+        ready = true;
+        LOG.info(() -> "Book search index built: " + fresh.size() + " books in "
+            + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Builds the index on a background thread if index search is enabled.
+     */
+    public void buildInBackground(BookRepository books) {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread.ofVirtual().name("book-index-build").start(() -> {
+            try {
+                build(books);
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Could not build book search index; searching the database instead", e);
+            }
+        });
+    }
+
+    public List<Book> search(String keyword, int limit) {
+        List<Book> found = index.search(keyword, limit);
+        List<Book> copies = new ArrayList<>(found.size());
+        for (Book book : found) {
+            copies.add(copy(book));
+        }
+        return copies;
+    }
+
+    public void bookSaved(Book book) {
+        if (isEnabled()) {
+            Book copy = copy(book);
+            synchronized (writeLock) {
+                index.put(copy);
+                if (next != null) {
+                    touchedDuringBuild.add(book.getId());
+                    next.put(copy);
+                }
+            }
+        }
+    }
+
+    public void bookDeleted(int id) {
+        if (isEnabled()) {
+            synchronized (writeLock) {
+                index.remove(id);
+                if (next != null) {
+                    touchedDuringBuild.add(id);
+                    next.remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the indexed copy of the book. During a build a book that is not
+     * indexed yet keeps its page row, with this availability applied to it.
+     */
+    public void availabilityChanged(int id, boolean available) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (writeLock) {
+            setAvailable(index, id, available);
+            if (next != null && !setAvailable(next, id, available)) {
+                availabilityDuringBuild.put(id, available);
+            }
+        }
+    }
+
+    /**
+     * Replaces the book's copy in {@code target}, returning false if it has none.
+     */
+    private static boolean setAvailable(TrigramIndex<Book> target, int id, boolean available) {
+        Book current = target.get(id);
+        if (current == null) {
+            return false;
+        }
+        if (current.isAvailable() != available) {
+            Book updated = copy(current);
+            updated.setAvailable(available);
+            target.replace(updated);
+        }
+        return true;
+    }
+
+    private static TrigramIndex<Book> newIndex() {
+        return new TrigramIndex<>(
+            Book::getId, List.of(Book::getTitle, Book::getAuthor, Book::getIsbn), new int[] {3, 2, 1});
+    }
+
+    private Book copyForBuild(Book book) {
+        Book copy = copy(book);
+        Boolean available = availabilityDuringBuild.remove(book.getId());
+        if (available != null) {
+            copy.setAvailable(available);
+        }
+        return copy;
+    }
+
+    private static Book copy(Book book) {
+        Book copy = new Book();
+        copy.setId(book.getId());
+        copy.setTitle(book.getTitle());
+        copy.setAuthor(book.getAuthor());
+        copy.setIsbn(book.getIsbn());
+        copy.setAvailable(book.isAvailable());
+        copy.setCreatedAt(book.getCreatedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,40 @@
+package search;
+
+import java.util.Locale;
+
+/**
+ * How keyword searches are answered. Chosen at startup with the
+ * {@code library.search.mode} system property; the default keeps searches on
+ * the plain SQL path.
+ */
+public enum SearchMode {
+    /** {@code ILIKE '%keyword%'} against the database. */
+    SQL,
+    /** In-JVM trigram index, falling back to SQL until the index has been built. */
+    INDEX,
+    /** pg_trgm and tsvector GIN indexes in the database, ranked by relevance. */
+    FULLTEXT;
+
+    private static final SearchMode CURRENT = parse(System.getProperty("library.search.mode", "sql"));
+
+    public static SearchMode current() {
+        return CURRENT;
+    }
+
+    /**
+     * Whether every match for a keyword is also a match for any substring of that
+     * keyword, so earlier results can be narrowed in memory. Word-prefix full-text
+     * matching does not have this property.
+     */
+    public boolean narrowsBySubstring() {
+        return this != FULLTEXT;
+    }
+
+    private static SearchMode parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return SQL;
+        }
+    }
+}
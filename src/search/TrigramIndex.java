@@ -0,0 +1,423 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-memory trigram inverted index with case-insensitive substring semantics
+ * (the same matches as {@code ILIKE '%keyword%'} over the indexed fields).
+ * <p>
+ * Every document gets an internal slot; each trigram maps to the sorted list of
+ * slots whose fields contain it. A query of three or more characters intersects
+ * the posting lists of its trigrams, smallest first, and then confirms the
+ * substring on the few survivors. Shorter queries fall back to a scan of the
+ * documents, which is still all in memory.
+ * <p>
+ * Updates never rewrite posting lists: the old slot is marked dead and the
+ * document is appended under a new slot. Dead slots are dropped by a rebuild
+ * once they make up half of the index.
+ * <p>
+ * Documents are stored and returned as given, without copying: a document must
+ * not be modified while it is indexed, or its stored text and postings no
+ * longer agree. Callers that hand results on copy them first.
+ */
+public class TrigramIndex<T> {
+    private static final int[] EMPTY = new int[0];
+
+    private final ToIntFunction<T> idOf;
+    private final List<Function<T, String>> fields;
+    private final int[] weights;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Object[] docs = new Object[1024];
+    private String[][] texts = new String[1024][];
+    private int slotCount;
+    private int deadCount;
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+    private final PostingMap postings = new PostingMap();
+
+    /**
+     * @param fields  extractors for the searchable text of a document
+     * @param weights relative importance of each field when ranking
+     */
+    public TrigramIndex(ToIntFunction<T> idOf, List<Function<T, String>> fields, int[] weights) {
+        if (fields.size() != weights.length) {
+            throw new IllegalArgumentException("One weight is needed per field");
+        }
+        this.idOf = idOf;
+        this.fields = List.copyOf(fields);
+        this.weights = weights.clone();
+    }
+
+    public void put(T doc) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(idOf.applyAsInt(doc));
+            addLocked(doc);
+            compactIfSparseLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Iterable<T> batch) {
+        lock.writeLock().lock();
+        try {
+            for (T doc : batch) {
+                removeLocked(idOf.applyAsInt(doc));
+                addLocked(doc);
+            }
+            compactIfSparseLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            compactIfSparseLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the stored document without touching the postings. Only valid when
+     * none of the indexed fields changed.
+     */
+    public void replace(T doc) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.get(idOf.applyAsInt(doc));
+            if (slot != null) {
+                docs[slot] = doc;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotById.get(id);
+            return slot == null ? null : (T) docs[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs = new Object[1024];
+            texts = new String[1024][];
+            slotCount = 0;
+            deadCount = 0;
+            slotById.clear();
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} documents containing {@code keyword} in any
+     * field, best matches first: exact field matches rank above prefixes, which
+     * rank above word starts, which rank above other substrings, each scaled by
+     * the field weight. Ties are broken by the newest id.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> search(String keyword, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] candidates = query.length() < 3 ? null : candidates(query);
+            int candidateCount = candidates == null ? slotCount : candidates.length;
+
+            List<Match> matches = new ArrayList<>();
+            for (int i = 0; i < candidateCount; i++) {
+                int slot = candidates == null ? i : candidates[i];
+                String[] fieldTexts = texts[slot];
+                if (fieldTexts == null) {
+                    continue;
+                }
+                int score = score(fieldTexts, query);
+                if (score > 0) {
+                    matches.add(new Match(slot, score, idOf.applyAsInt((T) docs[slot])));
+                }
+            }
+
+            matches.sort((a, b) -> a.score != b.score ? Integer.compare(b.score, a.score) : Integer.compare(b.id, a.id));
+            int count = Math.min(limit, matches.size());
+            List<T> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add((T) docs[matches.get(i).slot]);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] candidates(String query) {
+        long[] grams = trigrams(query);
+        PostingList[] lists = new PostingList[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (lists[i] == null) {
+                return EMPTY;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = Arrays.copyOf(lists[0].slots, lists[0].size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.length && resultSize > 0; i++) {
+            resultSize = intersect(result, resultSize, lists[i]);
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    private static int intersect(int[] into, int size, PostingList other) {
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < other.size; i++) {
+            int slot = into[i];
+            j = lowerBound(other.slots, j, other.size, slot);
+            if (j < other.size && other.slots[j] == slot) {
+                into[out++] = slot;
+            }
+        }
+        return out;
+    }
+
+    private static int lowerBound(int[] a, int from, int to, int key) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int score(String[] fieldTexts, String query) {
+        int best = 0;
+        for (int f = 0; f < fieldTexts.length; f++) {
+            String text = fieldTexts[f];
+            int at = text.indexOf(query);
+            if (at < 0) {
+                continue;
+            }
+            int quality;
+            if (at == 0 && text.length() == query.length()) {
+                quality = 8;
+            } else if (at == 0) {
+                quality = 4;
+            } else if (!Character.isLetterOrDigit(text.charAt(at - 1))) {
+                quality = 2;
+            } else {
+                quality = 1;
+            }
+            best = Math.max(best, quality * weights[f]);
+        }
+        return best;
+    }
+
+    private void addLocked(T doc) {
+        if (slotCount == docs.length) {
+            docs = Arrays.copyOf(docs, slotCount * 2);
+            texts = Arrays.copyOf(texts, slotCount * 2);
+        }
+        int slot = slotCount++;
+        String[] fieldTexts = new String[fields.size()];
+        for (int f = 0; f < fieldTexts.length; f++) {
+            String value = fields.get(f).apply(doc);
+            fieldTexts[f] = value == null ? "" : normalize(value);
+        }
+        docs[slot] = doc;
+        texts[slot] = fieldTexts;
+        slotById.put(idOf.applyAsInt(doc), slot);
+
+        for (String text : fieldTexts) {
+            for (long gram : trigrams(text)) {
+                postings.getOrCreate(gram).append(slot);
+            }
+        }
+    }
+
+    private void removeLocked(int id) {
+        Integer slot = slotById.remove(id);
+        if (slot != null) {
+            docs[slot] = null;
+            texts[slot] = null;
+            deadCount++;
+        }
+    }
+
+    private void compactIfSparseLocked() {
+        if (deadCount > 1024 && deadCount > slotCount / 2) {
+            compactLocked();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compactLocked() {
+        Object[] live = new Object[slotById.size()];
+        int n = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (docs[slot] != null) {
+                live[n++] = docs[slot];
+            }
+        }
+        docs = new Object[Math.max(1024, n * 2)];
+        texts = new String[docs.length][];
+        slotCount = 0;
+        deadCount = 0;
+        slotById.clear();
+        postings.clear();
+        for (int i = 0; i < n; i++) {
+            addLocked((T) live[i]);
+        }
+    }
+
+    /**
+     * Distinct trigrams of the text. Each is packed into a long (16 bits per char)
+     * and multiplied by an odd constant, which keeps keys unique while spreading
+     * their bits for the hash table.
+     */
+    private static long[] trigrams(String text) {
+        int n = text.length() - 2;
+        if (n <= 0) {
+            return new long[0];
+        }
+        long[] grams = new long[n];
+        for (int i = 0; i < n; i++) {
+            long packed = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            grams[i] = packed * 0x9E3779B97F4A7C15L;
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Match(int slot, int score, int id) {
+    }
+
+    /**
+     * Open-addressing map from packed trigram to posting list, so the hot build
+     * and lookup paths never box a key.
+     */
+    private static final class PostingMap {
+        private long[] keys = new long[1 << 12];
+        private PostingList[] values = new PostingList[1 << 12];
+        private int size;
+
+        PostingList get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        PostingList getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            PostingList list = new PostingList();
+            keys[i] = key;
+            values[i] = list;
+            if (++size > keys.length / 2) {
+                grow();
+            }
+            return list;
+        }
+
+        void clear() {
+            keys = new long[1 << 12];
+            values = new PostingList[1 << 12];
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            PostingList[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new PostingList[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = mix(oldKeys[j]) & mask;
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            return (int) (key ^ (key >>> 29));
+        }
+    }
+
+    private static final class PostingList {
+        private int[] slots = new int[4];
+        private int size;
+
+        void append(int slot) {
+            if (size > 0 && slots[size - 1] == slot) {
+                return;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package sync;
+
+import models.Book;
+import models.Member;
+import models.Transaction;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes received in one burst of notifications, folded per table: a row
+ * inserted and updated shows up once as changed, a row changed and then deleted
+ * only as deleted. When a table had a bulk change, or the listener lost its
+ * connection and may have missed notices, {@link #reloadAll} says so and the
+ * id sets should be ignored for that table.
+ * <p>
+ * Before the listeners run, the feed reads the changed rows of every table it
+ * can patch in one query each and attaches them, so listeners share that read
+ * instead of each repeating it.
+ */
+public final class ChangeBatch {
+    private final Map<ChangeEvent.Table, Set<Integer>> changed = new EnumMap<>(ChangeEvent.Table.class);
+    private final Map<ChangeEvent.Table, Set<Integer>> deleted = new EnumMap<>(ChangeEvent.Table.class);
+    private final Set<ChangeEvent.Table> bulk = EnumSet.noneOf(ChangeEvent.Table.class);
+    private final Set<ChangeEvent.Table> fromOthers = EnumSet.noneOf(ChangeEvent.Table.class);
+    private final boolean resync;
+    private List<Book> changedBooks = List.of();
+    private List<Member> changedMembers = List.of();
+    private List<Transaction> changedTransactions = List.of();
+
+    private ChangeBatch(boolean resync) {
+        this.resync = resync;
+    }
+
+    static ChangeBatch empty() {
+        return new ChangeBatch(false);
+    }
+
+    /**
+     * A batch telling every listener to reload everything.
+     */
+    static ChangeBatch resync() {
+        return new ChangeBatch(true);
+    }
+
+    /**
+     * @param own whether the notice came from one of this process's own connections
+     */
+    void add(ChangeEvent event, boolean own) {
+        if (!own) {
+            fromOthers.add(event.table());
+        }
+        switch (event.kind()) {
+            case BULK -> bulk.add(event.table());
+            case DELETE -> {
+                Set<Integer> changedIds = changed.get(event.table());
+                if (changedIds != null && changedIds.remove(event.id()) && changedIds.isEmpty()) {
+                    changed.remove(event.table());
+                }
+                ids(deleted, event.table()).add(event.id());
+            }
+            default -> {
+                if (!deleted.getOrDefault(event.table(), Set.of()).contains(event.id())) {
+                    ids(changed, event.table()).add(event.id());
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return !resync && bulk.isEmpty() && changed.isEmpty() && deleted.isEmpty();
+    }
+
+    public boolean touches(ChangeEvent.Table table) {
+        return reloadAll(table) || changed.containsKey(table) || deleted.containsKey(table);
+    }
+
+    public boolean reloadAll(ChangeEvent.Table table) {
+        return resync || bulk.contains(table);
+    }
+
+    /**
+     * Whether some change to the table may have been made by another process,
+     * as opposed to echoes of writes made here.
+     */
+    public boolean fromOtherProcesses(ChangeEvent.Table table) {
+        return resync || fromOthers.contains(table);
+    }
+
+    /**
+     * Ids inserted or updated in the table and still present.
+     */
+    public Set<Integer> changed(ChangeEvent.Table table) {
+        return Collections.unmodifiableSet(changed.getOrDefault(table, Set.of()));
+    }
+
+    /**
+     * The same ids as {@link #changed}, for reading the rows in one query.
+     */
+    public int[] changedIds(ChangeEvent.Table table) {
+        return changed(table).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public Set<Integer> deleted(ChangeEvent.Table table) {
+        return Collections.unmodifiableSet(deleted.getOrDefault(table, Set.of()));
+    }
+
+    /**
+     * The changed books as read by the feed, newest first: empty when there are
+     * none or the table is to be reloaded anyway, {@code null} when the read failed.
+     */
+    public List<Book> changedBooks() {
+        return changedBooks;
+    }
+
+    /**
+     * The changed members, on the same terms as {@link #changedBooks}.
+     */
+    public List<Member> changedMembers() {
+        return changedMembers;
+    }
+
+    /**
+     * The changed transactions, on the same terms as {@link #changedBooks}.
+     */
+    public List<Transaction> changedTransactions() {
+        return changedTransactions;
+    }
+
+    void setChangedBooks(List<Book> books) {
+        changedBooks = books == null ? null : Collections.unmodifiableList(books);
+    }
+
+    void setChangedMembers(List<Member> members) {
+        changedMembers = members == null ? null : Collections.unmodifiableList(members);
+    }
+
+    void setChangedTransactions(List<Transaction> transactions) {
+        changedTransactions = transactions == null ? null : Collections.unmodifiableList(transactions);
+    }
+
+    /**
+     * Number of distinct rows of the table this batch names.
+     */
+    public int size(ChangeEvent.Table table) {
+        return changed(table).size() + deleted(table).size();
+    }
+
+    private static Set<Integer> ids(Map<ChangeEvent.Table, Set<Integer>> byTable, ChangeEvent.Table table) {
+        return byTable.computeIfAbsent(table, t -> new LinkedHashSet<>());
+    }
+}
@@ -0,0 +1,38 @@
+package sync;
+
+import java.util.Locale;
+
+/**
+ * One row change announced on the {@code library_changes} channel. The payload
+ * is {@code "<table> <I|U|D> <id>"}, or {@code "<table> * 0"} when a statement
+ * touched too many rows to name them one by one.
+ */
+public record ChangeEvent(Table table, Kind kind, int id) {
+
+    public enum Table { BOOKS, MEMBERS, TRANSACTIONS }
+
+    public enum Kind { INSERT, UPDATE, DELETE, BULK }
+
+    /**
+     * Parses a notification payload, or returns {@code null} if it is not one of ours.
+     */
+    public static ChangeEvent parse(String payload) {
+        String[] parts = payload == null ? new String[0] : payload.split(" ");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            Table table = Table.valueOf(parts[0].toUpperCase(Locale.ROOT));
+            Kind kind = switch (parts[1]) {
+                case "I" -> Kind.INSERT;
+                case "U" -> Kind.UPDATE;
+                case "D" -> Kind.DELETE;
+                case "*" -> Kind.BULK;
+                default -> null;
+            };
+            return kind == null ? null : new ChangeEvent(table, kind, Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
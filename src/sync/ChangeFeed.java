@@ -0,0 +1,249 @@
+package sync;
+
+import cache.EntityCache;
+import cache.EntityCaches;
+import config.DatabaseConfig;
+import models.Book;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import repository.Repositories;
+import search.BookSearchIndex;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the row changes other desks (and this one) commit and hands them to
+ * the open panels, so they patch the affected rows instead of reloading.
+ * <p>
+ * The triggers installed by migration 4 send one notice per changed row on the
+ * {@value #CHANNEL} channel. A single thread keeps a dedicated connection
+ * outside the pool in {@code LISTEN}, gathers each burst of notices into one
+ * {@link ChangeBatch}, drops the entity caches it names, reads the changed
+ * rows once for everyone, refreshes the search index and then calls the
+ * listeners on that thread. If the connection drops,
+ * the thread reconnects with a growing pause and publishes a batch that tells
+ * every listener to reload, since notices sent in the meantime are lost.
+ * <p>
+ * Enabled unless {@code library.sync.enabled} is {@code false}.
+ */
+public class ChangeFeed {
+    public static final String CHANNEL = "library_changes";
+    /**
+     * Listeners reload a table rather than patch it once a batch names more rows than this.
+     */
+    public static final int PATCH_LIMIT = 200;
+
+    private static final Logger LOG = Logger.getLogger(ChangeFeed.class.getName());
+    private static final ChangeFeed INSTANCE = new ChangeFeed();
+    private static final int IDLE_POLL_MS = 10_000;
+    private static final int COALESCE_MS = 50;
+    private static final int MAX_COALESCE_MS = 500;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final List<Consumer<ChangeBatch>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile boolean active;
+    private Thread thread;
+
+    public static ChangeFeed getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("library.sync.enabled", "true"));
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = Thread.ofPlatform().name("change-feed").daemon().start(this::run);
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Whether notices are being received right now. While it is not, changes from
+     * other desks go unseen and callers should fall back to reloading.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Registers a listener, called on the feed thread for every batch.
+     */
+    public void addListener(Consumer<ChangeBatch> listener) {
+        listeners.add(listener);
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF_MS;
+        boolean listenedBefore = false;
+        while (running) {
+            try (Connection conn = DatabaseConfig.openDedicatedConnection()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = conn.unwrap(PGConnection.class);
+                active = true;
+                backoff = MIN_BACKOFF_MS;
+                if (listenedBefore) {
+                    LOG.info("Change feed reconnected; reloading open tables");
+                    publish(ChangeBatch.resync());
+                }
+                listenedBefore = true;
+                receive(conn, pgConnection);
+            } catch (SQLException e) {
+                if (active) {
+                    LOG.log(Level.WARNING, "Change feed lost its connection; retrying", e);
+                } else {
+                    LOG.log(Level.FINE, "Change feed could not connect; retrying in " + backoff + " ms", e);
+                }
+            } finally {
+                active = false;
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void receive(Connection conn, PGConnection pgConnection) throws SQLException {
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(IDLE_POLL_MS);
+            if (notifications == null || notifications.length == 0) {
+                // A dead peer can leave the socket silent; probe it while nothing is arriving.
+                if (!conn.isValid(5)) {
+                    throw new SQLException("Change feed connection is no longer valid", "08006");
+                }
+                continue;
+            }
+
+            // A busy desk or a multi-row statement arrives as many small packets; fold them into one batch.
+            ChangeBatch batch = ChangeBatch.empty();
+            add(batch, notifications);
+            long deadline = System.nanoTime() + MAX_COALESCE_MS * 1_000_000L;
+            while (System.nanoTime() < deadline) {
+                notifications = pgConnection.getNotifications(COALESCE_MS);
+                if (notifications == null || notifications.length == 0) {
+                    break;
+                }
+                add(batch, notifications);
+            }
+            publish(batch);
+        }
+    }
+
+    private static void add(ChangeBatch batch, PGNotification[] notifications) {
+        for (PGNotification notification : notifications) {
+            ChangeEvent event = ChangeEvent.parse(notification.getParameter());
+            if (event != null) {
+                batch.add(event, DatabaseConfig.isOwnBackend(notification.getPID()));
+            }
+        }
+    }
+
+    private void publish(ChangeBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        invalidate(batch, ChangeEvent.Table.BOOKS, EntityCaches.books());
+        invalidate(batch, ChangeEvent.Table.MEMBERS, EntityCaches.members());
+        readChangedRows(batch);
+        updateSearchIndex(batch);
+
+        for (Consumer<ChangeBatch> listener : listeners) {
+            try {
+                listener.accept(batch);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    private static void invalidate(ChangeBatch batch, ChangeEvent.Table table, EntityCache<?> cache) {
+        if (batch.reloadAll(table)) {
+            cache.invalidateAll();
+            return;
+        }
+        for (int id : batch.changed(table)) {
+            cache.invalidate(id);
+        }
+        for (int id : batch.deleted(table)) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static void readChangedRows(ChangeBatch batch) {
+        if (isPatchable(batch, ChangeEvent.Table.BOOKS)) {
+            try {
+                batch.setChangedBooks(Repositories.books().getBooksByIds(batch.changedIds(ChangeEvent.Table.BOOKS)));
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Could not read changed books", e);
+                batch.setChangedBooks(null);
+            }
+        }
+        if (isPatchable(batch, ChangeEvent.Table.MEMBERS)) {
+            try {
+                batch.setChangedMembers(
+                    Repositories.members().getMembersByIds(batch.changedIds(ChangeEvent.Table.MEMBERS)));
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Could not read changed members", e);
+                batch.setChangedMembers(null);
+            }
+        }
+        if (isPatchable(batch, ChangeEvent.Table.TRANSACTIONS)) {
+            try {
+                batch.setChangedTransactions(
+                    Repositories.transactions().getTransactionsByIds(batch.changedIds(ChangeEvent.Table.TRANSACTIONS)));
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Could not read changed transactions", e);
+                batch.setChangedTransactions(null);
+            }
+        }
+    }
+
+    private static boolean isPatchable(ChangeBatch batch, ChangeEvent.Table table) {
+        return !batch.changed(table).isEmpty() && !batch.reloadAll(table) && batch.size(table) <= PATCH_LIMIT;
+    }
+
+    private static void updateSearchIndex(ChangeBatch batch) {
+        BookSearchIndex index = BookSearchIndex.getInstance();
+        if (!BookSearchIndex.isEnabled() || !batch.touches(ChangeEvent.Table.BOOKS)) {
+            return;
+        }
+        if (batch.reloadAll(ChangeEvent.Table.BOOKS) || batch.size(ChangeEvent.Table.BOOKS) > PATCH_LIMIT) {
+            index.buildInBackground(Repositories.books());
+            return;
+        }
+        for (int id : batch.deleted(ChangeEvent.Table.BOOKS)) {
+            index.bookDeleted(id);
+        }
+        if (batch.changedBooks() == null) {
+            index.buildInBackground(Repositories.books());
+            return;
+        }
+        for (Book book : batch.changedBooks()) {
+            index.bookSaved(book);
+        }
+    }
+}
@@ -1,24 +1,44 @@
 package ui;
 
-import dao.BookDAO;
+import cache.EntityCaches;
+import io.CatalogImporter;
 import models.Book;
+import repository.BookRepository;
+import repository.Repositories;
+import repository.Watermark;
+import search.BookSearchIndex;
+import sync.ChangeBatch;
+import sync.ChangeEvent;
+import sync.ChangeFeed;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
-import java.sql.SQLException;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class BooksPanel extends JPanel {
+    private static final String[] COLUMNS = {"ID", "Title", "Author", "ISBN", "Status"};
+    
     private JTable booksTable;
-    private DefaultTableModel tableModel;
-    private BookDAO bookDAO;
+    private PagedTableModel<Book> pagedModel;
+    private ListTableModel<Book> searchModel;
+    private BookRepository bookRepository;
     private JTextField searchField;
+    private JLabel statusLabel;
+    private DataLoader loader;
+    private LiveSearch<Book> liveSearch;
+    private Watermark watermark;
     
     public BooksPanel() {
-        bookDAO = new BookDAO();
+        bookRepository = Repositories.books();
+        loader = new DataLoader(this::setLoading);
         initializeUI();
         loadBooks();
+        ChangeFeed.getInstance().addListener(this::changesReceived);
     }
     
     private void initializeUI() {
@@ -39,6 +59,12 @@ public class BooksPanel extends JPanel {
         titleLabel.setForeground(new Color(15, 23, 42));
         header.add(titleLabel, BorderLayout.WEST);
         
+        statusLabel = new JLabel("Loading...");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        statusLabel.setForeground(new Color(100, 116, 139));
+        statusLabel.setVisible(false);
+        header.add(statusLabel, BorderLayout.CENTER);
+        
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         rightPanel.setBackground(Color.WHITE);
         
@@ -50,15 +76,24 @@ public class BooksPanel extends JPanel {
             BorderFactory.createEmptyBorder(5, 10, 5, 10)
         ));
         
+        liveSearch = new LiveSearch<>(searchField, bookRepository::searchBooks, BooksPanel::matches, loader,
+            this::showBooks, this::loadBooks,
+            e -> JOptionPane.showMessageDialog(this, "Error searching books: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
+        
         JButton searchButton = createStyledButton("Search", new Color(59, 130, 246));
-        searchButton.addActionListener(e -> searchBooks());
+        searchButton.addActionListener(e -> liveSearch.searchNow());
         
         JButton addButton = createStyledButton("Add Book", new Color(16, 185, 129));
         addButton.addActionListener(e -> showAddDialog());
         
+        JButton importButton = createStyledButton("Import", new Color(100, 116, 139));
+        importButton.addActionListener(e -> importCatalog(importButton));
+        
         rightPanel.add(searchField);
         rightPanel.add(searchButton);
         rightPanel.add(addButton);
+        rightPanel.add(importButton);
         
         header.add(rightPanel, BorderLayout.EAST);
         
@@ -69,15 +104,12 @@ public class BooksPanel extends JPanel {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
         
-        String[] columns = {"ID", "Title", "Author", "ISBN", "Status"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        pagedModel = new PagedTableModel<>(COLUMNS, bookRepository::getBooksPage, BooksPanel::valueAt, Book::getId, loader);
+        pagedModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this, "Error loading books: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+        searchModel = new ListTableModel<>(COLUMNS, BooksPanel::valueAt);
         
-        booksTable = new JTable(tableModel);
+        booksTable = new JTable(pagedModel);
         booksTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         booksTable.setRowHeight(35);
         booksTable.setShowGrid(false);
@@ -132,54 +164,59 @@ public class BooksPanel extends JPanel {
         return button;
     }
     
+    private void setLoading(boolean loading) {
+        statusLabel.setVisible(loading);
+        setCursor(loading ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+    
+    /**
+     * Reloads the table from the first page. The watermark is taken before any
+     * page is read, so the next delta covers every change the pages may miss.
+     */
     private void loadBooks() {
-        try {
-            List<Book> books = bookDAO.getAllBooks();
-            tableModel.setRowCount(0);
-            
-            for (Book book : books) {
-                Object[] row = {
-                    book.getId(),
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getIsbn(),
-                    book.isAvailable() ? "Available" : "Issued"
-                };
-                tableModel.addRow(row);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Error loading books: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+        loader.cancelLoads();
+        if (booksTable.getModel() != pagedModel) {
+            booksTable.setModel(pagedModel);
         }
+        watermark = null;
+        loader.load(bookRepository::currentWatermark, current -> {
+            watermark = current;
+            pagedModel.reset();
+        }, e -> pagedModel.reset());
     }
     
-    private void searchBooks() {
-        String keyword = searchField.getText().trim();
-        if (keyword.isEmpty()) {
-            loadBooks();
-            return;
-        }
+    private void showBooks(List<Book> books) {
+        searchModel.setRows(books);
         
-        try {
-            List<Book> books = bookDAO.searchBooks(keyword);
-            tableModel.setRowCount(0);
-            
-            for (Book book : books) {
-                Object[] row = {
-                    book.getId(),
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getIsbn(),
-                    book.isAvailable() ? "Available" : "Issued"
-                };
-                tableModel.addRow(row);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Error searching books: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+        if (booksTable.getModel() != searchModel) {
+            booksTable.setModel(searchModel);
+        }
+    }
+    
+    private static Object valueAt(Book book, int column) {
+        switch (column) {
+            case 0: return book.getId();
+            case 1: return book.getTitle();
+            case 2: return book.getAuthor();
+            case 3: return book.getIsbn();
+            default: return book.isAvailable() ? "Available" : "Issued";
         }
     }
     
+    private static boolean matches(Book book, String keyword) {
+        return LiveSearch.containsIgnoreCase(book.getTitle(), keyword)
+            || LiveSearch.containsIgnoreCase(book.getAuthor(), keyword)
+            || LiveSearch.containsIgnoreCase(book.getIsbn(), keyword);
+    }
+    
+    private Book getSelectedBook() {
+        int selectedRow = booksTable.getSelectedRow();
+        if (selectedRow == -1) {
+            return null;
+        }
+        return booksTable.getModel() == pagedModel ? pagedModel.getRow(selectedRow) : searchModel.getRow(selectedRow);
+    }
+    
     private void showAddDialog() {
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Add Book", true);
         dialog.setLayout(new BorderLayout(20, 20));
@@ -208,21 +245,22 @@ public class BooksPanel extends JPanel {
         
         JButton saveButton = createStyledButton("Save", new Color(16, 185, 129));
         saveButton.addActionListener(e -> {
-            try {
-                Book book = new Book(
-                    titleField.getText().trim(),
-                    authorField.getText().trim(),
-                    isbnField.getText().trim()
-                );
-                
-                bookDAO.addBook(book);
-                loadBooks();
+            Book book = new Book(
+                titleField.getText().trim(),
+                authorField.getText().trim(),
+                isbnField.getText().trim()
+            );
+            
+            saveButton.setEnabled(false);
+            loader.execute(() -> bookRepository.addBook(book), () -> {
+                refreshAfterWrite();
                 dialog.dispose();
                 JOptionPane.showMessageDialog(this, "Book added successfully");
-            } catch (SQLException ex) {
+            }, ex -> {
+                saveButton.setEnabled(true);
                 JOptionPane.showMessageDialog(dialog, "Error adding book: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         });
         
         JButton cancelButton = createStyledButton("Cancel", new Color(100, 116, 139));
@@ -235,17 +273,46 @@ public class BooksPanel extends JPanel {
         dialog.setVisible(true);
     }
     
+    private void importCatalog(JButton importButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Books");
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        Path file = chooser.getSelectedFile().toPath();
+        CatalogImporter importer = new CatalogImporter(bookRepository);
+        importButton.setEnabled(false);
+        loader.submit(() -> importer.importCsv(file, progress -> SwingUtilities.invokeLater(() ->
+            statusLabel.setText(String.format("Importing... %,d rows (%,d rows/s)",
+                progress.rowsRead(), progress.rowsPerSecond())))), result -> {
+            importButton.setEnabled(true);
+            statusLabel.setText("Loading...");
+            refreshAfterWrite();
+            JOptionPane.showMessageDialog(this, String.format(
+                "Imported %,d books in %.1f s (%,d duplicates skipped)",
+                result.inserted(), result.elapsedMillis() / 1000.0, result.duplicates()));
+        }, e -> {
+            importButton.setEnabled(true);
+            statusLabel.setText("Loading...");
+            JOptionPane.showMessageDialog(this, "Error importing books: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+    
     private void editBook() {
-        int selectedRow = booksTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Book selected = getSelectedBook();
+        if (selected == null) {
             JOptionPane.showMessageDialog(this, "Please select a book to edit");
             return;
         }
         
-        int bookId = (int) tableModel.getValueAt(selectedRow, 0);
-        String currentTitle = (String) tableModel.getValueAt(selectedRow, 1);
-        String currentAuthor = (String) tableModel.getValueAt(selectedRow, 2);
-        String currentIsbn = (String) tableModel.getValueAt(selectedRow, 3);
+        int bookId = selected.getId();
+        String currentTitle = selected.getTitle();
+        String currentAuthor = selected.getAuthor();
+        String currentIsbn = selected.getIsbn();
+        boolean currentAvailable = selected.isAvailable();
         
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Edit Book", true);
         dialog.setLayout(new BorderLayout(20, 20));
@@ -277,22 +344,23 @@ public class BooksPanel extends JPanel {
         
         JButton saveButton = createStyledButton("Update", new Color(16, 185, 129));
         saveButton.addActionListener(e -> {
-            try {
-                Book book = new Book();
-                book.setId(bookId);
-                book.setTitle(titleField.getText().trim());
-                book.setAuthor(authorField.getText().trim());
-                book.setIsbn(isbnField.getText().trim());
-                book.setAvailable(((String) tableModel.getValueAt(selectedRow, 4)).equals("Available"));
-                
-                bookDAO.updateBook(book);
-                loadBooks();
+            Book book = new Book();
+            book.setId(bookId);
+            book.setTitle(titleField.getText().trim());
+            book.setAuthor(authorField.getText().trim());
+            book.setIsbn(isbnField.getText().trim());
+            book.setAvailable(currentAvailable);
+            
+            saveButton.setEnabled(false);
+            loader.execute(() -> bookRepository.updateBook(book), () -> {
+                refreshAfterWrite();
                 dialog.dispose();
                 JOptionPane.showMessageDialog(this, "Book updated successfully");
-            } catch (SQLException ex) {
+            }, ex -> {
+                saveButton.setEnabled(true);
                 JOptionPane.showMessageDialog(dialog, "Error updating book: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         });
         
         JButton cancelButton = createStyledButton("Cancel", new Color(100, 116, 139));
@@ -306,8 +374,8 @@ public class BooksPanel extends JPanel {
     }
     
     private void deleteBook() {
-        int selectedRow = booksTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Book selected = getSelectedBook();
+        if (selected == null) {
             JOptionPane.showMessageDialog(this, "Please select a book to delete");
             return;
         }
@@ -317,15 +385,12 @@ public class BooksPanel extends JPanel {
             "Confirm Delete", JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
-            try {
-                int bookId = (int) tableModel.getValueAt(selectedRow, 0);
-                bookDAO.deleteBook(bookId);
-                loadBooks();
+            int bookId = selected.getId();
+            loader.execute(() -> bookRepository.deleteBook(bookId), () -> {
+                refreshAfterWrite();
                 JOptionPane.showMessageDialog(this, "Book deleted successfully");
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error deleting book: " + e.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            }, e -> JOptionPane.showMessageDialog(this, "Error deleting book: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
         }
     }
     
@@ -347,6 +412,93 @@ public class BooksPanel extends JPanel {
     }
     
     public void refreshTable() {
-        loadBooks();
+        liveSearch.invalidate();
+        liveSearch.searchNow();
+    }
+    
+    /**
+     * Brings the table up to date when it is shown again. While the change feed
+     * is running the table is patched as books change, so there is nothing to do.
+     */
+    public void refreshIfStale() {
+        if (!ChangeFeed.getInstance().isActive()) {
+            syncChanges();
+        }
+    }
+    
+    /**
+     * After a write from this panel: the change feed brings the row back as a
+     * notice, so only sync when it is not running.
+     */
+    private void refreshAfterWrite() {
+        if (!ChangeFeed.getInstance().isActive()) {
+            syncChanges();
+        }
+    }
+    
+    /**
+     * Applies the books changed since the watermark instead of reloading, and
+     * falls back to a reload when more than {@link ChangeFeed#PATCH_LIMIT} changed.
+     */
+    private void syncChanges() {
+        Watermark since = watermark;
+        if (since == null) {
+            refreshTable();
+            return;
+        }
+        loader.submit(() -> bookRepository.getBooksChangedSince(since, ChangeFeed.PATCH_LIMIT), delta -> {
+            if (watermark != since) {
+                // A reload or another sync got there first.
+                return;
+            }
+            if (delta.truncated()) {
+                refreshTable();
+                return;
+            }
+            watermark = delta.next();
+            // Changes from other desks have not been through this process's cache or search index.
+            for (Book book : delta.changed()) {
+                EntityCaches.books().invalidate(book.getId());
+                BookSearchIndex.getInstance().bookSaved(book);
+            }
+            for (int id : delta.deleted()) {
+                EntityCaches.books().invalidate(id);
+                BookSearchIndex.getInstance().bookDeleted(id);
+            }
+            applyChanges(delta.changed(), delta.deleted());
+        }, e -> JOptionPane.showMessageDialog(this, "Error loading books: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+    }
+    
+    /**
+     * Called on the change feed thread. The changed books are read there, so
+     * batches reach the table in the order they were committed.
+     */
+    private void changesReceived(ChangeBatch batch) {
+        if (!batch.touches(ChangeEvent.Table.BOOKS)) {
+            return;
+        }
+        if (batch.reloadAll(ChangeEvent.Table.BOOKS) || batch.size(ChangeEvent.Table.BOOKS) > ChangeFeed.PATCH_LIMIT) {
+            SwingUtilities.invokeLater(this::syncChanges);
+            return;
+        }
+        
+        List<Book> changed = batch.changedBooks();
+        if (changed == null) {
+            SwingUtilities.invokeLater(this::refreshTable);
+            return;
+        }
+        Set<Integer> deleted = batch.deleted(ChangeEvent.Table.BOOKS);
+        SwingUtilities.invokeLater(() -> applyChanges(changed, deleted));
+    }
+    
+    private void applyChanges(List<Book> changed, Set<Integer> deleted) {
+        Map<Integer, Book> byId = new HashMap<>();
+        for (Book book : changed) {
+            byId.put(book.getId(), book);
+        }
+        liveSearch.invalidate();
+        pagedModel.patch(changed, deleted);
+        searchModel.patch(byId, deleted, Book::getId);
     }
 }
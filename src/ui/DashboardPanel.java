@@ -0,0 +1,198 @@
+package ui;
+
+import counters.CirculationCounters;
+import repository.CirculationSnapshot;
+import repository.CounterRepository;
+import repository.Repositories;
+import sync.ChangeBatch;
+import sync.ChangeEvent;
+import sync.ChangeFeed;
+
+import javax.swing.*;
+import java.awt.*;
+import java.time.LocalDate;
+
+/**
+ * Live circulation figures. The panel repaints from {@link CirculationCounters}
+ * on every tick while it is showing, which costs no database work; it reads the
+ * counter summary from the repository only to reseed the counters when they go
+ * stale, and every {@code library.dashboard.reloadSec} seconds to pick up loans
+ * that fell due since the last read.
+ */
+public class DashboardPanel extends JPanel {
+    private static final int REPAINT_MS = Integer.getInteger("library.dashboard.repaintMs", 1000);
+    private static final long RELOAD_MS = Long.getLong("library.dashboard.reloadSec", 60L) * 1000;
+
+    private final CirculationCounters counters = CirculationCounters.getInstance();
+    private CounterRepository counterRepository;
+    private DataLoader loader;
+    private JLabel statusLabel;
+    private JLabel asOfLabel;
+    private JLabel booksValue;
+    private JLabel availableValue;
+    private JLabel issuedValue;
+    private JLabel activeLoansValue;
+    private JLabel loansTodayValue;
+    private JLabel returnsTodayValue;
+    private JLabel overdueValue;
+    private long lastReload;
+    private boolean failing;
+
+    public DashboardPanel() {
+        counterRepository = Repositories.counters();
+        loader = new DataLoader(this::setLoading);
+        initializeUI();
+        ChangeFeed.getInstance().addListener(this::changesReceived);
+        new Timer(REPAINT_MS, e -> tick()).start();
+    }
+
+    private void initializeUI() {
+        setLayout(new BorderLayout(20, 20));
+        setBackground(Color.WHITE);
+        setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+
+        add(createHeader(), BorderLayout.NORTH);
+        add(createCards(), BorderLayout.CENTER);
+    }
+
+    private JPanel createHeader() {
+        JPanel header = new JPanel(new BorderLayout(15, 0));
+        header.setBackground(Color.WHITE);
+
+        JLabel titleLabel = new JLabel("Dashboard");
+        titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 28));
+        titleLabel.setForeground(new Color(15, 23, 42));
+        header.add(titleLabel, BorderLayout.WEST);
+
+        statusLabel = new JLabel("Loading...");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        statusLabel.setForeground(new Color(100, 116, 139));
+        statusLabel.setVisible(false);
+        header.add(statusLabel, BorderLayout.CENTER);
+
+        asOfLabel = new JLabel(" ");
+        asOfLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        asOfLabel.setForeground(new Color(100, 116, 139));
+        header.add(asOfLabel, BorderLayout.EAST);
+
+        return header;
+    }
+
+    private JPanel createCards() {
+        JPanel wrapper = new JPanel(new BorderLayout());
+        wrapper.setBackground(Color.WHITE);
+
+        JPanel cards = new JPanel(new GridLayout(2, 4, 20, 20));
+        cards.setBackground(Color.WHITE);
+
+        booksValue = addCard(cards, "Total Books", new Color(15, 23, 42));
+        availableValue = addCard(cards, "Available", new Color(16, 185, 129));
+        issuedValue = addCard(cards, "Issued", new Color(59, 130, 246));
+        activeLoansValue = addCard(cards, "Active Loans", new Color(15, 23, 42));
+        loansTodayValue = addCard(cards, "Loans Today", new Color(15, 23, 42));
+        returnsTodayValue = addCard(cards, "Returns Today", new Color(15, 23, 42));
+        overdueValue = addCard(cards, "Overdue", new Color(239, 68, 68));
+
+        wrapper.add(cards, BorderLayout.NORTH);
+        return wrapper;
+    }
+
+    private JLabel addCard(JPanel cards, String caption, Color valueColor) {
+        JPanel card = new JPanel(new BorderLayout(0, 8));
+        card.setBackground(new Color(248, 250, 252));
+        card.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(226, 232, 240)),
+            BorderFactory.createEmptyBorder(18, 20, 18, 20)
+        ));
+
+        JLabel captionLabel = new JLabel(caption);
+        captionLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        captionLabel.setForeground(new Color(100, 116, 139));
+        card.add(captionLabel, BorderLayout.NORTH);
+
+        JLabel valueLabel = new JLabel("-");
+        valueLabel.setFont(new Font("Segoe UI", Font.BOLD, 32));
+        valueLabel.setForeground(valueColor);
+        card.add(valueLabel, BorderLayout.CENTER);
+
+        cards.add(card);
+        return valueLabel;
+    }
+
+    private void setLoading(boolean loading) {
+        statusLabel.setVisible(loading);
+    }
+
+    public void refreshIfStale() {
+        if (counters.isStale()) {
+            reload();
+        }
+        showSnapshot(counters.snapshot());
+    }
+
+    /**
+     * Repaints from the in-process counters, reseeding them first when they are
+     * stale or the periodic reload is due. After a failed read only the periodic
+     * reload retries, so a database outage does not turn into a query per tick.
+     */
+    private void tick() {
+        if (!isShowing()) {
+            return;
+        }
+        boolean reloadDue = System.currentTimeMillis() - lastReload >= RELOAD_MS;
+        if (reloadDue || (counters.isStale() && !failing)) {
+            reload();
+        }
+        showSnapshot(counters.snapshot());
+    }
+
+    private void reload() {
+        if (loader.isLoading()) {
+            return;
+        }
+        lastReload = System.currentTimeMillis();
+        loader.load(() -> counterRepository.readCounters(LocalDate.now()),
+            snapshot -> {
+                failing = false;
+                counters.reset(snapshot);
+                showSnapshot(counters.snapshot());
+            },
+            e -> {
+                failing = true;
+                asOfLabel.setText("Error loading counters: " + e.getMessage());
+            });
+    }
+
+    private void showSnapshot(CirculationSnapshot snapshot) {
+        if (snapshot.day() == null) {
+            return;
+        }
+        booksValue.setText(format(snapshot.books()));
+        availableValue.setText(format(snapshot.availableBooks()));
+        issuedValue.setText(format(snapshot.unavailableBooks()));
+        activeLoansValue.setText(format(snapshot.activeLoans()));
+        loansTodayValue.setText(format(snapshot.loansToday()));
+        returnsTodayValue.setText(format(snapshot.returnsToday()));
+        overdueValue.setText(format(snapshot.overdueLoans()));
+        if (!failing) {
+            asOfLabel.setText("As of " + snapshot.day());
+        }
+    }
+
+    private static String format(long value) {
+        return String.format("%,d", value);
+    }
+
+    /**
+     * Writes from other desks reach this process only as change notices, so a
+     * notice for books or loans from another process makes the next tick reseed
+     * the counters. This desk's own writes echo back too; the DAOs have already
+     * counted those, or marked the counters stale where they could not.
+     */
+    private void changesReceived(ChangeBatch batch) {
+        if (batch.fromOtherProcesses(ChangeEvent.Table.BOOKS)
+                || batch.fromOtherProcesses(ChangeEvent.Table.TRANSACTIONS)) {
+            counters.markStale();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ui;
+
+import javax.swing.*;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs DAO calls on a background executor and hands the results back on the
+ * event dispatch thread.
+ * <p>
+ * Each panel owns one loader. {@link #load} is for reads that replace what the
+ * panel shows: starting a new load supersedes the previous one, whose result is
+ * dropped when it eventually arrives. {@link #submit} and {@link #execute} are
+ * for writes and other calls whose outcome must always be delivered. The loading
+ * listener is told (on the EDT) whenever the loader goes from idle to busy and
+ * back.
+ */
+public class DataLoader {
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Consumer<Boolean> loadingListener;
+
+    public DataLoader(Consumer<Boolean> loadingListener) {
+        this.loadingListener = loadingListener;
+    }
+
+    public <T> void load(DaoCall<T> call, Consumer<T> onSuccess, Consumer<SQLException> onError) {
+        long ticket = generation.incrementAndGet();
+        dispatch(call, onSuccess, onError, ticket);
+    }
+
+    public <T> void submit(DaoCall<T> call, Consumer<T> onSuccess, Consumer<SQLException> onError) {
+        dispatch(call, onSuccess, onError, -1);
+    }
+
+    public void execute(DaoAction action, Runnable onSuccess, Consumer<SQLException> onError) {
+        dispatch(() -> {
+            action.run();
+            return null;
+        }, ignored -> onSuccess.run(), onError, -1);
+    }
+
+    /**
+     * Drops the results of every load started so far.
+     */
+    public void cancelLoads() {
+        generation.incrementAndGet();
+    }
+
+    public boolean isLoading() {
+        return pending.get() > 0;
+    }
+
+    private <T> void dispatch(DaoCall<T> call, Consumer<T> onSuccess, Consumer<SQLException> onError, long ticket) {
+        if (pending.getAndIncrement() == 0) {
+            notifyLoading(true);
+        }
+
+        EXECUTOR.execute(() -> {
+            T result = null;
+            SQLException failure = null;
+            try {
+                result = call.call();
+            } catch (SQLException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new SQLException(e.getMessage(), e);
+            }
+
+            T value = result;
+            SQLException error = failure;
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    if (ticket == -1 || ticket == generation.get()) {
+                        if (error == null) {
+                            onSuccess.accept(value);
+                        } else {
+                            onError.accept(error);
+                        }
+                    }
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        loadingListener.accept(false);
+                    }
+                }
+            });
+        });
+    }
+
+    private void notifyLoading(boolean loading) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            loadingListener.accept(loading);
+        } else {
+            SwingUtilities.invokeLater(() -> loadingListener.accept(loading));
+        }
+    }
+
+    @FunctionalInterface
+    public interface DaoCall<T> {
+        T call() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface DaoAction {
+        void run() throws SQLException;
+    }
+}
@@ -0,0 +1,52 @@
+package ui;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Read-only table model that renders cells straight from domain objects.
+ * <p>
+ * No per-row {@code Object[]} is built: a cell value is produced by the
+ * {@link RowRenderer} only when the table asks for it, which in practice means
+ * only for the rows currently on screen.
+ */
+public abstract class EntityTableModel<T> extends AbstractTableModel {
+    private final String[] columns;
+    private final RowRenderer<T> renderer;
+
+    protected EntityTableModel(String[] columns, RowRenderer<T> renderer) {
+        this.columns = columns;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Returns the domain object shown at the given row, or {@code null} if it is
+     * not available.
+     */
+    public abstract T getRow(int rowIndex);
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        T row = getRow(rowIndex);
+        return row == null ? null : renderer.valueAt(row, columnIndex);
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface RowRenderer<T> {
+        Object valueAt(T row, int column);
+    }
+}
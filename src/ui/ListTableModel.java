@@ -0,0 +1,60 @@
+package ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Table model over an in-memory list of domain objects. Replacing the list
+ * fires a single data-changed event no matter how many rows it holds.
+ */
+public class ListTableModel<T> extends EntityTableModel<T> {
+    private List<T> rows = List.of();
+
+    public ListTableModel(String[] columns, RowRenderer<T> renderer) {
+        super(columns, renderer);
+    }
+
+    public void setRows(List<T> rows) {
+        this.rows = rows;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Replaces the rows whose id is in {@code changed} and drops the deleted ones.
+     * Rows that are not in the list yet are not added.
+     */
+    public void patch(Map<Integer, T> changed, Set<Integer> deleted, ToIntFunction<T> idOf) {
+        List<T> patched = new ArrayList<>(rows.size());
+        boolean modified = false;
+        for (T row : rows) {
+            int id = idOf.applyAsInt(row);
+            if (deleted.contains(id)) {
+                modified = true;
+                continue;
+            }
+            T replacement = changed.get(id);
+            modified |= replacement != null;
+            patched.add(replacement != null ? replacement : row);
+        }
+        if (modified) {
+            setRows(patched);
+        }
+    }
+
+    public List<T> getRows() {
+        return rows;
+    }
+
+    @Override
+    public T getRow(int rowIndex) {
+        return rowIndex >= 0 && rowIndex < rows.size() ? rows.get(rowIndex) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+}
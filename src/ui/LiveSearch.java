@@ -0,0 +1,148 @@
+package ui;
+
+import dao.QueryCanceller;
+import search.SearchMode;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * Search-as-you-type for a text field.
+ * <p>
+ * Keystrokes restart a short debounce timer; when it fires (or Enter is
+ * pressed) the previous query is cancelled on the server and a new one is
+ * started through the panel's {@link DataLoader}, capped at {@code limit}
+ * rows. When the new keyword contains the previous one and the previous
+ * result was not truncated, the answer is filtered from that result instead of
+ * asking the database again.
+ */
+public class LiveSearch<T> {
+    public static final int DEFAULT_LIMIT = 200;
+    private static final int DEBOUNCE_MS = 250;
+
+    private final JTextField field;
+    private final Searcher<T> searcher;
+    private final BiPredicate<T, String> matcher;
+    private final DataLoader loader;
+    private final Consumer<List<T>> onResults;
+    private final Runnable onCleared;
+    private final Consumer<SQLException> onError;
+    private final int limit;
+    private final Timer timer;
+
+    private QueryCanceller inFlight;
+    private String lastKeyword;
+    private List<T> lastResults;
+
+    public LiveSearch(JTextField field, Searcher<T> searcher, BiPredicate<T, String> matcher, DataLoader loader,
+                      Consumer<List<T>> onResults, Runnable onCleared, Consumer<SQLException> onError) {
+        this.field = field;
+        this.searcher = searcher;
+        this.matcher = matcher;
+        this.loader = loader;
+        this.onResults = onResults;
+        this.onCleared = onCleared;
+        this.onError = onError;
+        this.limit = DEFAULT_LIMIT;
+
+        timer = new Timer(DEBOUNCE_MS, e -> searchNow());
+        timer.setRepeats(false);
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+            public void changedUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+        });
+        field.addActionListener(e -> searchNow());
+    }
+
+    public void searchNow() {
+        timer.stop();
+        cancelInFlight();
+
+        String keyword = field.getText().trim();
+        if (keyword.isEmpty()) {
+            lastKeyword = null;
+            lastResults = null;
+            onCleared.run();
+            return;
+        }
+
+        if (canNarrow(keyword)) {
+            List<T> narrowed = new ArrayList<>();
+            for (T row : lastResults) {
+                if (matcher.test(row, keyword)) {
+                    narrowed.add(row);
+                }
+            }
+            loader.cancelLoads();
+            lastKeyword = keyword;
+            lastResults = narrowed;
+            onResults.accept(narrowed);
+            return;
+        }
+
+        QueryCanceller canceller = new QueryCanceller();
+        inFlight = canceller;
+        loader.load(() -> searcher.search(keyword, limit, canceller), results -> {
+            if (inFlight == canceller) {
+                inFlight = null;
+            }
+            lastKeyword = keyword;
+            lastResults = results;
+            onResults.accept(results);
+        }, e -> {
+            if (inFlight == canceller) {
+                inFlight = null;
+            }
+            if (!QueryCanceller.isCancellation(e)) {
+                onError.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Forgets the previous result, e.g. after a write that may have changed it.
+     */
+    public void invalidate() {
+        lastKeyword = null;
+        lastResults = null;
+    }
+
+    public static boolean containsIgnoreCase(String text, String keyword) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(keyword.toLowerCase(Locale.ROOT));
+    }
+
+    private boolean canNarrow(String keyword) {
+        return lastResults != null
+            && lastResults.size() < limit
+            && SearchMode.current().narrowsBySubstring()
+            && containsIgnoreCase(keyword, lastKeyword);
+    }
+
+    private void cancelInFlight() {
+        if (inFlight != null) {
+            QueryCanceller canceller = inFlight;
+            inFlight = null;
+            // Statement.cancel() sends a cancel request over a new socket; keep that off the EDT.
+            Thread.ofVirtual().start(canceller::cancel);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Searcher<T> {
+        List<T> search(String keyword, int limit, QueryCanceller canceller) throws SQLException;
+    }
+}
@@ -1,17 +1,30 @@
 package ui;
 
+import counters.CounterCompactor;
+import db.MigrationRunner;
+import fines.FineJob;
+import metrics.Metrics;
+import repository.Repositories;
+import search.BookSearchIndex;
+import sync.ChangeFeed;
+
 import javax.swing.*;
 import java.awt.*;
+import java.sql.SQLException;
 
 public class MainFrame extends JFrame {
     private CardLayout cardLayout;
     private JPanel mainPanel;
+    private DashboardPanel dashboardPanel;
     private BooksPanel booksPanel;
     private MembersPanel membersPanel;
     private TransactionsPanel transactionsPanel;
     
     public MainFrame() {
         initializeUI();
+        if (Repositories.backend() == Repositories.Backend.JDBC) {
+            BookSearchIndex.getInstance().buildInBackground(Repositories.books());
+        }
     }
     
     private void initializeUI() {
@@ -28,17 +41,19 @@ public class MainFrame extends JFrame {
         mainPanel = new JPanel(cardLayout);
         mainPanel.setBackground(Color.WHITE);
         
+        dashboardPanel = new DashboardPanel();
         booksPanel = new BooksPanel();
         membersPanel = new MembersPanel();
         transactionsPanel = new TransactionsPanel();
         
+        mainPanel.add(dashboardPanel, "dashboard");
         mainPanel.add(booksPanel, "books");
         mainPanel.add(membersPanel, "members");
         mainPanel.add(transactionsPanel, "transactions");
         
         add(mainPanel, BorderLayout.CENTER);
         
-        cardLayout.show(mainPanel, "books");
+        cardLayout.show(mainPanel, "dashboard");
     }
     
     private JPanel createSidebar() {
@@ -55,6 +70,8 @@ public class MainFrame extends JFrame {
         titleLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 30, 0));
         sidebar.add(titleLabel);
         
+        sidebar.add(createNavButton("Dashboard", "dashboard"));
+        sidebar.add(Box.createRigidArea(new Dimension(0, 10)));
         sidebar.add(createNavButton("Books", "books"));
         sidebar.add(Box.createRigidArea(new Dimension(0, 10)));
         sidebar.add(createNavButton("Members", "members"));
@@ -88,12 +105,14 @@ public class MainFrame extends JFrame {
         
         button.addActionListener(e -> {
             cardLayout.show(mainPanel, panelName);
-            if (panelName.equals("books")) {
-                booksPanel.refreshTable();
+            if (panelName.equals("dashboard")) {
+                dashboardPanel.refreshIfStale();
+            } else if (panelName.equals("books")) {
+                booksPanel.refreshIfStale();
             } else if (panelName.equals("members")) {
-                membersPanel.refreshTable();
+                membersPanel.refreshIfStale();
             } else if (panelName.equals("transactions")) {
-                transactionsPanel.refreshTable();
+                transactionsPanel.refreshIfStale();
             }
         });
         
@@ -107,9 +126,34 @@ public class MainFrame extends JFrame {
             e.printStackTrace();
         }
         
+        Metrics.startLogging(Long.getLong("library.metrics.logIntervalSec", 300L));
+        
+        String migrationError = null;
+        if (Repositories.backend() == Repositories.Backend.JDBC) {
+            try {
+                MigrationRunner.migrate();
+            } catch (SQLException e) {
+                migrationError = e.getMessage();
+            }
+            if (migrationError == null && ChangeFeed.isEnabled()) {
+                ChangeFeed.getInstance().start();
+            }
+        }
+        if (migrationError == null && FineJob.isEnabled()) {
+            FineJob.start(Repositories.transactions());
+        }
+        if (migrationError == null && CounterCompactor.isEnabled()) {
+            CounterCompactor.start(Repositories.counters());
+        }
+        
+        String startupError = migrationError;
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
             frame.setVisible(true);
+            if (startupError != null) {
+                JOptionPane.showMessageDialog(frame, "Error updating database schema: " + startupError,
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
         });
     }
 }
@@ -1,24 +1,45 @@
 package ui;
 
-import dao.MemberDAO;
+import cache.EntityCaches;
 import models.Member;
+import models.Transaction;
+import repository.MemberRepository;
+import repository.Repositories;
+import repository.TransactionRepository;
+import repository.Watermark;
+import sync.ChangeBatch;
+import sync.ChangeEvent;
+import sync.ChangeFeed;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MembersPanel extends JPanel {
+    private static final String[] COLUMNS = {"ID", "Name", "Email", "Phone"};
+    private static final String[] HISTORY_COLUMNS = {"ID", "Book", "Issue Date", "Due Date", "Return Date", "Status"};
+    
     private JTable membersTable;
-    private DefaultTableModel tableModel;
-    private MemberDAO memberDAO;
+    private PagedTableModel<Member> pagedModel;
+    private ListTableModel<Member> searchModel;
+    private MemberRepository memberRepository;
+    private TransactionRepository transactionRepository;
     private JTextField searchField;
+    private JLabel statusLabel;
+    private DataLoader loader;
+    private LiveSearch<Member> liveSearch;
+    private Watermark watermark;
     
     public MembersPanel() {
-        memberDAO = new MemberDAO();
+        memberRepository = Repositories.members();
+        transactionRepository = Repositories.transactions();
+        loader = new DataLoader(this::setLoading);
         initializeUI();
         loadMembers();
+        ChangeFeed.getInstance().addListener(this::changesReceived);
     }
     
     private void initializeUI() {
@@ -39,6 +60,12 @@ public class MembersPanel extends JPanel {
         titleLabel.setForeground(new Color(15, 23, 42));
         header.add(titleLabel, BorderLayout.WEST);
         
+        statusLabel = new JLabel("Loading...");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        statusLabel.setForeground(new Color(100, 116, 139));
+        statusLabel.setVisible(false);
+        header.add(statusLabel, BorderLayout.CENTER);
+        
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         rightPanel.setBackground(Color.WHITE);
         
@@ -50,8 +77,13 @@ public class MembersPanel extends JPanel {
             BorderFactory.createEmptyBorder(5, 10, 5, 10)
         ));
         
+        liveSearch = new LiveSearch<>(searchField, memberRepository::searchMembers, MembersPanel::matches, loader,
+            this::showMembers, this::loadMembers,
+            e -> JOptionPane.showMessageDialog(this, "Error searching members: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
+        
         JButton searchButton = createStyledButton("Search", new Color(59, 130, 246));
-        searchButton.addActionListener(e -> searchMembers());
+        searchButton.addActionListener(e -> liveSearch.searchNow());
         
         JButton addButton = createStyledButton("Add Member", new Color(16, 185, 129));
         addButton.addActionListener(e -> showAddDialog());
@@ -69,15 +101,12 @@ public class MembersPanel extends JPanel {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
         
-        String[] columns = {"ID", "Name", "Email", "Phone"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        pagedModel = new PagedTableModel<>(COLUMNS, memberRepository::getMembersPage, MembersPanel::valueAt, Member::getId, loader);
+        pagedModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this, "Error loading members: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+        searchModel = new ListTableModel<>(COLUMNS, MembersPanel::valueAt);
         
-        membersTable = new JTable(tableModel);
+        membersTable = new JTable(pagedModel);
         membersTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         membersTable.setRowHeight(35);
         membersTable.setShowGrid(false);
@@ -102,8 +131,12 @@ public class MembersPanel extends JPanel {
         JButton deleteButton = createStyledButton("Delete", new Color(239, 68, 68));
         deleteButton.addActionListener(e -> deleteMember());
         
+        JButton historyButton = createStyledButton("Loan History", new Color(100, 116, 139));
+        historyButton.addActionListener(e -> showHistoryDialog());
+        
         buttonPanel.add(editButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(historyButton);
         
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
@@ -132,52 +165,58 @@ public class MembersPanel extends JPanel {
         return button;
     }
     
+    private void setLoading(boolean loading) {
+        statusLabel.setVisible(loading);
+        setCursor(loading ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+    
+    /**
+     * Reloads the table from the first page, taking the watermark for the next
+     * delta before any page is read.
+     */
     private void loadMembers() {
-        try {
-            List<Member> members = memberDAO.getAllMembers();
-            tableModel.setRowCount(0);
-            
-            for (Member member : members) {
-                Object[] row = {
-                    member.getId(),
-                    member.getName(),
-                    member.getEmail(),
-                    member.getPhone()
-                };
-                tableModel.addRow(row);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Error loading members: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+        loader.cancelLoads();
+        if (membersTable.getModel() != pagedModel) {
+            membersTable.setModel(pagedModel);
         }
+        watermark = null;
+        loader.load(memberRepository::currentWatermark, current -> {
+            watermark = current;
+            pagedModel.reset();
+        }, e -> pagedModel.reset());
     }
     
-    private void searchMembers() {
-        String keyword = searchField.getText().trim();
-        if (keyword.isEmpty()) {
-            loadMembers();
-            return;
-        }
+    private void showMembers(List<Member> members) {
+        searchModel.setRows(members);
         
-        try {
-            List<Member> members = memberDAO.searchMembers(keyword);
-            tableModel.setRowCount(0);
-            
-            for (Member member : members) {
-                Object[] row = {
-                    member.getId(),
-                    member.getName(),
-                    member.getEmail(),
-                    member.getPhone()
-                };
-                tableModel.addRow(row);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Error searching members: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+        if (membersTable.getModel() != searchModel) {
+            membersTable.setModel(searchModel);
+        }
+    }
+    
+    private static Object valueAt(Member member, int column) {
+        switch (column) {
+            case 0: return member.getId();
+            case 1: return member.getName();
+            case 2: return member.getEmail();
+            default: return member.getPhone();
         }
     }
     
+    private static boolean matches(Member member, String keyword) {
+        return LiveSearch.containsIgnoreCase(member.getName(), keyword)
+            || LiveSearch.containsIgnoreCase(member.getEmail(), keyword)
+            || LiveSearch.containsIgnoreCase(member.getPhone(), keyword);
+    }
+    
+    private Member getSelectedMember() {
+        int selectedRow = membersTable.getSelectedRow();
+        if (selectedRow == -1) {
+            return null;
+        }
+        return membersTable.getModel() == pagedModel ? pagedModel.getRow(selectedRow) : searchModel.getRow(selectedRow);
+    }
+    
     private void showAddDialog() {
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Add Member", true);
         dialog.setLayout(new BorderLayout(20, 20));
@@ -206,21 +245,22 @@ public class MembersPanel extends JPanel {
         
         JButton saveButton = createStyledButton("Save", new Color(16, 185, 129));
         saveButton.addActionListener(e -> {
-            try {
-                Member member = new Member(
-                    nameField.getText().trim(),
-                    emailField.getText().trim(),
-                    phoneField.getText().trim()
-                );
-                
-                memberDAO.addMember(member);
-                loadMembers();
+            Member member = new Member(
+                nameField.getText().trim(),
+                emailField.getText().trim(),
+                phoneField.getText().trim()
+            );
+            
+            saveButton.setEnabled(false);
+            loader.execute(() -> memberRepository.addMember(member), () -> {
+                refreshAfterWrite();
                 dialog.dispose();
                 JOptionPane.showMessageDialog(this, "Member added successfully");
-            } catch (SQLException ex) {
+            }, ex -> {
+                saveButton.setEnabled(true);
                 JOptionPane.showMessageDialog(dialog, "Error adding member: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         });
         
         JButton cancelButton = createStyledButton("Cancel", new Color(100, 116, 139));
@@ -234,16 +274,16 @@ public class MembersPanel extends JPanel {
     }
     
     private void editMember() {
-        int selectedRow = membersTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Member selected = getSelectedMember();
+        if (selected == null) {
             JOptionPane.showMessageDialog(this, "Please select a member to edit");
             return;
         }
         
-        int memberId = (int) tableModel.getValueAt(selectedRow, 0);
-        String currentName = (String) tableModel.getValueAt(selectedRow, 1);
-        String currentEmail = (String) tableModel.getValueAt(selectedRow, 2);
-        String currentPhone = (String) tableModel.getValueAt(selectedRow, 3);
+        int memberId = selected.getId();
+        String currentName = selected.getName();
+        String currentEmail = selected.getEmail();
+        String currentPhone = selected.getPhone();
         
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Edit Member", true);
         dialog.setLayout(new BorderLayout(20, 20));
@@ -275,21 +315,22 @@ public class MembersPanel extends JPanel {
         
         JButton saveButton = createStyledButton("Update", new Color(16, 185, 129));
         saveButton.addActionListener(e -> {
-            try {
-                Member member = new Member();
-                member.setId(memberId);
-                member.setName(nameField.getText().trim());
-                member.setEmail(emailField.getText().trim());
-                member.setPhone(phoneField.getText().trim());
-                
-                memberDAO.updateMember(member);
-                loadMembers();
+            Member member = new Member();
+            member.setId(memberId);
+            member.setName(nameField.getText().trim());
+            member.setEmail(emailField.getText().trim());
+            member.setPhone(phoneField.getText().trim());
+            
+            saveButton.setEnabled(false);
+            loader.execute(() -> memberRepository.updateMember(member), () -> {
+                refreshAfterWrite();
                 dialog.dispose();
                 JOptionPane.showMessageDialog(this, "Member updated successfully");
-            } catch (SQLException ex) {
+            }, ex -> {
+                saveButton.setEnabled(true);
                 JOptionPane.showMessageDialog(dialog, "Error updating member: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         });
         
         JButton cancelButton = createStyledButton("Cancel", new Color(100, 116, 139));
@@ -302,9 +343,75 @@ public class MembersPanel extends JPanel {
         dialog.setVisible(true);
     }
     
+    /**
+     * Shows the selected member's loans, newest first, a page at a time as the
+     * table scrolls. The dialog has its own loader so its pages never supersede
+     * a load of the members table.
+     */
+    private void showHistoryDialog() {
+        Member selected = getSelectedMember();
+        if (selected == null) {
+            JOptionPane.showMessageDialog(this, "Please select a member to view loan history");
+            return;
+        }
+        
+        int memberId = selected.getId();
+        JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this),
+            "Loan History - " + selected.getName(), true);
+        dialog.setLayout(new BorderLayout(20, 20));
+        dialog.setSize(750, 450);
+        dialog.setLocationRelativeTo(this);
+        
+        DataLoader historyLoader = new DataLoader(loading ->
+            dialog.setCursor(loading ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null));
+        PagedTableModel<Transaction> historyModel = new PagedTableModel<>(HISTORY_COLUMNS,
+            (afterId, pageSize) -> transactionRepository.getMemberTransactionsPage(memberId, afterId, pageSize),
+            MembersPanel::historyValueAt, Transaction::getId, historyLoader);
+        historyModel.setErrorHandler(e -> JOptionPane.showMessageDialog(dialog, "Error loading loan history: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+        
+        JTable historyTable = new JTable(historyModel);
+        historyTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        historyTable.setRowHeight(30);
+        historyTable.setShowGrid(false);
+        historyTable.setIntercellSpacing(new Dimension(0, 0));
+        historyTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 13));
+        historyTable.getTableHeader().setBackground(new Color(248, 250, 252));
+        historyTable.getTableHeader().setForeground(new Color(51, 65, 85));
+        
+        JScrollPane scrollPane = new JScrollPane(historyTable);
+        scrollPane.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createEmptyBorder(20, 20, 0, 20),
+            BorderFactory.createLineBorder(new Color(226, 232, 240))
+        ));
+        dialog.add(scrollPane, BorderLayout.CENTER);
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
+        buttonPanel.setBackground(Color.WHITE);
+        JButton closeButton = createStyledButton("Close", new Color(100, 116, 139));
+        closeButton.addActionListener(e -> dialog.dispose());
+        buttonPanel.add(closeButton);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        
+        historyModel.reset();
+        dialog.setVisible(true);
+        historyLoader.cancelLoads();
+    }
+    
+    private static Object historyValueAt(Transaction transaction, int column) {
+        switch (column) {
+            case 0: return transaction.getId();
+            case 1: return transaction.getBookTitle();
+            case 2: return transaction.getIssueDate();
+            case 3: return transaction.getDueDate();
+            case 4: return transaction.getReturnDate() != null ? transaction.getReturnDate() : "-";
+            default: return transaction.getStatus();
+        }
+    }
+    
     private void deleteMember() {
-        int selectedRow = membersTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Member selected = getSelectedMember();
+        if (selected == null) {
             JOptionPane.showMessageDialog(this, "Please select a member to delete");
             return;
         }
@@ -314,15 +421,12 @@ public class MembersPanel extends JPanel {
             "Confirm Delete", JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
-            try {
-                int memberId = (int) tableModel.getValueAt(selectedRow, 0);
-                memberDAO.deleteMember(memberId);
-                loadMembers();
+            int memberId = selected.getId();
+            loader.execute(() -> memberRepository.deleteMember(memberId), () -> {
+                refreshAfterWrite();
                 JOptionPane.showMessageDialog(this, "Member deleted successfully");
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error deleting member: " + e.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            }, e -> JOptionPane.showMessageDialog(this, "Error deleting member: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
         }
     }
     
@@ -344,6 +448,84 @@ public class MembersPanel extends JPanel {
     }
     
     public void refreshTable() {
-        loadMembers();
+        liveSearch.invalidate();
+        liveSearch.searchNow();
+    }
+    
+    /**
+     * Brings the table up to date when it is shown again, unless the change feed
+     * is already patching it as members change.
+     */
+    public void refreshIfStale() {
+        if (!ChangeFeed.getInstance().isActive()) {
+            syncChanges();
+        }
+    }
+    
+    private void refreshAfterWrite() {
+        if (!ChangeFeed.getInstance().isActive()) {
+            syncChanges();
+        }
+    }
+    
+    /**
+     * Applies the members changed since the watermark, or reloads when too many did.
+     */
+    private void syncChanges() {
+        Watermark since = watermark;
+        if (since == null) {
+            refreshTable();
+            return;
+        }
+        loader.submit(() -> memberRepository.getMembersChangedSince(since, ChangeFeed.PATCH_LIMIT), delta -> {
+            if (watermark != since) {
+                return;
+            }
+            if (delta.truncated()) {
+                refreshTable();
+                return;
+            }
+            watermark = delta.next();
+            for (Member member : delta.changed()) {
+                EntityCaches.members().invalidate(member.getId());
+            }
+            for (int id : delta.deleted()) {
+                EntityCaches.members().invalidate(id);
+            }
+            applyChanges(delta.changed(), delta.deleted());
+        }, e -> JOptionPane.showMessageDialog(this, "Error loading members: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+    }
+    
+    /**
+     * Called on the change feed thread, which reads the changed members so
+     * batches are applied in commit order.
+     */
+    private void changesReceived(ChangeBatch batch) {
+        if (!batch.touches(ChangeEvent.Table.MEMBERS)) {
+            return;
+        }
+        if (batch.reloadAll(ChangeEvent.Table.MEMBERS) || batch.size(ChangeEvent.Table.MEMBERS) > ChangeFeed.PATCH_LIMIT) {
+            SwingUtilities.invokeLater(this::syncChanges);
+            return;
+        }
+        
+        List<Member> changed = batch.changedMembers();
+        if (changed == null) {
+            SwingUtilities.invokeLater(this::refreshTable);
+            return;
+        }
+        Set<Integer> deleted = batch.deleted(ChangeEvent.Table.MEMBERS);
+        SwingUtilities.invokeLater(() -> applyChanges(changed, deleted));
+    }
+    
+    private void applyChanges(List<Member> changed, Set<Integer> deleted) {
+        Map<Integer, Member> byId = new HashMap<>();
+        for (Member member : changed) {
+            byId.put(member.getId(), member);
+        }
+        liveSearch.invalidate();
+        pagedModel.patch(changed, deleted);
+        searchModel.patch(byId, deleted, Member::getId);
     }
 }
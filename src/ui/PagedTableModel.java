@@ -0,0 +1,356 @@
+package ui;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Table model that pulls rows from a keyset-paginated DAO query as the table
+ * asks for them.
+ * <p>
+ * Pages are fetched in id-descending order; the cursor for page {@code n + 1}
+ * is the id of the last row on page {@code n}, so any page seen once can be
+ * fetched again without an OFFSET scan. The row count grows as the user
+ * scrolls: rendering a row on the last known page prefetches the next one.
+ * Only {@code maxResidentPages} pages are kept in memory; rows on an evicted
+ * page render as blank until the page has been fetched again.
+ * <p>
+ * Changes pushed from the database are applied with {@link #patch}: rows on
+ * resident pages are replaced in place and rows newer than the first one shown
+ * are added above page 0, without moving the page boundaries. Once a page's
+ * worth of such rows has built up, the oldest of them become a new page 0 and
+ * the pages below move down one, so they are evicted like any other page.
+ * Anything the pages cannot absorb, such as a delete within the fetched pages,
+ * starts over.
+ * <p>
+ * All methods must be called on the event dispatch thread.
+ */
+public class PagedTableModel<T> extends EntityTableModel<T> {
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_RESIDENT_PAGES = 10;
+
+    private final PageSource<T> source;
+    private final ToIntFunction<T> idOf;
+    private final DataLoader loader;
+    private final int pageSize;
+    private final int maxResidentPages;
+
+    private final Map<Integer, List<T>> resident;
+    private final Set<Integer> inFlight = new HashSet<>();
+    private final List<T> head = new ArrayList<>();
+    private Consumer<SQLException> errorHandler = e -> { };
+    private int[] cursors = new int[16];
+    private int knownPages;
+    private int rowCount;
+    private int topId = -1;
+    private boolean exhausted;
+    private boolean failed;
+    private long epoch;
+
+    public PagedTableModel(String[] columns, PageSource<T> source, RowRenderer<T> renderer,
+                           ToIntFunction<T> idOf, DataLoader loader) {
+        this(columns, source, renderer, idOf, loader, DEFAULT_PAGE_SIZE, DEFAULT_RESIDENT_PAGES);
+    }
+
+    public PagedTableModel(String[] columns, PageSource<T> source, RowRenderer<T> renderer,
+                           ToIntFunction<T> idOf, DataLoader loader, int pageSize, int maxResidentPages) {
+        super(columns, renderer);
+        this.source = source;
+        this.idOf = idOf;
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.maxResidentPages = Math.max(2, maxResidentPages);
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > PagedTableModel.this.maxResidentPages;
+            }
+        };
+    }
+
+    public void setErrorHandler(Consumer<SQLException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Drops everything and starts again from the first page.
+     */
+    public void reset() {
+        epoch++;
+        resident.clear();
+        inFlight.clear();
+        head.clear();
+        topId = -1;
+        Arrays.fill(cursors, 0);
+        cursors[0] = Integer.MAX_VALUE;
+        knownPages = 0;
+        rowCount = 0;
+        exhausted = false;
+        failed = false;
+        fireTableDataChanged();
+        fetch(0);
+    }
+
+    /**
+     * Returns the row object, or {@code null} when its page is not in memory.
+     */
+    @Override
+    public T getRow(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= rowCount) {
+            return null;
+        }
+        if (rowIndex < head.size()) {
+            return head.get(rowIndex);
+        }
+        rowIndex -= head.size();
+        int page = rowIndex / pageSize;
+        List<T> rows = resident.get(page);
+        if (rows == null) {
+            fetch(page);
+            return null;
+        }
+        if (page == knownPages - 1 && !exhausted) {
+            fetch(page + 1);
+        }
+        int offset = rowIndex % pageSize;
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Applies rows that were inserted or updated and ids that were deleted since
+     * the pages were fetched. Rows on pages not in memory are left alone; they
+     * are fetched fresh when the user scrolls back to them.
+     */
+    public void patch(Collection<T> changed, Set<Integer> deleted) {
+        if (knownPages == 0) {
+            // The first page is still on its way and may predate these changes.
+            if (!changed.isEmpty() || !deleted.isEmpty()) {
+                reset();
+            }
+            return;
+        }
+        for (int id : deleted) {
+            // A delete shifts every later row by one, which a page fetched again would not notice.
+            if (pageOf(id) >= 0 || anyLoaded(row -> idOf.applyAsInt(row) == id)) {
+                reset();
+                return;
+            }
+        }
+
+        List<T> newer = new ArrayList<>();
+        for (T row : changed) {
+            int id = idOf.applyAsInt(row);
+            if (id > topId) {
+                newer.add(row);
+            } else if (!replace(id, row)) {
+                int page = pageOf(id);
+                if (page >= 0 && resident.containsKey(page)) {
+                    // Committed out of id order into a page on screen; its boundaries no longer hold.
+                    reset();
+                    return;
+                }
+            }
+        }
+
+        if (!newer.isEmpty()) {
+            newer.sort((a, b) -> Integer.compare(idOf.applyAsInt(b), idOf.applyAsInt(a)));
+            head.addAll(0, newer);
+            topId = idOf.applyAsInt(head.get(0));
+            cursors[0] = idOf.applyAsInt(head.get(head.size() - 1));
+            rowCount += newer.size();
+            fireTableRowsInserted(0, newer.size() - 1);
+            foldHead();
+        }
+    }
+
+    /**
+     * Turns whole pages from the bottom of the pushed rows into pages of their
+     * own, numbered above the fetched ones. Every row keeps its index, so the
+     * table needs no event; fetches still in flight were aimed at the old page
+     * numbers and are dropped.
+     */
+    private void foldHead() {
+        int folds = head.size() / pageSize;
+        if (folds == 0) {
+            return;
+        }
+        int keep = head.size() - folds * pageSize;
+        epoch++;
+        inFlight.clear();
+
+        int[] shifted = new int[Math.max(cursors.length, knownPages + folds + 1)];
+        System.arraycopy(cursors, 0, shifted, folds, knownPages + 1);
+        for (int page = 0; page < folds; page++) {
+            int above = keep + page * pageSize - 1;
+            shifted[page] = above >= 0 ? idOf.applyAsInt(head.get(above)) : topId + 1;
+        }
+        cursors = shifted;
+        knownPages += folds;
+
+        Map<Integer, List<T>> loaded = new LinkedHashMap<>(resident);
+        resident.clear();
+        for (Map.Entry<Integer, List<T>> entry : loaded.entrySet()) {
+            resident.put(entry.getKey() + folds, entry.getValue());
+        }
+        for (int page = folds - 1; page >= 0; page--) {
+            int from = keep + page * pageSize;
+            resident.put(page, new ArrayList<>(head.subList(from, from + pageSize)));
+        }
+        head.subList(keep, head.size()).clear();
+    }
+
+    /**
+     * Runs {@code update} on every row in memory that matches and repaints those
+     * rows, e.g. to refresh a joined name after the referenced row changed.
+     */
+    public void updateLoaded(Predicate<T> match, Consumer<T> update) {
+        for (int i = 0; i < head.size(); i++) {
+            if (match.test(head.get(i))) {
+                update.accept(head.get(i));
+                fireTableRowsUpdated(i, i);
+            }
+        }
+        for (Map.Entry<Integer, List<T>> entry : resident.entrySet()) {
+            List<T> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (match.test(rows.get(i))) {
+                    update.accept(rows.get(i));
+                    int rowIndex = head.size() + entry.getKey() * pageSize + i;
+                    fireTableRowsUpdated(rowIndex, rowIndex);
+                }
+            }
+        }
+    }
+
+    private boolean anyLoaded(Predicate<T> match) {
+        for (T row : head) {
+            if (match.test(row)) {
+                return true;
+            }
+        }
+        for (List<T> rows : resident.values()) {
+            for (T row : rows) {
+                if (match.test(row)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean replace(int id, T row) {
+        for (int i = 0; i < head.size(); i++) {
+            if (idOf.applyAsInt(head.get(i)) == id) {
+                head.set(i, row);
+                fireTableRowsUpdated(i, i);
+                return true;
+            }
+        }
+        int page = pageOf(id);
+        // Iterating the entries rather than calling get() keeps the eviction order untouched.
+        for (Map.Entry<Integer, List<T>> entry : resident.entrySet()) {
+            if (entry.getKey() != page) {
+                continue;
+            }
+            List<T> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (idOf.applyAsInt(rows.get(i)) == id) {
+                    List<T> updated = new ArrayList<>(rows);
+                    updated.set(i, row);
+                    entry.setValue(updated);
+                    int rowIndex = head.size() + page * pageSize + i;
+                    fireTableRowsUpdated(rowIndex, rowIndex);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The known page whose id range holds {@code id}, or -1 if it lies beyond the
+     * pages fetched so far.
+     */
+    private int pageOf(int id) {
+        for (int page = 0; page < knownPages; page++) {
+            boolean last = page == knownPages - 1;
+            if (id < cursors[page] && (id >= cursors[page + 1] || (last && exhausted))) {
+                return page;
+            }
+        }
+        return -1;
+    }
+
+    private void fetch(int page) {
+        if (failed || page > knownPages || (page == knownPages && exhausted) || !inFlight.add(page)) {
+            return;
+        }
+
+        long requestEpoch = epoch;
+        int cursor = cursors[page];
+        loader.submit(() -> source.fetchPage(cursor, pageSize), rows -> {
+            if (requestEpoch != epoch) {
+                return;
+            }
+            inFlight.remove(page);
+            pageArrived(page, rows);
+        }, e -> {
+            if (requestEpoch == epoch) {
+                // Stop fetching until the next reset so a failing page is not retried on every repaint.
+                inFlight.remove(page);
+                failed = true;
+                errorHandler.accept(e);
+            }
+        });
+    }
+
+    private void pageArrived(int page, List<T> rows) {
+        if (page == knownPages) {
+            resident.put(page, rows);
+            if (page == 0) {
+                topId = rows.isEmpty() ? 0 : idOf.applyAsInt(rows.get(0));
+            }
+            knownPages++;
+            exhausted = rows.size() < pageSize;
+            if (!rows.isEmpty()) {
+                if (knownPages == cursors.length) {
+                    cursors = Arrays.copyOf(cursors, cursors.length * 2);
+                }
+                cursors[knownPages] = idOf.applyAsInt(rows.get(rows.size() - 1));
+                int first = rowCount;
+                rowCount += rows.size();
+                fireTableRowsInserted(first, rowCount - 1);
+            }
+            return;
+        }
+
+        int expected = Math.min(pageSize, rowCount - head.size() - page * pageSize);
+        if (rows.size() != expected) {
+            // Rows were added or removed under an evicted page; the cursors are stale.
+            reset();
+            return;
+        }
+        resident.put(page, rows);
+        int first = head.size() + page * pageSize;
+        fireTableRowsUpdated(first, first + rows.size() - 1);
+    }
+
+    @FunctionalInterface
+    public interface PageSource<T> {
+        List<T> fetchPage(int afterId, int pageSize) throws SQLException;
+    }
+}
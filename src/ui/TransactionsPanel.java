@@ -1,32 +1,66 @@
 package ui;
 
-import dao.BookDAO;
-import dao.MemberDAO;
-import dao.TransactionDAO;
+import dao.TransactionFilter;
+import fines.FineJob;
+import io.TransactionExporter;
+import journal.WriteBehind;
 import models.Book;
 import models.Member;
 import models.Transaction;
+import repository.BookRepository;
+import repository.MemberRepository;
+import repository.Delta;
+import repository.Repositories;
+import repository.TransactionRepository;
+import repository.Watermark;
+import sync.ChangeBatch;
+import sync.ChangeEvent;
+import sync.ChangeFeed;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.io.File;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class TransactionsPanel extends JPanel {
+    private static final String[] COLUMNS =
+        {"ID", "Book", "Member", "Issue Date", "Due Date", "Return Date", "Status", "Fine"};
+    private static final String[] OVERDUE_COLUMNS =
+        {"ID", "Book", "Member", "Issue Date", "Due Date", "Days Overdue", "Fine"};
+    private static final String ALL_LOANS = "All Loans";
+    private static final String OVERDUE = "Overdue";
+    
     private JTable transactionsTable;
-    private DefaultTableModel tableModel;
-    private TransactionDAO transactionDAO;
-    private BookDAO bookDAO;
-    private MemberDAO memberDAO;
+    private PagedTableModel<Transaction> tableModel;
+    private PagedTableModel<Transaction> overdueModel;
+    private JComboBox<String> filterCombo;
+    private LocalDate overdueAsOf = LocalDate.now();
+    private TransactionRepository transactionRepository;
+    private BookRepository bookRepository;
+    private MemberRepository memberRepository;
+    private JLabel statusLabel;
+    private DataLoader loader;
+    private Watermark watermark;
     
     public TransactionsPanel() {
-        transactionDAO = new TransactionDAO();
-        bookDAO = new BookDAO();
-        memberDAO = new MemberDAO();
+        transactionRepository = Repositories.transactions();
+        loader = new DataLoader(this::setLoading);
+        bookRepository = Repositories.books();
+        memberRepository = Repositories.members();
         initializeUI();
         loadTransactions();
+        WriteBehind.addConflictListener(conflict -> SwingUtilities.invokeLater(() ->
+            JOptionPane.showMessageDialog(this, conflict.describe(), "Circulation Conflict",
+                JOptionPane.WARNING_MESSAGE)));
+        ChangeFeed.getInstance().addListener(this::changesReceived);
     }
     
     private void initializeUI() {
@@ -47,6 +81,12 @@ public class TransactionsPanel extends JPanel {
         titleLabel.setForeground(new Color(15, 23, 42));
         header.add(titleLabel, BorderLayout.WEST);
         
+        statusLabel = new JLabel("Loading...");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        statusLabel.setForeground(new Color(100, 116, 139));
+        statusLabel.setVisible(false);
+        header.add(statusLabel, BorderLayout.CENTER);
+        
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         rightPanel.setBackground(Color.WHITE);
         
@@ -56,8 +96,22 @@ public class TransactionsPanel extends JPanel {
         JButton returnButton = createStyledButton("Return Book", new Color(59, 130, 246));
         returnButton.addActionListener(e -> returnBook());
         
+        JButton exportButton = createStyledButton("Export", new Color(100, 116, 139));
+        exportButton.addActionListener(e -> showExportDialog());
+        
+        JButton finesButton = createStyledButton("Assess Fines", new Color(245, 158, 11));
+        finesButton.addActionListener(e -> assessFines());
+        
+        filterCombo = new JComboBox<>(new String[] {ALL_LOANS, OVERDUE});
+        filterCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        filterCombo.setPreferredSize(new Dimension(130, 38));
+        filterCombo.addActionListener(e -> showFilter());
+        
+        rightPanel.add(filterCombo);
         rightPanel.add(issueButton);
         rightPanel.add(returnButton);
+        rightPanel.add(finesButton);
+        rightPanel.add(exportButton);
         
         header.add(rightPanel, BorderLayout.EAST);
         
@@ -68,13 +122,15 @@ public class TransactionsPanel extends JPanel {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
         
-        String[] columns = {"ID", "Book", "Member", "Issue Date", "Return Date", "Status"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new PagedTableModel<>(COLUMNS, transactionRepository::getTransactionsPage,
+            TransactionsPanel::valueAt, Transaction::getId, loader);
+        tableModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this, "Error loading transactions: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+        overdueModel = new PagedTableModel<>(OVERDUE_COLUMNS,
+            (afterId, pageSize) -> transactionRepository.getOverdueTransactions(overdueAsOf, afterId, pageSize),
+            this::overdueValueAt, Transaction::getId, loader);
+        overdueModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this, "Error loading overdue loans: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
         
         transactionsTable = new JTable(tableModel);
         transactionsTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
@@ -117,26 +173,79 @@ public class TransactionsPanel extends JPanel {
         return button;
     }
     
+    private void setLoading(boolean loading) {
+        statusLabel.setVisible(loading);
+        setCursor(loading ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+    
+    /**
+     * Reloads the table from the first page, taking the watermark for the next
+     * delta before any page is read.
+     */
     private void loadTransactions() {
-        try {
-            List<Transaction> transactions = transactionDAO.getAllTransactions();
-            tableModel.setRowCount(0);
-            
-            for (Transaction transaction : transactions) {
-                Object[] row = {
-                    transaction.getId(),
-                    transaction.getBookTitle(),
-                    transaction.getMemberName(),
-                    transaction.getIssueDate(),
-                    transaction.getReturnDate() != null ? transaction.getReturnDate() : "-",
-                    transaction.getStatus()
-                };
-                tableModel.addRow(row);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Error loading transactions: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+        watermark = null;
+        loader.load(transactionRepository::currentWatermark, current -> {
+            watermark = current;
+            tableModel.reset();
+            reloadOverdue();
+        }, e -> tableModel.reset());
+    }
+    
+    private boolean showingOverdue() {
+        return transactionsTable.getModel() == overdueModel;
+    }
+    
+    private PagedTableModel<Transaction> shownModel() {
+        return showingOverdue() ? overdueModel : tableModel;
+    }
+    
+    private void showFilter() {
+        boolean overdue = OVERDUE.equals(filterCombo.getSelectedItem());
+        if (overdue == showingOverdue()) {
+            return;
         }
+        transactionsTable.setModel(overdue ? overdueModel : tableModel);
+        reloadOverdue();
+    }
+    
+    /**
+     * Overdue loans are few and leave the list as time passes, so the list is
+     * read again as of today rather than patched.
+     */
+    private void reloadOverdue() {
+        if (showingOverdue()) {
+            overdueAsOf = LocalDate.now();
+            overdueModel.reset();
+        }
+    }
+    
+    private static Object valueAt(Transaction transaction, int column) {
+        switch (column) {
+            case 0: return transaction.getId();
+            case 1: return transaction.getBookTitle();
+            case 2: return transaction.getMemberName();
+            case 3: return transaction.getIssueDate();
+            case 4: return transaction.getDueDate();
+            case 5: return transaction.getReturnDate() != null ? transaction.getReturnDate() : "-";
+            case 6: return transaction.getStatus();
+            default: return formatFine(transaction.getFineCents());
+        }
+    }
+    
+    private Object overdueValueAt(Transaction transaction, int column) {
+        switch (column) {
+            case 0: return transaction.getId();
+            case 1: return transaction.getBookTitle();
+            case 2: return transaction.getMemberName();
+            case 3: return transaction.getIssueDate();
+            case 4: return transaction.getDueDate();
+            case 5: return ChronoUnit.DAYS.between(transaction.getDueDate(), overdueAsOf);
+            default: return formatFine(transaction.getFineCents());
+        }
+    }
+    
+    private static String formatFine(long cents) {
+        return cents == 0 ? "-" : String.format("%d.%02d", cents / 100, cents % 100);
     }
     
     private void showIssueDialog() {
@@ -149,37 +258,26 @@ public class TransactionsPanel extends JPanel {
         formPanel.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
         formPanel.setBackground(Color.WHITE);
         
-        JComboBox<String> bookCombo = new JComboBox<>();
-        JComboBox<String> memberCombo = new JComboBox<>();
-        
-        try {
-            List<Book> books = bookDAO.getAllBooks();
-            for (Book book : books) {
-                if (book.isAvailable()) {
-                    bookCombo.addItem(book.getId() + " - " + book.getTitle());
-                }
-            }
-            
-            List<Member> members = memberDAO.getAllMembers();
-            for (Member member : members) {
-                memberCombo.addItem(member.getId() + " - " + member.getName());
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(dialog, "Error loading data: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        bookCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-        memberCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        TypeaheadPicker<Book> bookPicker = new TypeaheadPicker<>(bookRepository::findAvailableBooks,
+            book -> book.getId() + " - " + book.getTitle(),
+            e -> JOptionPane.showMessageDialog(dialog, "Error loading books: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
+        TypeaheadPicker<Member> memberPicker = new TypeaheadPicker<>(memberRepository::findMembers,
+            member -> member.getId() + " - " + member.getName(),
+            e -> JOptionPane.showMessageDialog(dialog, "Error loading members: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
+        styleFormField(bookPicker);
+        styleFormField(memberPicker);
+        bookPicker.setToolTipText("Type a title, ISBN or book id");
+        memberPicker.setToolTipText("Type a name, email or member id");
         
         JTextField dateField = createFormField();
         dateField.setText(LocalDate.now().toString());
         
         formPanel.add(createLabel("Book"));
-        formPanel.add(bookCombo);
+        formPanel.add(bookPicker);
         formPanel.add(createLabel("Member"));
-        formPanel.add(memberCombo);
+        formPanel.add(memberPicker);
         formPanel.add(createLabel("Issue Date"));
         formPanel.add(dateField);
         
@@ -190,32 +288,39 @@ public class TransactionsPanel extends JPanel {
         
         JButton saveButton = createStyledButton("Issue", new Color(16, 185, 129));
         saveButton.addActionListener(e -> {
+            Book book = bookPicker.getSelected();
+            Member member = memberPicker.getSelected();
+            
+            if (book == null || member == null) {
+                JOptionPane.showMessageDialog(dialog, "Please select both book and member");
+                return;
+            }
+            
+            Transaction transaction;
             try {
-                String bookSelection = (String) bookCombo.getSelectedItem();
-                String memberSelection = (String) memberCombo.getSelectedItem();
-                
-                if (bookSelection == null || memberSelection == null) {
-                    JOptionPane.showMessageDialog(dialog, "Please select both book and member");
+                LocalDate issueDate = LocalDate.parse(dateField.getText().trim());
+                transaction = new Transaction(book.getId(), member.getId(), issueDate);
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(dialog, "Invalid date format. Use YYYY-MM-DD",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            saveButton.setEnabled(false);
+            loader.submit(() -> transactionRepository.issueBook(transaction), outcome -> {
+                if (!outcome.isSuccess()) {
+                    saveButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(dialog, outcome.getMessage());
                     return;
                 }
-                
-                int bookId = Integer.parseInt(bookSelection.split(" - ")[0]);
-                int memberId = Integer.parseInt(memberSelection.split(" - ")[0]);
-                LocalDate issueDate = LocalDate.parse(dateField.getText().trim());
-                
-                Transaction transaction = new Transaction(bookId, memberId, issueDate);
-                transactionDAO.issueBook(transaction);
-                
-                loadTransactions();
+                refreshAfterWrite();
                 dialog.dispose();
-                JOptionPane.showMessageDialog(this, "Book issued successfully");
-            } catch (SQLException ex) {
+                JOptionPane.showMessageDialog(this, outcome.getMessage());
+            }, ex -> {
+                saveButton.setEnabled(true);
                 JOptionPane.showMessageDialog(dialog, "Error issuing book: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(dialog, "Invalid date format. Use YYYY-MM-DD",
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         });
         
         JButton cancelButton = createStyledButton("Cancel", new Color(100, 116, 139));
@@ -229,13 +334,13 @@ public class TransactionsPanel extends JPanel {
     }
     
     private void returnBook() {
-        int selectedRow = transactionsTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Transaction selected = shownModel().getRow(transactionsTable.getSelectedRow());
+        if (selected == null) {
             JOptionPane.showMessageDialog(this, "Please select a transaction");
             return;
         }
         
-        String status = (String) tableModel.getValueAt(selectedRow, 5);
+        String status = selected.getStatus();
         if (status.equals("returned")) {
             JOptionPane.showMessageDialog(this, "This book has already been returned");
             return;
@@ -246,16 +351,112 @@ public class TransactionsPanel extends JPanel {
             "Confirm Return", JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
+            int transactionId = selected.getId();
+            loader.submit(() -> transactionRepository.returnBook(transactionId), outcome -> {
+                refreshAfterWrite();
+                JOptionPane.showMessageDialog(this, outcome.getMessage());
+            }, e -> JOptionPane.showMessageDialog(this, "Error returning book: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE));
+        }
+    }
+    
+    private void assessFines() {
+        int confirm = JOptionPane.showConfirmDialog(this,
+            "Recompute the fines on all open loans as of today?",
+            "Assess Fines", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+        
+        loader.submit(() -> FineJob.run(transactionRepository), result -> {
+            refreshAfterWrite();
+            reloadOverdue();
+            JOptionPane.showMessageDialog(this, String.format(
+                "%,d of %,d open loans are overdue; %,d fines changed, %s owed in total",
+                result.overdueLoans(), result.openLoans(), result.updatedLoans(), formatFine(result.totalFineCents())));
+        }, e -> JOptionPane.showMessageDialog(this, "Error assessing fines: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+    }
+    
+    private void showExportDialog() {
+        JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Export Transactions", true);
+        dialog.setLayout(new BorderLayout(20, 20));
+        dialog.setSize(450, 400);
+        dialog.setLocationRelativeTo(this);
+        
+        JPanel formPanel = new JPanel(new GridLayout(4, 2, 15, 15));
+        formPanel.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        formPanel.setBackground(Color.WHITE);
+        
+        JTextField fromField = createFormField();
+        JTextField toField = createFormField();
+        
+        JComboBox<String> statusCombo = new JComboBox<>(new String[] {"All", "issued", "returned"});
+        statusCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        
+        JComboBox<TransactionExporter.Format> formatCombo = new JComboBox<>(TransactionExporter.Format.values());
+        formatCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        
+        formPanel.add(createLabel("Issued From"));
+        formPanel.add(fromField);
+        formPanel.add(createLabel("Issued To"));
+        formPanel.add(toField);
+        formPanel.add(createLabel("Status"));
+        formPanel.add(statusCombo);
+        formPanel.add(createLabel("Format"));
+        formPanel.add(formatCombo);
+        
+        dialog.add(formPanel, BorderLayout.CENTER);
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 20));
+        buttonPanel.setBackground(Color.WHITE);
+        
+        JButton exportButton = createStyledButton("Export", new Color(16, 185, 129));
+        exportButton.addActionListener(e -> {
+            TransactionFilter filter;
             try {
-                int transactionId = (int) tableModel.getValueAt(selectedRow, 0);
-                transactionDAO.returnBook(transactionId);
-                loadTransactions();
-                JOptionPane.showMessageDialog(this, "Book returned successfully");
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error returning book: " + e.getMessage(),
+                String from = fromField.getText().trim();
+                String to = toField.getText().trim();
+                String status = (String) statusCombo.getSelectedItem();
+                filter = new TransactionFilter(
+                    from.isEmpty() ? null : LocalDate.parse(from),
+                    to.isEmpty() ? null : LocalDate.parse(to),
+                    "All".equals(status) ? null : status);
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(dialog, "Invalid date format. Use YYYY-MM-DD",
                     "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
-        }
+            
+            TransactionExporter.Format format = (TransactionExporter.Format) formatCombo.getSelectedItem();
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter(format.toString(), format.getExtension()));
+            chooser.setSelectedFile(new File("transactions." + format.getExtension()));
+            if (chooser.showSaveDialog(dialog) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            
+            File file = chooser.getSelectedFile();
+            TransactionExporter exporter = new TransactionExporter(transactionRepository);
+            exportButton.setEnabled(false);
+            loader.submit(() -> exporter.export(filter, format, file.toPath()), count -> {
+                dialog.dispose();
+                JOptionPane.showMessageDialog(this, String.format("Exported %,d transactions to %s", count, file.getName()));
+            }, ex -> {
+                exportButton.setEnabled(true);
+                JOptionPane.showMessageDialog(dialog, "Error exporting transactions: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        });
+        
+        JButton cancelButton = createStyledButton("Cancel", new Color(100, 116, 139));
+        cancelButton.addActionListener(e -> dialog.dispose());
+        
+        buttonPanel.add(cancelButton);
+        buttonPanel.add(exportButton);
+        
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.setVisible(true);
     }
     
     private JLabel createLabel(String text) {
@@ -267,15 +468,139 @@ public class TransactionsPanel extends JPanel {
     
     private JTextField createFormField() {
         JTextField field = new JTextField();
+        styleFormField(field);
+        return field;
+    }
+    
+    private void styleFormField(JTextField field) {
         field.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         field.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(new Color(203, 213, 225)),
             BorderFactory.createEmptyBorder(8, 12, 8, 12)
         ));
-        return field;
     }
     
     public void refreshTable() {
         loadTransactions();
     }
+    
+    /**
+     * Brings the table up to date when it is shown again, unless the change feed
+     * is already keeping it current.
+     */
+    public void refreshIfStale() {
+        if (!ChangeFeed.getInstance().isActive()) {
+            syncChanges();
+        }
+    }
+    
+    private void refreshAfterWrite() {
+        if (!ChangeFeed.getInstance().isActive()) {
+            syncChanges();
+        }
+    }
+    
+    /**
+     * Applies the loans changed since the watermark, and the renames of books and
+     * members they show, or reloads when too many loans changed.
+     */
+    private void syncChanges() {
+        Watermark since = watermark;
+        if (since == null) {
+            loadTransactions();
+            return;
+        }
+        loader.submit(() -> readChanges(since), changes -> {
+            if (watermark != since) {
+                return;
+            }
+            if (changes.loans().truncated()) {
+                loadTransactions();
+                return;
+            }
+            watermark = changes.loans().next();
+            applyChanges(changes.loans().changed(), changes.loans().deleted(),
+                changes.bookTitles(), changes.memberNames());
+        }, e -> JOptionPane.showMessageDialog(this, "Error loading transactions: " + e.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE));
+    }
+    
+    private Changes readChanges(Watermark since) throws SQLException {
+        Delta<Transaction> loans = transactionRepository.getTransactionsChangedSince(since, ChangeFeed.PATCH_LIMIT);
+        Map<Integer, String> bookTitles = new HashMap<>();
+        Map<Integer, String> memberNames = new HashMap<>();
+        if (!loans.truncated()) {
+            // A truncated book or member delta is an import, which cannot rename a row already on a loan.
+            Delta<Book> books = bookRepository.getBooksChangedSince(since, ChangeFeed.PATCH_LIMIT);
+            for (Book book : books.changed()) {
+                bookTitles.put(book.getId(), book.getTitle());
+            }
+            Delta<Member> members = memberRepository.getMembersChangedSince(since, ChangeFeed.PATCH_LIMIT);
+            for (Member member : members.changed()) {
+                memberNames.put(member.getId(), member.getName());
+            }
+        }
+        return new Changes(loans, bookTitles, memberNames);
+    }
+    
+    /**
+     * Called on the change feed thread. Reads the changed loans, and the books
+     * and members whose title or name may show in the joined columns, there so
+     * batches are applied in commit order.
+     */
+    private void changesReceived(ChangeBatch batch) {
+        if (!batch.touches(ChangeEvent.Table.TRANSACTIONS) && !batch.touches(ChangeEvent.Table.BOOKS)
+                && !batch.touches(ChangeEvent.Table.MEMBERS)) {
+            return;
+        }
+        if (batch.reloadAll(ChangeEvent.Table.TRANSACTIONS)
+                || batch.size(ChangeEvent.Table.TRANSACTIONS) > ChangeFeed.PATCH_LIMIT) {
+            SwingUtilities.invokeLater(this::syncChanges);
+            return;
+        }
+        
+        // Bulk book or member changes are imports, which cannot rename a row already on a loan,
+        // so the feed reads no rows for them and there is nothing to patch.
+        List<Transaction> changed = batch.changedTransactions();
+        List<Book> books = batch.changedBooks();
+        List<Member> members = batch.changedMembers();
+        if (changed == null || books == null || members == null) {
+            SwingUtilities.invokeLater(this::loadTransactions);
+            return;
+        }
+        Map<Integer, String> bookTitles = new HashMap<>();
+        for (Book book : books) {
+            bookTitles.put(book.getId(), book.getTitle());
+        }
+        Map<Integer, String> memberNames = new HashMap<>();
+        for (Member member : members) {
+            memberNames.put(member.getId(), member.getName());
+        }
+        Set<Integer> deleted = batch.deleted(ChangeEvent.Table.TRANSACTIONS);
+        SwingUtilities.invokeLater(() -> applyChanges(changed, deleted, bookTitles, memberNames));
+    }
+    
+    private void applyChanges(List<Transaction> changed, Set<Integer> deleted,
+                              Map<Integer, String> bookTitles, Map<Integer, String> memberNames) {
+        tableModel.patch(changed, deleted);
+        if (!changed.isEmpty() || !deleted.isEmpty()) {
+            reloadOverdue();
+        }
+        for (PagedTableModel<Transaction> model : List.of(tableModel, overdueModel)) {
+            if (!bookTitles.isEmpty()) {
+                model.updateLoaded(t -> bookTitles.containsKey(t.getBookId())
+                        && !bookTitles.get(t.getBookId()).equals(t.getBookTitle()),
+                    t -> t.setBookTitle(bookTitles.get(t.getBookId())));
+            }
+            if (!memberNames.isEmpty()) {
+                model.updateLoaded(t -> memberNames.containsKey(t.getMemberId())
+                        && !memberNames.get(t.getMemberId()).equals(t.getMemberName()),
+                    t -> t.setMemberName(memberNames.get(t.getMemberId())));
+            }
+        }
+    }
+    
+    private record Changes(Delta<Transaction> loans, Map<Integer, String> bookTitles,
+                           Map<Integer, String> memberNames) {
+    }
 }
@@ -0,0 +1,214 @@
+package ui;
+
+import dao.QueryCanceller;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Text field that offers matching rows in a drop-down as the user types.
+ * <p>
+ * Nothing is loaded until the user types; each pause in typing runs one
+ * lookup capped at {@code limit} rows and cancels the previous one on the
+ * server. Up and Down move through the suggestions, Enter or a click picks
+ * one and Escape closes the list. Editing the text after picking clears the
+ * selection again.
+ */
+public class TypeaheadPicker<T> extends JTextField {
+    public static final int DEFAULT_LIMIT = 20;
+    private static final int DEBOUNCE_MS = 200;
+    private static final int VISIBLE_ROWS = 8;
+
+    private final LiveSearch.Searcher<T> searcher;
+    private final Function<T, String> labeler;
+    private final Consumer<SQLException> onError;
+    private final DataLoader loader = new DataLoader(loading -> { });
+    private final DefaultListModel<T> candidates = new DefaultListModel<>();
+    private final JList<T> list = new JList<>(candidates);
+    private final JPopupMenu popup = new JPopupMenu();
+    private final Timer timer;
+
+    private QueryCanceller inFlight;
+    private T selected;
+    private boolean adjusting;
+
+    public TypeaheadPicker(LiveSearch.Searcher<T> searcher, Function<T, String> labeler,
+                           Consumer<SQLException> onError) {
+        this.searcher = searcher;
+        this.labeler = labeler;
+        this.onError = onError;
+
+        list.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                @SuppressWarnings("unchecked")
+                String text = labeler.apply((T) value);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    choose(candidates.get(index));
+                }
+            }
+        });
+
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        popup.setFocusable(false);
+        popup.setBorder(BorderFactory.createLineBorder(new Color(203, 213, 225)));
+        popup.add(scrollPane);
+
+        timer = new Timer(DEBOUNCE_MS, e -> searchNow());
+        timer.setRepeats(false);
+        getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                textEdited();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                textEdited();
+            }
+            public void changedUpdate(DocumentEvent e) {
+                textEdited();
+            }
+        });
+        addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                popup.setVisible(false);
+            }
+        });
+
+        bindKey("DOWN", "typeahead-next", () -> moveSelection(1));
+        bindKey("UP", "typeahead-previous", () -> moveSelection(-1));
+        bindKey("ENTER", "typeahead-choose", () -> {
+            if (popup.isVisible() && list.getSelectedValue() != null) {
+                choose(list.getSelectedValue());
+            } else {
+                searchNow();
+            }
+        });
+        bindKey("ESCAPE", "typeahead-close", () -> popup.setVisible(false));
+    }
+
+    /**
+     * The row the user picked, or {@code null} if the text has been edited since.
+     */
+    public T getSelected() {
+        return selected;
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        cancelInFlight();
+        popup.setVisible(false);
+        super.removeNotify();
+    }
+
+    private void textEdited() {
+        if (!adjusting) {
+            selected = null;
+            timer.restart();
+        }
+    }
+
+    private void searchNow() {
+        timer.stop();
+        cancelInFlight();
+
+        String keyword = getText().trim();
+        if (keyword.isEmpty()) {
+            loader.cancelLoads();
+            candidates.clear();
+            popup.setVisible(false);
+            return;
+        }
+
+        QueryCanceller canceller = new QueryCanceller();
+        inFlight = canceller;
+        loader.load(() -> searcher.search(keyword, DEFAULT_LIMIT, canceller), results -> {
+            if (inFlight == canceller) {
+                inFlight = null;
+            }
+            showCandidates(results);
+        }, e -> {
+            if (inFlight == canceller) {
+                inFlight = null;
+            }
+            if (!QueryCanceller.isCancellation(e)) {
+                onError.accept(e);
+            }
+        });
+    }
+
+    private void showCandidates(List<T> results) {
+        candidates.clear();
+        candidates.addAll(results);
+        if (results.isEmpty() || !isShowing()) {
+            popup.setVisible(false);
+            return;
+        }
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(Math.min(VISIBLE_ROWS, results.size()));
+        popup.setPopupSize(getWidth(), list.getPreferredScrollableViewportSize().height + 4);
+        popup.show(this, 0, getHeight());
+    }
+
+    private void choose(T row) {
+        selected = row;
+        adjusting = true;
+        try {
+            setText(labeler.apply(row));
+        } finally {
+            adjusting = false;
+        }
+        popup.setVisible(false);
+    }
+
+    private void moveSelection(int delta) {
+        if (!popup.isVisible()) {
+            searchNow();
+            return;
+        }
+        int index = Math.max(0, Math.min(candidates.size() - 1, list.getSelectedIndex() + delta));
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private void bindKey(String keyStroke, String name, Runnable action) {
+        getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(keyStroke), name);
+        getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    private void cancelInFlight() {
+        if (inFlight != null) {
+            QueryCanceller canceller = inFlight;
+            inFlight = null;
+            // Statement.cancel() sends a cancel request over a new socket; keep that off the EDT.
+            Thread.ofVirtual().start(canceller::cancel);
+        }
+    }
+}